@@ -0,0 +1,190 @@
+package it.unitn.disi.aose.firerespsim;
+
+import it.unitn.disi.aose.firerespsim.model.Vehicle;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensionsInfo;
+import it.unitn.disi.aose.firerespsim.ontology.ArmFireRequest;
+import it.unitn.disi.aose.firerespsim.ontology.BinaryCodec;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.FireAlert;
+import it.unitn.disi.aose.firerespsim.ontology.FireResponseOntology;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatusInfo;
+import it.unitn.disi.aose.firerespsim.ontology.HandleFireCFP;
+import it.unitn.disi.aose.firerespsim.ontology.HandleFireProposal;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionRequest;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusChangeInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusRequest;
+import it.unitn.disi.aose.firerespsim.ontology.PickUpCasualtyRequest;
+import it.unitn.disi.aose.firerespsim.ontology.PutOutRequest;
+import it.unitn.disi.aose.firerespsim.ontology.SetTargetRequest;
+import it.unitn.disi.aose.firerespsim.ontology.StationPositionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.VehiclePositionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.VehicleStatus;
+import it.unitn.disi.aose.firerespsim.ontology.VehicleStatusInfo;
+import jade.content.ContentElement;
+import jade.content.ContentManager;
+import jade.content.Predicate;
+import jade.content.lang.sl.SLCodec;
+import jade.content.onto.Ontology;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of filling and extracting the message content of each predicate of the ontology in each content
+ * language, the way the agents do it in <code>ExtendedAgent.fillMessage</code> and
+ * <code>ExtendedAgent.extractMessageContent</code>. The benchmark list is generated by the JMH annotation processor
+ * (<code>lib/jmh</code>) at compile time. Run it with {@link #main(String[])} or the JMH runner
+ * (<code>org.openjdk.jmh.Main CodecBenchmark</code>), the main method adds the GC profiler for the allocation per
+ * operation.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    
+    /**
+     * Simple class name of the measured predicate.
+     */
+    @Param( {
+        "AreaDimensionsInfo", "ArmFireRequest", "FireAlert", "FireStatusInfo", "HandleFireCFP", "HandleFireProposal",
+        "OnFireRegionInfo", "OnFireRegionRequest", "OnFireStatusChangeInfo", "OnFireStatusInfo", "OnFireStatusRequest",
+        "PickUpCasualtyRequest", "PutOutRequest", "SetTargetRequest", "StationPositionInfo", "VehiclePositionInfo",
+        "VehicleStatusInfo"})
+    public String predicate;
+    /**
+     * Content language.
+     */
+    @Param( {FIPANames.ContentLanguage.FIPA_SL, BinaryCodec.NAME})
+    public String language;
+    
+    private final ContentManager cm = new ContentManager();
+    private Predicate sample;
+    /**
+     * Message filled by {@link #fill()}.
+     */
+    private ACLMessage fillMsg;
+    /**
+     * Message with the content of the {@link #sample}, extracted by {@link #extract()}.
+     */
+    private ACLMessage extractMsg;
+    
+    /**
+     * @param args Simple class names of the predicates to measure, all if none.
+     * @throws Exception
+     */
+    public static void main(final String[] args) throws Exception {
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().include(CodecBenchmark.class.getSimpleName())
+                                                                  .addProfiler(GCProfiler.class);
+        if (args.length > 0) {
+            options.param("predicate", args);
+        }
+        new Runner(options.build()).run();
+    }
+    
+    /**
+     * Registers the content languages and the ontology, and fills the message to extract.
+     * 
+     * @throws Exception
+     */
+    @Setup
+    public void setup() throws Exception {
+
+        final Ontology onto = FireResponseOntology.getInstance();
+        cm.registerLanguage(new SLCodec());
+        cm.registerLanguage(new BinaryCodec());
+        cm.registerOntology(onto);
+        sample = createSamples().get(predicate);
+        if (sample == null) throw new IllegalArgumentException("no sample of predicate " + predicate);
+        fillMsg = createMessage(onto);
+        extractMsg = createMessage(onto);
+        cm.fillContent(extractMsg, sample);
+    }
+    
+    /**
+     * @return The filled message.
+     * @throws Exception
+     */
+    @Benchmark
+    public ACLMessage fill() throws Exception {
+
+        cm.fillContent(fillMsg, sample);
+        return fillMsg;
+    }
+    
+    /**
+     * @return The extracted content.
+     * @throws Exception
+     */
+    @Benchmark
+    public ContentElement extract() throws Exception {
+
+        return cm.extractContent(extractMsg);
+    }
+    
+    /**
+     * @param onto
+     * @return Message in the benchmarked {@link #language} and the ontology.
+     */
+    private ACLMessage createMessage(final Ontology onto) {
+
+        final ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setLanguage(language);
+        msg.setOntology(onto.getName());
+        return msg;
+    }
+    
+    /**
+     * @return Sample instance of each predicate of the ontology by simple class name, with contents the size of a
+     *         typical message.
+     */
+    private static Map<String, Predicate> createSamples() {
+
+        final Coordinate coord = new Coordinate(42, 57);
+        final BitSet states = new BitSet();
+        for (int i = 0; i < 256; i += 3) {
+            states.set(i);
+        }
+        final Predicate[] samples = new Predicate[] {
+            new AreaDimensionsInfo(new AreaDimensions(100, 100), 2, 2), new ArmFireRequest(coord, 1, 1),
+            new FireAlert(coord), new FireStatusInfo(new FireStatus(coord, 12, 5)), new HandleFireCFP(coord),
+            new HandleFireProposal(37, 4), new OnFireRegionInfo(coord, 16, 16, states),
+            new OnFireRegionRequest(coord, 16, 16), new OnFireStatusChangeInfo(coord, true),
+            new OnFireStatusInfo(true), new OnFireStatusRequest(coord), new PickUpCasualtyRequest(coord),
+            new PutOutRequest(coord), new SetTargetRequest(coord), new StationPositionInfo(coord),
+            new VehiclePositionInfo(coord),
+            new VehicleStatusInfo(new VehicleStatus(new Coordinate(40, 50), Vehicle.STATE_TO_TARGET, coord))};
+        final Map<String, Predicate> samplesByName = new LinkedHashMap<String, Predicate>();
+        for (final Predicate sample : samples) {
+            samplesByName.put(sample.getClass().getSimpleName(), sample);
+        }
+        return samplesByName;
+    }
+}
@@ -0,0 +1,55 @@
+package it.unitn.disi.aose.firerespsim;
+
+import it.unitn.disi.aose.firerespsim.headless.HeadlessSimulation;
+import it.unitn.disi.aose.firerespsim.model.SimulationArea;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import org.apache.log4j.Logger;
+
+/**
+ * This class runs the emergency response simulation without the JADE runtime, as fast as possible, and logs the
+ * results of each run.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class HeadlessMain {
+    
+    // Configuration
+    private static final int AREA_WIDTH = 100;
+    private static final int AREA_HEIGHT = 100;
+    private static final String AREA_STORAGE = SimulationArea.STORAGE_DENSE;
+    private static final int ENVIRONMENT_SPAWN_FIRE_IVAL = 60000;
+    private static final int NUMBER_OF_FIRE_BRIGADES = 10;
+    private static final int NUMBER_OF_HOSPITALS = 10;
+    private static final int FIRE_INCREASE_IVAL = 10000;
+    private static final int VEHICLE_MOVE_IVAL = 1000;
+    private static final long SIMULATION_TIME = 24 * 60 * 60 * 1000;
+    private static final int NUMBER_OF_RUNS = 10;
+    private static final long SEED = 1;
+    
+    private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
+    
+    /**
+     * @param args
+     */
+    public static void main(final String[] args) {
+
+        logger.info("starting " + NUMBER_OF_RUNS + " headless simulation runs");
+        
+        for (int run = 0; run < NUMBER_OF_RUNS; run++) {
+            final long startTime = System.currentTimeMillis();
+            final HeadlessSimulation sim = new HeadlessSimulation(new AreaDimensions(AREA_WIDTH, AREA_HEIGHT),
+                                                                  AREA_STORAGE, ENVIRONMENT_SPAWN_FIRE_IVAL,
+                                                                  FIRE_INCREASE_IVAL, VEHICLE_MOVE_IVAL,
+                                                                  NUMBER_OF_FIRE_BRIGADES, NUMBER_OF_HOSPITALS,
+                                                                  SEED + run);
+            sim.run(SIMULATION_TIME);
+            final long duration = Math.max(1, System.currentTimeMillis() - startTime);
+            logger.info("run " + run + ": " + sim.getFiresStarted() + " fires started, " + sim.getFiresEnded() +
+                        " ended, " + sim.getFiresBurning() + " burning, " + sim.getCasualtiesDelivered() +
+                        " casualties delivered, mean response time " + Math.round(sim.getMeanResponseTime()) +
+                        " ms, mean fire duration " + Math.round(sim.getMeanFireDuration()) + " ms");
+            logger.info("run " + run + ": " + sim.getNumEvents() + " events in " + duration + " ms (" +
+                        sim.getNumEvents() * 1000 / duration + " events/s)");
+        }
+    }
+}
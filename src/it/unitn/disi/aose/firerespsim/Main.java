@@ -1,89 +1,310 @@
 package it.unitn.disi.aose.firerespsim;
 
+import it.unitn.disi.aose.firerespsim.agents.CheckpointAgent;
 import it.unitn.disi.aose.firerespsim.agents.EnvironmentAgent;
+import it.unitn.disi.aose.firerespsim.agents.ExtendedAgent;
 import it.unitn.disi.aose.firerespsim.agents.FireBrigadeAgent;
 import it.unitn.disi.aose.firerespsim.agents.FireBrigadeCoordinatorAgent;
 import it.unitn.disi.aose.firerespsim.agents.FireMonitorAgent;
 import it.unitn.disi.aose.firerespsim.agents.HospitalAgent;
 import it.unitn.disi.aose.firerespsim.agents.HospitalCoordinatorAgent;
+import it.unitn.disi.aose.firerespsim.model.AreaShards;
+import it.unitn.disi.aose.firerespsim.model.ContainerPlacement;
 import it.unitn.disi.aose.firerespsim.model.Position;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.util.AgentUtil;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.InputLog;
+import it.unitn.disi.aose.firerespsim.util.RandomStreams;
+import jade.core.Profile;
 import jade.core.ProfileImpl;
 import jade.core.Runtime;
 import jade.wrapper.AgentContainer;
-import org.apache.commons.lang.math.RandomUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.apache.log4j.Logger;
 
 /**
- * This class launches the JADE runtime and starts the emergency response simulation.
+ * This class launches the JADE runtime and starts the emergency response simulation. Besides the main container it can
+ * create peripheral containers, in this JVM or as separate local JVMs, and place the agents in them by a
+ * {@link ContainerPlacement}. A separate JVM runs this class with the same arguments and its container number, computes
+ * the same placements, and only starts the agents placed in its own container. The parameters of the simulation are
+ * read from the {@link Scenario} given by the arguments. With an {@link InputLog} the inputs of a run are recorded, and
+ * a run with the same scenario can replay them. With a checkpoint interval the {@link CheckpointAgent} takes
+ * checkpoints of the agents, and a run with the same scenario can restore them into a fresh platform.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 public final class Main {
     
-    // JADE Runtime
-    private static final String JADE_HOST = "localhost";
-    private static final int JADE_PORT = 1199;
-    
-    // Configuration
-    private static final int AREA_WIDTH = 3;
-    private static final int AREA_HEIGHT = 3;
-    private static final int ENVIRONMENT_SPAWN_FIRE_IVAL = 10000;
-    private static final int MONITOR_SCAN_AREA_IVAL = 1000;
-    private static final int NUMBER_OF_FIRE_BRIGADES = 2;
-    private static final int NUMBER_OF_HOSPITALS = 2;
-    private static final int FIRE_INCREASE_IVAL = 10000;
-    private static final int VEHICLE_MOVE_IVAL = 1000;
-    
     private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
-    private final static AgentContainer ac = Runtime.instance().createMainContainer(
-                                                                                    new ProfileImpl(JADE_HOST,
-                                                                                                    JADE_PORT, null,
-                                                                                                    false));
+    private static Scenario scenario;
+    /**
+     * Command line arguments, passed on to the peripheral container JVMs.
+     */
+    private static String[] arguments;
+    /**
+     * Containers of the platform by number, 0 is the main container. Only the containers of this JVM are set.
+     */
+    private static AgentContainer[] containers;
+    /**
+     * Peripheral containers started as separate JVMs.
+     */
+    private static final List<Process> containerProcesses = new ArrayList<Process>();
+    private static ContainerPlacement placement;
     
     /**
-     * @param args
+     * @param args Scenario files, <code>NAME=value</code> overrides, and the master seed (see {@link Scenario}).
      */
     public static void main(final String[] args) {
 
-        logger.info("starting simulation");
+        arguments = args;
+        try {
+            scenario = Scenario.fromArguments(args);
+        } catch (final IOException e) {
+            logger.error("couldn't read scenario: " + e.getMessage());
+            return;
+        } catch (final IllegalArgumentException e) {
+            logger.error(e.getMessage());
+            return;
+        }
+        final long seed = scenario.getLong("SEED");
+        final int container = scenario.getInt(Scenario.CONTAINER);
+        final int numContainers = scenario.getInt("NUMBER_OF_CONTAINERS");
+        final int areaWidth = scenario.getInt("AREA_WIDTH");
+        final int areaHeight = scenario.getInt("AREA_HEIGHT");
+        final boolean fireTable = scenario.getBoolean("FIRE_TABLE");
+        final int firePool = scenario.getInt("FIRE_POOL");
+        final Random random = RandomStreams.create(seed, "main");
+        
+        // create the containers
+        final AreaDimensions dimensions = new AreaDimensions(areaWidth, areaHeight);
+        placement = ContainerPlacement.create(scenario.get("CONTAINER_PLACEMENT"), dimensions, numContainers);
+        if (placement == null) {
+            logger.error("unknown container placement " + scenario.get("CONTAINER_PLACEMENT"));
+            return;
+        }
+        if (!InputLog.configure(scenario.get("INPUT_LOG"), scenario.get("INPUT_LOG_DIR"))) {
+            logger.error("unknown input log mode " + scenario.get("INPUT_LOG"));
+            return;
+        }
+        if (!ExtendedAgent.setContentLanguage(scenario.get("CONTENT_LANGUAGE"))) {
+            logger.error("unknown content language " + scenario.get("CONTENT_LANGUAGE"));
+            return;
+        }
+        ExtendedAgent.setContentByReference(scenario.getBoolean("CONTENT_BY_REFERENCE"));
+        if (!ExtendedAgent.setBehaviourThreads(scenario.get("BEHAVIOUR_THREADS"))) {
+            logger.error("unknown or unsupported behaviour threads " + scenario.get("BEHAVIOUR_THREADS"));
+            return;
+        }
+        final int checkpointIval = scenario.getInt("CHECKPOINT_IVAL");
+        if (checkpointIval > 0 || scenario.getBoolean("RESTORE")) {
+            try {
+                Checkpoint.configure(scenario.get("CHECKPOINT_DIR"), scenario.getBoolean("RESTORE"));
+            } catch (final IOException e) {
+                logger.error("couldn't restore checkpoint: " + e.getMessage());
+                return;
+            }
+        }
+        containers = new AgentContainer[numContainers + 1];
+        if (container > 0) {
+            // peripheral container JVM, exits with its container
+            Runtime.instance().setCloseVM(true);
+            containers[container] = createPeripheralContainer(container);
+            logger.info("started container " + container + " (seed " + seed + ")");
+        } else {
+            containers[0] = Runtime.instance().createMainContainer(new ProfileImpl(scenario.get("JADE_HOST"),
+                                                                                   scenario.getInt("JADE_PORT"),
+                                                                                   null, true));
+            for (int i = 1; i <= numContainers; i++) {
+                if (scenario.getBoolean("CONTAINER_JVMS")) {
+                    startContainerJVM(i);
+                } else {
+                    containers[i] = createPeripheralContainer(i);
+                }
+            }
+            logger.info("starting simulation (seed " + seed + ", " + numContainers + " peripheral containers)");
+        }
         
-        // start the environment agent
-        AgentUtil.startAgent(ac, "environment", EnvironmentAgent.class.getName(), new Object[] {
-            AREA_WIDTH, AREA_HEIGHT, ENVIRONMENT_SPAWN_FIRE_IVAL, FIRE_INCREASE_IVAL});
-        logger.info("started environment");
+        // start the environment agents, one per shard
+        final AreaShards shards = new AreaShards(dimensions, scenario.getInt("AREA_SHARD_ROWS"),
+                                                 scenario.getInt("AREA_SHARD_COLS"));
+        for (int shard = 0; shard < shards.getNumShards(); shard++) {
+            // keep the area wide spawn interval
+            startAgent(placement.place(shards.getShardCoordinate(shard)),
+                       shards.getShardName(EnvironmentAgent.ENVIRONMENT_AGENT_NAME, shard),
+                       EnvironmentAgent.class.getName(), new Object[] {
+                           areaWidth, areaHeight,
+                           scenario.getInt("ENVIRONMENT_SPAWN_FIRE_IVAL") * shards.getNumShards(),
+                           scenario.getInt("FIRE_INCREASE_IVAL"), scenario.get("AREA_STORAGE"), shards.shardRows,
+                           shards.shardCols, shard, scenario.getInt("FIRE_SPREAD_IVAL"),
+                           scenario.getInt("FIRE_SPREAD_THRESHOLD"), scenario.getDouble("FIRE_SPREAD_PROBABILITY"),
+                           seed, fireTable, firePool});
+        }
+        logger.info("started environment (" + shards.getNumShards() + " shards)");
         
         // start the monitor agent
-        AgentUtil.startAgent(ac, "fire monitor", FireMonitorAgent.class.getName(),
-                             new Object[] {MONITOR_SCAN_AREA_IVAL});
+        final int scanRegionRows = scenario.getInt("MONITOR_SCAN_REGION_ROWS");
+        startAgent(0, "fire monitor", FireMonitorAgent.class.getName(), new Object[] {
+            scenario.getInt("MONITOR_SCAN_AREA_IVAL"), (scanRegionRows < 0) ? areaHeight : scanRegionRows,
+            scenario.getBoolean("MONITOR_SUBSCRIBE_FIRE_EVENTS")});
         logger.info("started fire monitor");
         
         // start the fire brigade coordinator
-        AgentUtil.startAgent(ac, "fire brigade coordinator", FireBrigadeCoordinatorAgent.class.getName(), null);
+        startAgent(0, "fire brigade coordinator", FireBrigadeCoordinatorAgent.class.getName(),
+                   new Object[] {scenario.getInt("CFP_STATIONS")});
         logger.info("started fire brigade coordinator");
         
         // start the fire brigade agents
-        startStationaryAgents(FireBrigadeAgent.class.getName(), NUMBER_OF_FIRE_BRIGADES, "fire brigade", "fb");
+        startStationaryAgents(FireBrigadeAgent.class.getName(), Scenario.FIRE_BRIGADES, "NUMBER_OF_FIRE_BRIGADES",
+                              "fire brigade", "fb", random, seed, shards, fireTable || firePool > 0);
         
         // start the hospital coordinator
-        AgentUtil.startAgent(ac, "hospital coordinator", HospitalCoordinatorAgent.class.getName(), null);
+        startAgent(0, "hospital coordinator", HospitalCoordinatorAgent.class.getName(),
+                   new Object[] {scenario.getInt("CFP_STATIONS")});
         logger.info("started hospital coordinator");
         
         // start the hospital agents
-        startStationaryAgents(HospitalAgent.class.getName(), NUMBER_OF_HOSPITALS, "hospital", "h");
+        startStationaryAgents(HospitalAgent.class.getName(), Scenario.HOSPITALS, "NUMBER_OF_HOSPITALS", "hospital",
+                              "h", random, seed, shards, fireTable || firePool > 0);
+        
+        // start the checkpoint agent
+        if (checkpointIval > 0) {
+            startAgent(0, "checkpoint", CheckpointAgent.class.getName(), new Object[] {checkpointIval});
+            logger.info("started checkpoint agent");
+        }
     }
     
-    private static void startStationaryAgents(final String className, final int num, final String name,
-                                              final String shortName) {
+    /**
+     * Starts the stations of a layout, or the given number of stations at random positions if the layout is empty.
+     * 
+     * @param className
+     * @param layout Layout parameter.
+     * @param numParam Number parameter.
+     * @param name
+     * @param shortName
+     * @param random
+     * @param seed
+     * @param shards
+     * @param environmentFires If the fires are hosted in the environment agents.
+     */
+    private static void startStationaryAgents(final String className, final String layout, final String numParam,
+                                              final String name, final String shortName, final Random random,
+                                              final long seed, final AreaShards shards, final boolean environmentFires) {
 
-        for (int i = 1; i <= num; i++) {
-            final String id = name + " " + i;
-            final Position position = new Position(RandomUtils.nextInt(AREA_HEIGHT - 1) + 1,
-                                                   RandomUtils.nextInt(AREA_WIDTH - 1) + 1);
-            AgentUtil.startAgent(ac, id, className, new Object[] {
-                shortName + i, position.getRow(), position.getCol(), VEHICLE_MOVE_IVAL});
+        final int areaWidth = scenario.getInt("AREA_WIDTH");
+        final int areaHeight = scenario.getInt("AREA_HEIGHT");
+        final int numVehicles = scenario.getInt("NUMBER_OF_VEHICLES");
+        List<Scenario.Station> stations = scenario.getStations(layout);
+        if (stations.isEmpty()) {
+            final int num = scenario.getInt(numParam);
+            stations = new ArrayList<Scenario.Station>(num);
+            for (int i = 1; i <= num; i++) {
+                stations.add(new Scenario.Station(new Position(random.nextInt(areaHeight - 1) + 1,
+                                                               random.nextInt(areaWidth - 1) + 1).getCoordinate(), 0));
+            }
+        }
+        int i = 0;
+        for (final Scenario.Station station : stations) {
+            final String id = name + " " + ++i;
+            final Position position = new Position(station.position);
+            startAgent(placement.place(station.position), id, className, new Object[] {
+                shortName + i, position.getRow(), position.getCol(), scenario.getInt("VEHICLE_MOVE_IVAL"), seed,
+                environmentFires, areaWidth, areaHeight, shards.shardRows, shards.shardCols,
+                scenario.getBoolean("VEHICLE_FLEET"), (station.numVehicles > 0) ? station.numVehicles : numVehicles});
             logger.debug("started '" + id + "' at (" + position + ")");
         }
-        logger.info("started " + NUMBER_OF_FIRE_BRIGADES + " " + name + "s");
+        logger.info("started " + stations.size() + " " + name + "s");
+    }
+    
+    /**
+     * Starts an agent if its container is in this JVM.
+     * 
+     * @param container
+     * @param nickname
+     * @param className
+     * @param args
+     */
+    private static void startAgent(final int container, final String nickname, final String className,
+                                   final Object[] args) {
+
+        if (containers[container] == null) return;
+        AgentUtil.startAgent(containers[container], nickname, className, args);
+    }
+    
+    /**
+     * @param container
+     * @return Peripheral container in this JVM connected to the main container.
+     */
+    private static AgentContainer createPeripheralContainer(final int container) {
+
+        final ProfileImpl profile = new ProfileImpl(scenario.get("JADE_HOST"), scenario.getInt("JADE_PORT"), null,
+                                                    false);
+        profile.setParameter(Profile.CONTAINER_NAME, "Container-" + container);
+        return Runtime.instance().createAgentContainer(profile);
+    }
+    
+    /**
+     * Starts a peripheral container as a separate JVM running this class with the same arguments. The JVM is destroyed
+     * when this JVM exits.
+     * 
+     * @param container
+     */
+    private static void startContainerJVM(final int container) {
+
+        final String javaCmd = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final List<String> command = new ArrayList<String>(Arrays.asList(javaCmd, "-cp",
+                                                                         System.getProperty("java.class.path"),
+                                                                         Main.class.getName()));
+        command.addAll(Arrays.asList(arguments));
+        command.add(Scenario.CONTAINER + "=" + container);
+        final ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        final Process process;
+        try {
+            process = pb.start();
+        } catch (final IOException e) {
+            logger.error("couldn't start the JVM of container " + container);
+            return;
+        }
+        if (containerProcesses.isEmpty()) {
+            java.lang.Runtime.getRuntime().addShutdownHook(new Thread() {
+                
+                @Override
+                public void run() {
+
+                    for (final Process p : containerProcesses) {
+                        p.destroy();
+                    }
+                }
+            });
+        }
+        containerProcesses.add(process);
+        
+        // forward the output, the process blocks if it is not read
+        final Thread output = new Thread() {
+            
+            @Override
+            public void run() {
+
+                final InputStream in = process.getInputStream();
+                final byte[] buffer = new byte[4096];
+                try {
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        System.out.write(buffer, 0, n);
+                    }
+                } catch (final IOException e) {
+                    // process ended
+                }
+            }
+        };
+        output.setDaemon(true);
+        output.start();
     }
 }
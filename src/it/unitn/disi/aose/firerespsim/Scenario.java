@@ -0,0 +1,355 @@
+package it.unitn.disi.aose.firerespsim;
+
+import it.unitn.disi.aose.firerespsim.model.ContainerPlacement;
+import it.unitn.disi.aose.firerespsim.model.SimulationArea;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.util.InputLog;
+import jade.domain.FIPANames;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Map.Entry;
+
+/**
+ * Parameters of a simulation run, read by {@link Main}. A scenario file is a properties file with the parameter names
+ * as keys (see {@link #DEFAULTS}), parameters missing in the file keep their default. The command line arguments are
+ * scenario files and <code>NAME=value</code> overrides, applied in order, so a matrix of runs can vary single
+ * parameters of a scenario without editing it. A single number is the master seed. The station layouts
+ * {@link #FIRE_BRIGADES} and {@link #HOSPITALS} are comma separated lists of stations <code>row col</code> or
+ * <code>row col vehicles</code>. If a layout is empty the stations get random positions. The whole scenario is
+ * validated when it is read ({@link #validate()}), so a malformed value is reported before any container starts.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class Scenario {
+    
+    /**
+     * Station layout parameter of the fire brigades.
+     */
+    public static final String FIRE_BRIGADES = "FIRE_BRIGADES";
+    /**
+     * Station layout parameter of the hospitals.
+     */
+    public static final String HOSPITALS = "HOSPITALS";
+    /**
+     * Parameter with the number of the container of the process, only set for peripheral container JVMs.
+     */
+    public static final String CONTAINER = "CONTAINER";
+    
+    /**
+     * Parameter names and default values.
+     */
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>() {
+        
+        {
+            // JADE Runtime
+            put("JADE_HOST", "localhost");
+            put("JADE_PORT", "1199");
+            put("NUMBER_OF_CONTAINERS", "0"); // peripheral containers, 0 to run all in the main container
+            put("CONTAINER_JVMS", "false"); // start the peripheral containers as separate local JVMs
+            put("CONTAINER_PLACEMENT", ContainerPlacement.ROUND_ROBIN);
+            put(CONTAINER, "0");
+            
+            // Configuration
+            put("AREA_WIDTH", "3");
+            put("AREA_HEIGHT", "3");
+            put("AREA_STORAGE", SimulationArea.STORAGE_DENSE);
+            put("AREA_SHARD_ROWS", "1");
+            put("AREA_SHARD_COLS", "1");
+            put("ENVIRONMENT_SPAWN_FIRE_IVAL", "10000");
+            put("FIRE_SPREAD_IVAL", "0"); // needs the fire table, 0 for no spread
+            put("FIRE_SPREAD_THRESHOLD", "5");
+            put("FIRE_SPREAD_PROBABILITY", "0.05");
+            put("FIRE_TABLE", "false"); // host the fires in the environment agents instead of fire agents
+            put("FIRE_POOL", "0"); // initial pooled fire agents per environment agent, 0 for no pool
+            put("MONITOR_SCAN_AREA_IVAL", "1000");
+            put("MONITOR_SCAN_REGION_ROWS", "-1"); // -1 for the area height
+            put("MONITOR_SUBSCRIBE_FIRE_EVENTS", "true");
+            put("NUMBER_OF_FIRE_BRIGADES", "2"); // if no fire brigade layout is given
+            put("NUMBER_OF_HOSPITALS", "2"); // if no hospital layout is given
+            put("CFP_STATIONS", "0"); // nearest stations to send a CFP to, 0 for all
+            put(FIRE_BRIGADES, "");
+            put(HOSPITALS, "");
+            put("FIRE_INCREASE_IVAL", "10000");
+            put("VEHICLE_MOVE_IVAL", "1000");
+            put("VEHICLE_FLEET", "false"); // host the vehicles in the stations instead of vehicle agents
+            put("NUMBER_OF_VEHICLES", "0"); // per station without layout, 0 for a random number between 1 and 4
+            put("SEED", "1"); // master seed of the random streams
+            put("INPUT_LOG", InputLog.OFF); // record or replay the inputs of the agents
+            put("INPUT_LOG_DIR", "input-log");
+            put("CHECKPOINT_IVAL", "0"); // checkpoint interval, 0 for no checkpoints
+            put("CHECKPOINT_DIR", "checkpoint");
+            put("RESTORE", "false"); // restore the agents from the checkpoint
+            put("CONTENT_LANGUAGE", FIPANames.ContentLanguage.FIPA_SL); // or BinaryCodec.NAME
+            put("CONTENT_BY_REFERENCE", "false"); // pass the content to agents in the same container without encoding
+            put("BEHAVIOUR_THREADS", "none"); // run the parallel behaviours in "platform" or "virtual" threads
+        }
+    };
+    
+    private final Properties properties = new Properties();
+    
+    /**
+     * Creates the default scenario.
+     */
+    public Scenario() {
+
+        properties.putAll(DEFAULTS);
+    }
+    
+    /**
+     * @param args Scenario files, <code>NAME=value</code> overrides, and the master seed.
+     * @return Validated scenario of the command line arguments.
+     * @throws IOException if a scenario file cannot be read
+     * @throws IllegalArgumentException if a parameter is unknown or invalid
+     */
+    public static Scenario fromArguments(final String[] args) throws IOException {
+
+        final Scenario scenario = new Scenario();
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq > 0) {
+                scenario.set(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+            } else if (arg.matches("-?\\d+")) {
+                scenario.set("SEED", arg);
+            } else {
+                scenario.load(arg);
+            }
+        }
+        scenario.validate();
+        return scenario;
+    }
+    
+    /**
+     * Checks the values of all parameters: the type of each value (the type of its default), the ranges of the
+     * numbers, the area storage type, the station layouts and their positions on the area, and the combination of fire
+     * spread and fire table.
+     * 
+     * @throws IllegalArgumentException with a readable message if a value is invalid
+     */
+    public void validate() {
+
+        for (final Entry<String, String> param : DEFAULTS.entrySet()) {
+            final String name = param.getKey();
+            final String value = get(name);
+            final String defaultValue = param.getValue();
+            if ("true".equals(defaultValue) || "false".equals(defaultValue)) {
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new IllegalArgumentException(name + " must be true or false, not '" + value + "'");
+                }
+            } else if (defaultValue.matches("-?\\d+")) {
+                try {
+                    if ("SEED".equals(name)) {
+                        getLong(name);
+                    } else {
+                        getInt(name);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException(name + " must be a whole number, not '" + value + "'");
+                }
+            } else if (defaultValue.matches("-?\\d*\\.\\d+")) {
+                try {
+                    getDouble(name);
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException(name + " must be a number, not '" + value + "'");
+                }
+            }
+        }
+        
+        checkMin("JADE_PORT", 1);
+        checkMin("NUMBER_OF_CONTAINERS", 0);
+        checkMin("AREA_WIDTH", 2);
+        checkMin("AREA_HEIGHT", 2);
+        checkMin("AREA_SHARD_ROWS", 1);
+        checkMin("AREA_SHARD_COLS", 1);
+        checkMin("ENVIRONMENT_SPAWN_FIRE_IVAL", 1);
+        checkMin("FIRE_SPREAD_IVAL", 0);
+        checkMin("FIRE_POOL", 0);
+        checkMin("MONITOR_SCAN_AREA_IVAL", 1);
+        checkMin("MONITOR_SCAN_REGION_ROWS", -1);
+        checkMin("NUMBER_OF_FIRE_BRIGADES", 0);
+        checkMin("NUMBER_OF_HOSPITALS", 0);
+        checkMin("CFP_STATIONS", 0);
+        checkMin("FIRE_INCREASE_IVAL", 1);
+        checkMin("VEHICLE_MOVE_IVAL", 1);
+        checkMin("NUMBER_OF_VEHICLES", 0);
+        checkMin("CHECKPOINT_IVAL", 0);
+        final double probability = getDouble("FIRE_SPREAD_PROBABILITY");
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("FIRE_SPREAD_PROBABILITY must be between 0 and 1, not " + probability);
+        }
+        if (!SimulationArea.STORAGE_DENSE.equals(get("AREA_STORAGE")) &&
+            !SimulationArea.STORAGE_TILED.equals(get("AREA_STORAGE"))) {
+            throw new IllegalArgumentException("unknown area storage type " + get("AREA_STORAGE"));
+        }
+        if (getInt("AREA_SHARD_ROWS") > getInt("AREA_HEIGHT") || getInt("AREA_SHARD_COLS") > getInt("AREA_WIDTH")) {
+            throw new IllegalArgumentException("more area shards than area rows or columns");
+        }
+        if (getInt("FIRE_SPREAD_IVAL") > 0 && !getBoolean("FIRE_TABLE")) {
+            throw new IllegalArgumentException("fire spread needs the fire table (FIRE_TABLE = true)");
+        }
+        
+        // station layouts
+        for (final String layout : new String[] {FIRE_BRIGADES, HOSPITALS}) {
+            for (final Station station : getStations(layout)) {
+                final Coordinate position = station.position;
+                if (position.getRow() < 1 || position.getRow() > getInt("AREA_HEIGHT") || position.getCol() < 1 ||
+                    position.getCol() > getInt("AREA_WIDTH")) {
+                    throw new IllegalArgumentException("station (" + position + ") in " + layout +
+                                                       " is outside of the area");
+                }
+                if (station.numVehicles < 0) {
+                    throw new IllegalArgumentException("negative number of vehicles of station (" + position +
+                                                       ") in " + layout);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param name Name of an int parameter.
+     * @param min
+     * @throws IllegalArgumentException if the value is less than the minimum
+     */
+    private void checkMin(final String name, final int min) {
+
+        if (getInt(name) < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min + ", not " + getInt(name));
+        }
+    }
+    
+    /**
+     * Reads a scenario file.
+     * 
+     * @param fileName
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a parameter is unknown
+     */
+    public void load(final String fileName) throws IOException {
+
+        final Properties file = new Properties();
+        final InputStream in = new FileInputStream(fileName);
+        try {
+            file.load(in);
+        } finally {
+            in.close();
+        }
+        for (final Entry<Object, Object> param : file.entrySet()) {
+            set(((String) param.getKey()).trim(), ((String) param.getValue()).trim());
+        }
+    }
+    
+    /**
+     * @param name
+     * @param value
+     * @throws IllegalArgumentException if the parameter is unknown
+     */
+    public void set(final String name, final String value) {
+
+        if (!DEFAULTS.containsKey(name)) throw new IllegalArgumentException("unknown scenario parameter " + name);
+        properties.setProperty(name, value);
+    }
+    
+    /**
+     * @param name
+     * @return Value of the parameter.
+     */
+    public String get(final String name) {
+
+        return properties.getProperty(name);
+    }
+    
+    /**
+     * @param name
+     * @return Value of the parameter.
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int getInt(final String name) {
+
+        return Integer.parseInt(get(name));
+    }
+    
+    /**
+     * @param name
+     * @return Value of the parameter.
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long getLong(final String name) {
+
+        return Long.parseLong(get(name));
+    }
+    
+    /**
+     * @param name
+     * @return Value of the parameter.
+     * @throws NumberFormatException if the value is not a double
+     */
+    public double getDouble(final String name) {
+
+        return Double.parseDouble(get(name));
+    }
+    
+    /**
+     * @param name
+     * @return Value of the parameter.
+     */
+    public boolean getBoolean(final String name) {
+
+        return Boolean.parseBoolean(get(name));
+    }
+    
+    /**
+     * @param name {@link #FIRE_BRIGADES} or {@link #HOSPITALS}.
+     * @return Stations of the layout, empty if none are given.
+     * @throws IllegalArgumentException if a station is malformed
+     */
+    public List<Station> getStations(final String name) {
+
+        final List<Station> stations = new ArrayList<Station>();
+        for (final String station : get(name).split(",")) {
+            if (station.trim().length() == 0) {
+                continue;
+            }
+            final String[] values = station.trim().split("\\s+");
+            if (values.length < 2 || values.length > 3) {
+                throw new IllegalArgumentException("malformed station '" + station + "' in " + name);
+            }
+            try {
+                stations.add(new Station(new Coordinate(Integer.parseInt(values[0]), Integer.parseInt(values[1])),
+                                         (values.length > 2) ? Integer.parseInt(values[2]) : 0));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("malformed station '" + station.trim() + "' in " + name);
+            }
+        }
+        return stations;
+    }
+    
+    /**
+     * Station of a layout.
+     */
+    public static final class Station {
+        
+        /**
+         * Position of the station.
+         */
+        public final Coordinate position;
+        /**
+         * Number of vehicles, 0 for the {@link Scenario} default.
+         */
+        public final int numVehicles;
+        
+        /**
+         * @param position
+         * @param numVehicles
+         */
+        public Station(final Coordinate position, final int numVehicles) {
+
+            this.position = position;
+            this.numVehicles = numVehicles;
+        }
+    }
+}
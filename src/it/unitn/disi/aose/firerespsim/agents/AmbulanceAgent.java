@@ -5,6 +5,9 @@ import it.unitn.disi.aose.firerespsim.ontology.PickUpCasualtyRequest;
 import jade.core.Agent;
 import jade.lang.acl.ACLMessage;
 import jade.proto.AchieveREInitiator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ListIterator;
 import java.util.Vector;
 
@@ -21,6 +24,26 @@ public final class AmbulanceAgent extends VehicleAgent {
      */
     boolean hasCasualty = false;
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.VehicleAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        out.writeBoolean(hasCasualty);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.VehicleAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        hasCasualty = in.readBoolean();
+    }
+    
     /**
      * @see it.unitn.disi.aose.firerespsim.agents.VehicleAgent#arrivedAtHome()
      */
@@ -63,6 +86,7 @@ public final class AmbulanceAgent extends VehicleAgent {
         if (pickUpCasualty == null) {
             pickUpCasualty = new PickUpCasualty(this, pickUpMsg);
         } else {
+            stopParallelBehaviour(pickUpCasualty);
             pickUpCasualty.reset(pickUpMsg);
         }
         addParallelBehaviour(pickUpCasualty);
@@ -0,0 +1,283 @@
+package it.unitn.disi.aose.firerespsim.agents;
+
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.AMSService;
+import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.AMSAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.lang.acl.ACLMessage;
+import jade.proto.AchieveREInitiator;
+import jade.util.leap.Iterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Takes checkpoints of the simulation in intervals. A checkpoint is a round with all agents of the platform. First the
+ * agents are asked to pause: they stop their tickers, behaviour threads, and message handling, and confirm. Only when
+ * all agents confirmed, they are asked to write their state and the messages delivered to them but not handled yet
+ * into their checkpoint files (see {@link ExtendedAgent#writeCheckpoint}). Then they continue. As no agent acts
+ * between the pause and the write, the round is a consistent snapshot of the simulation (see {@link Checkpoint}). A
+ * round that all agents wrote is committed and replaces the previous checkpoint, otherwise it is discarded and the
+ * previous checkpoint stays. Every round ends by the middle of the interval, the agents continue by themselves if it
+ * doesn't. Start-up parameter is the checkpoint interval.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class CheckpointAgent extends ExtendedAgent {
+    
+    /**
+     * Name prefix of the monitor agents JADE starts in every container.
+     */
+    private static final String CONTAINER_MONITOR_PREFIX = "monitor-";
+    
+    /**
+     * Instance of {@link PauseAgents} that gets re-used for every round. Package scoped for faster access by inner
+     * classes.
+     */
+    PauseAgents pauseAgents = null;
+    /**
+     * Instance of {@link RequestCheckpoint} that gets re-used for every round. Package scoped for faster access by inner
+     * classes.
+     */
+    RequestCheckpoint requestCheckpoint = null;
+    
+    /**
+     * @see jade.core.Agent#setup()
+     */
+    @Override
+    protected void setup() {
+
+        params = new LinkedHashMap<String, Object>() {
+            
+            {
+                put("CHECKPOINT_IVAL", 60000);
+            }
+        };
+        
+        super.setup();
+        
+        // add behaviors
+        parallelBehaviours.add(new TakeCheckpoint(this, (Integer) params.get("CHECKPOINT_IVAL")));
+        addBehaviours();
+    }
+    
+    /**
+     * Starts a checkpoint round at every tick by asking the agents to pause. The round is numbered on from the rounds in
+     * the checkpoint directory.
+     */
+    private class TakeCheckpoint extends TickerBehaviour {
+        
+        private final long period;
+        
+        /**
+         * @param a
+         * @param period
+         */
+        public TakeCheckpoint(final Agent a, final long period) {
+
+            super(a, period);
+            this.period = period;
+        }
+        
+        /**
+         * @see jade.core.behaviours.TickerBehaviour#onTick()
+         */
+        @Override
+        protected void onTick() {
+
+            final List<AID> recipients = getSimulationAgents();
+            if (recipients.isEmpty()) return;
+            final ACLMessage pauseMsg = createMessage(ACLMessage.REQUEST, CHECKPOINT_PAUSE_PROTOCOL, recipients, null);
+            pauseMsg.setConversationId(String.valueOf(Checkpoint.newRound()));
+            // end the round before the next one starts
+            pauseMsg.setReplyByDate(new Date(System.currentTimeMillis() + period / 2));
+            if (pauseAgents == null) {
+                pauseAgents = new PauseAgents(myAgent, pauseMsg);
+            } else {
+                stopParallelBehaviour(pauseAgents);
+                pauseAgents.reset(pauseMsg);
+            }
+            addParallelBehaviour(pauseAgents);
+        }
+        
+        /**
+         * @return All agents of the platform except this agent and the platform agents (AMS, DF, and container
+         *         monitors).
+         */
+        private List<AID> getSimulationAgents() {
+
+            final List<AID> agents = new ArrayList<AID>();
+            final SearchConstraints sc = new SearchConstraints();
+            sc.setMaxResults(-1L);
+            AMSAgentDescription[] descriptions;
+            try {
+                descriptions = AMSService.search(myAgent, new AMSAgentDescription(), sc);
+            } catch (final FIPAException e) {
+                logger.error("error searching agents at the AMS");
+                return agents;
+            }
+            for (final AMSAgentDescription description : descriptions) {
+                final AID aid = description.getName();
+                if (aid.equals(getAID()) || aid.equals(getAMS()) || aid.equals(getDefaultDF())
+                    || aid.getLocalName().startsWith(CONTAINER_MONITOR_PREFIX)) {
+                    continue;
+                }
+                agents.add(aid);
+            }
+            return agents;
+        }
+    }
+    
+    /**
+     * Asks the agents to pause for a round and waits until all confirmed, then requests their checkpoints. If not all
+     * agents paused, the round is discarded and the paused agents continue.
+     */
+    private class PauseAgents extends AchieveREInitiator {
+        
+        /**
+         * @param a
+         * @param msg
+         */
+        public PauseAgents(final Agent a, final ACLMessage msg) {
+
+            super(a, msg);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREInitiator#handleAllResultNotifications(java.util.Vector)
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void handleAllResultNotifications(final Vector resultNotifications) {
+
+            final ACLMessage pauseMsg = (ACLMessage) getDataStore().get(REQUEST_KEY);
+            final String round = pauseMsg.getConversationId();
+            final List<AID> agents = getReceivers(pauseMsg);
+            final List<AID> notPaused = getMissingInforms(agents, resultNotifications);
+            if (!notPaused.isEmpty()) {
+                logger.warn("checkpoint round " + round + " discarded, " + notPaused.size() + " of " + agents.size()
+                            + " agents did not pause: " + getLocalNames(notPaused));
+                endRound(round, agents, false);
+                return;
+            }
+            final ACLMessage requestMsg = createMessage(ACLMessage.REQUEST, CHECKPOINT_PROTOCOL, agents, null);
+            requestMsg.setConversationId(round);
+            requestMsg.setReplyByDate(pauseMsg.getReplyByDate());
+            if (requestCheckpoint == null) {
+                requestCheckpoint = new RequestCheckpoint(myAgent, requestMsg);
+            } else {
+                stopParallelBehaviour(requestCheckpoint);
+                requestCheckpoint.reset(requestMsg);
+            }
+            addParallelBehaviour(requestCheckpoint);
+        }
+    }
+    
+    /**
+     * Requests the checkpoint of a round from the paused agents and ends the round.
+     */
+    private class RequestCheckpoint extends AchieveREInitiator {
+        
+        /**
+         * @param a
+         * @param msg
+         */
+        public RequestCheckpoint(final Agent a, final ACLMessage msg) {
+
+            super(a, msg);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREInitiator#handleAllResultNotifications(java.util.Vector)
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void handleAllResultNotifications(final Vector resultNotifications) {
+
+            final ACLMessage request = (ACLMessage) getDataStore().get(REQUEST_KEY);
+            final List<AID> agents = getReceivers(request);
+            final List<AID> notWritten = getMissingInforms(agents, resultNotifications);
+            logger.info("checkpoint round " + request.getConversationId() + " written by "
+                        + (agents.size() - notWritten.size()) + " of " + agents.size() + " agents");
+            if (!notWritten.isEmpty()) {
+                logger.warn("checkpoint round " + request.getConversationId() + " discarded, not written by "
+                            + getLocalNames(notWritten) + ", the previous checkpoint stays");
+            }
+            endRound(request.getConversationId(), agents, notWritten.isEmpty());
+        }
+    }
+    
+    /**
+     * Lets the agents continue, then commits or discards the round. Package scoped for faster access by inner classes.
+     * 
+     * @param round
+     * @param agents Agents of the round.
+     * @param complete If all agents wrote the round.
+     */
+    void endRound(final String round, final List<AID> agents, final boolean complete) {
+
+        final ACLMessage resumeMsg = createMessage(ACLMessage.INFORM, CHECKPOINT_RESUME_PROTOCOL, agents, null);
+        resumeMsg.setConversationId(round);
+        send(resumeMsg);
+        try {
+            if (complete) {
+                Checkpoint.commit(Integer.parseInt(round));
+            } else {
+                Checkpoint.discard(Integer.parseInt(round));
+            }
+        } catch (final IOException e) {
+            logger.error("error committing checkpoint round " + round + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * @param msg
+     * @return Receivers of the message.
+     */
+    static List<AID> getReceivers(final ACLMessage msg) {
+
+        final List<AID> receivers = new ArrayList<AID>();
+        final Iterator iter = msg.getAllReceiver();
+        while (iter.hasNext()) {
+            receivers.add((AID) iter.next());
+        }
+        return receivers;
+    }
+    
+    /**
+     * @param agents
+     * @param notifications
+     * @return Agents that did not send an {@link ACLMessage#INFORM} notification.
+     */
+    static List<AID> getMissingInforms(final List<AID> agents, final Vector<?> notifications) {
+
+        final List<AID> missing = new ArrayList<AID>(agents);
+        for (final Object notification : notifications) {
+            if (((ACLMessage) notification).getPerformative() == ACLMessage.INFORM) {
+                missing.remove(((ACLMessage) notification).getSender());
+            }
+        }
+        return missing;
+    }
+    
+    /**
+     * @param agents
+     * @return Local names of the agents.
+     */
+    static List<String> getLocalNames(final List<AID> agents) {
+
+        final List<String> names = new ArrayList<String>(agents.size());
+        for (final AID agent : agents) {
+            names.add(agent.getLocalName());
+        }
+        return names;
+    }
+}
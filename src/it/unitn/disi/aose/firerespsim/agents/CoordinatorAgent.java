@@ -3,23 +3,35 @@ package it.unitn.disi.aose.firerespsim.agents;
 import it.unitn.disi.aose.firerespsim.behaviours.FindAgent;
 import it.unitn.disi.aose.firerespsim.behaviours.Subscriber;
 import it.unitn.disi.aose.firerespsim.behaviours.SubscriptionService;
+import it.unitn.disi.aose.firerespsim.model.Dispatch;
+import it.unitn.disi.aose.firerespsim.model.SpatialIndex;
 import it.unitn.disi.aose.firerespsim.model.Subscribers;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
 import it.unitn.disi.aose.firerespsim.ontology.FireAlert;
 import it.unitn.disi.aose.firerespsim.ontology.HandleFireCFP;
 import it.unitn.disi.aose.firerespsim.ontology.HandleFireProposal;
+import it.unitn.disi.aose.firerespsim.ontology.StationPositionInfo;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.DataStore;
 import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.FIPAAgentManagement.FailureException;
+import jade.domain.FIPAAgentManagement.NotUnderstoodException;
+import jade.domain.FIPAAgentManagement.RefuseException;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.ContractNetInitiator;
 import jade.proto.SubscriptionResponder.Subscription;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
@@ -27,7 +39,11 @@ import java.util.Vector;
 
 /**
  * Coordinator for {@link StationaryAgent}s. Subscribes at the {@link FireMonitorAgent} for fire alerts. Distribute the
- * responsibilities for the fires among the registered stationary agents. No start-up parameters.
+ * responsibilities for the fires among the registered stationary agents. The stationary agents are indexed by the
+ * position they send with their subscription, and the CFP for a fire goes to the nearest ones only. If none of them has
+ * an available vehicle, the CFP is widened to twice as many, sent only to the ones not asked yet, until all are asked.
+ * Stationary agents without position only get the CFP in the last round, with all remaining ones. Start-up parameter
+ * is the number of nearest stationary agents to send a CFP to (0 for all).
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
@@ -46,7 +62,21 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
     /**
      * Package scoped for faster access by inner classes.
      */
-    final Subscribers coordSubscribers = new Subscribers();
+    final Subscribers coordSubscribers = new StationSubscribers();
+    /**
+     * Positions of the subscribed stationary agents. Package scoped for faster access by inner classes.
+     */
+    final SpatialIndex<AID> stations = new SpatialIndex<AID>();
+    /**
+     * Subscribed stationary agents without a known position, which get every CFP. Package scoped for faster access by
+     * inner classes.
+     */
+    final Set<AID> unlocatedStations = new HashSet<AID>();
+    /**
+     * Instances of {@link CoordinateFire} that get re-used, one per running coordination. Package scoped for faster
+     * access by inner classes.
+     */
+    final List<CoordinateFire> coordinations = new ArrayList<CoordinateFire>();
     /**
      * Currently known fires. Package scoped for faster access by inner classes.
      */
@@ -58,6 +88,13 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
     @Override
     protected void setup() {
 
+        params = new LinkedHashMap<String, Object>() {
+            
+            {
+                put("CFP_STATIONS", 0);
+            }
+        };
+        
         dfTypes = new String[] {dfType};
         
         super.setup();
@@ -81,6 +118,29 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
         addBehaviours();
     }
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        Checkpoint.writeCoordinates(out, knownFires);
+    }
+    
+    /**
+     * Restores the known fires.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        knownFires.clear();
+        Checkpoint.readCoordinates(in, knownFires);
+    }
+    
     /**
      * Handles a fire alert. If a fire is new, starts a {@link CoordinateFire} for it.
      */
@@ -126,31 +186,112 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
             knownFires.add(fireCoord); // TODO remove fires when put out
             
             // start cfp
-            final Set<Subscription> coordSubscriptions = coordSubscribers.getSubscriptions();
-            if (coordSubscriptions.isEmpty()) {
+            if (coordSubscribers.getSubscriptions().isEmpty()) {
                 logger.error("no stationary agent registered to send CFP to - fire will not be handled!");
                 return;
             }
-            final List<AID> recipients = new ArrayList<AID>();
-            for (final Subscription sub : coordSubscriptions) {
+            coordinateFire(fireCoord, (Integer) params.get("CFP_STATIONS"), new HashSet<AID>(),
+                           System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * Sends a CFP for a fire to the nearest stationary agents that were not asked yet, in an idle
+     * {@link CoordinateFire} or a new one if all are running. The stationary agents without position are only asked in
+     * the last round, when the CFP covers all the others. Package scoped for faster access by inner classes.
+     * 
+     * @param fireCoord
+     * @param numStations Number of nearest stationary agents to cover with the CFP, 0 for all.
+     * @param askedStations Stationary agents asked in the earlier rounds for the fire, not asked again. Gets the
+     *            recipients of this round added.
+     * @param alertTime Time of the fire alert.
+     */
+    void coordinateFire(final Coordinate fireCoord, final int numStations, final Set<AID> askedStations,
+                        final long alertTime) {
+
+        final List<AID> recipients = new ArrayList<AID>();
+        if (numStations < 1) {
+            for (final Subscription sub : coordSubscribers.getSubscriptions()) {
                 recipients.add(sub.getMessage().getSender());
             }
-            final ACLMessage cfpMsg = createMessage(ACLMessage.CFP, COORDINATION_PROTOCOL, recipients,
-                                                    new HandleFireCFP(fireCoord));
-            if (coordinateFire == null) {
-                coordinateFire = new CoordinateFire(myAgent, cfpMsg);
-            } else {
+        } else {
+            for (final AID station : stations.getNearest(fireCoord, numStations)) {
+                if (!askedStations.contains(station)) {
+                    recipients.add(station);
+                }
+            }
+            if (numStations >= stations.size()) {
+                // last round
+                recipients.addAll(unlocatedStations);
+            }
+        }
+        askedStations.addAll(recipients);
+        final ACLMessage cfpMsg = createMessage(ACLMessage.CFP, COORDINATION_PROTOCOL, recipients,
+                                                new HandleFireCFP(fireCoord));
+        
+        CoordinateFire coordinateFire = null;
+        for (final CoordinateFire coordination : coordinations) {
+            if (coordination.done()) {
+                coordinateFire = coordination;
+                stopParallelBehaviour(coordinateFire);
                 coordinateFire.reset(cfpMsg);
+                break;
             }
-            addParallelBehaviour(coordinateFire);
         }
+        if (coordinateFire == null) {
+            coordinateFire = new CoordinateFire(this, cfpMsg);
+            coordinations.add(coordinateFire);
+        }
+        coordinateFire.fireCoord = fireCoord;
+        coordinateFire.numStations = numStations;
+        coordinateFire.askedStations = askedStations;
+        coordinateFire.alertTime = alertTime;
+        addParallelBehaviour(coordinateFire);
     }
     
     /**
-     * Instance of {@link CoordinateFire} that gets re-used for every coordination. Package scoped for faster access by
-     * inner classes.
+     * Keeps {@link CoordinatorAgent#stations} and {@link CoordinatorAgent#unlocatedStations} up to date with the
+     * subscriptions.
      */
-    CoordinateFire coordinateFire = null;
+    private class StationSubscribers extends Subscribers {
+        
+        /**
+         * Constructor.
+         */
+        public StationSubscribers() {
+
+            super();
+        }
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.model.Subscribers#register(jade.proto.SubscriptionResponder.Subscription)
+         */
+        @Override
+        public boolean register(final Subscription s) throws RefuseException, NotUnderstoodException {
+
+            final AID station = s.getMessage().getSender();
+            try {
+                stations.put(station, extractMessageContent(StationPositionInfo.class, s.getMessage(), true)
+                                              .getStationCoordinate());
+            } catch (final Exception e) {
+                logger.warn("no position in subscription of " + station.getLocalName() + ", will get every CFP");
+                unlocatedStations.add(station);
+            }
+            return super.register(s);
+        }
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.model.Subscribers#deregister(jade.proto.SubscriptionResponder.Subscription)
+         */
+        @Override
+        public boolean deregister(final Subscription s) throws FailureException {
+
+            final AID station = s.getMessage().getSender();
+            stations.remove(station);
+            unlocatedStations.remove(station);
+            return super.deregister(s);
+        }
+    }
     
     /**
      * Coordinates the responsibility for a new fire. Sends a CFP and gives the responsibility to the stationary agent
@@ -158,6 +299,26 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
      */
     private class CoordinateFire extends ContractNetInitiator {
         
+        /**
+         * Coordinate of the fire. Package scoped for faster access by the outer class.
+         */
+        Coordinate fireCoord = null;
+        /**
+         * Number of nearest stationary agents the CFP was sent to, 0 for all. Package scoped for faster access by the
+         * outer class.
+         */
+        int numStations = 0;
+        /**
+         * Stationary agents asked for the fire so far, in this and the earlier rounds. Package scoped for faster
+         * access by the outer class.
+         */
+        Set<AID> askedStations = null;
+        /**
+         * Time of the fire alert, for the {@link IncidentMetrics#DISPATCH_LATENCY}. Package scoped for faster access by
+         * the outer class.
+         */
+        long alertTime = 0;
+        
         /**
          * @param a
          * @param cfp
@@ -174,6 +335,8 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
         @Override
         protected void handleAllResponses(final Vector responses, final Vector acceptances) {
 
+            logArrivalOrder(responses);
+            
             // find best proposal
             ACLMessage bestMsg = null;
             HandleFireProposal bestProp = null;
@@ -189,19 +352,27 @@ public abstract class CoordinatorAgent extends ExtendedAgent {
                 } catch (final Exception e) {
                     continue;
                 }
-                // number of available vehicles is primary criteria, distance to fire is secondary criteria
-                if (bestProp == null || prop.getNumVehicles() > bestProp.getNumVehicles() ||
-                    (prop.getNumVehicles() == bestProp.getNumVehicles() && prop.getDistance() < bestProp.getDistance())) {
+                if (Dispatch.isBetterProposal(prop, bestProp)) {
                     bestMsg = msg;
                     bestProp = prop;
                 }
             }
             
-            if (bestProp == null) {
+            // widen the CFP to the next nearest stationary agents if none of the asked ones has an available vehicle
+            final boolean widen = (bestProp == null || bestProp.getNumVehicles() < 1) && numStations > 0 &&
+                                  numStations < stations.size();
+            if (widen) {
+                logger.debug("no available vehicle at the " + numStations + " nearest stationary agents to fire at (" +
+                             fireCoord + "), sending CFP to the next up to " + numStations + " nearest");
+                bestMsg = null;
+                coordinateFire(fireCoord, numStations * 2, askedStations, alertTime);
+            } else if (bestProp == null) {
                 logger.error("no proposal for fire, will not be handled!");
                 return;
+            } else {
+                logger.info("accepted proposal (" + bestProp + ")");
+                IncidentMetrics.DISPATCH_LATENCY.record(System.currentTimeMillis() - alertTime);
             }
-            logger.info("accepted proposal (" + bestProp + ")");
             
             // create replies
             iter = responses.listIterator();
@@ -1,13 +1,31 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
+import it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler;
+import it.unitn.disi.aose.firerespsim.behaviours.SubscriptionService;
+import it.unitn.disi.aose.firerespsim.model.AreaShards;
+import it.unitn.disi.aose.firerespsim.model.FireSpread;
+import it.unitn.disi.aose.firerespsim.model.FireTable;
 import it.unitn.disi.aose.firerespsim.model.Position;
 import it.unitn.disi.aose.firerespsim.model.SimulationArea;
+import it.unitn.disi.aose.firerespsim.model.Subscribers;
 import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.ontology.AreaDimensionsInfo;
+import it.unitn.disi.aose.firerespsim.ontology.ArmFireRequest;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatusInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionRequest;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusChangeInfo;
 import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusInfo;
 import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusRequest;
+import it.unitn.disi.aose.firerespsim.ontology.PickUpCasualtyRequest;
+import it.unitn.disi.aose.firerespsim.ontology.PutOutRequest;
 import it.unitn.disi.aose.firerespsim.util.AgentUtil;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
+import it.unitn.disi.aose.firerespsim.util.InputLog;
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.FIPAAgentManagement.FailureException;
@@ -16,21 +34,51 @@ import jade.domain.FIPAAgentManagement.RefuseException;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.AchieveREResponder;
-import jade.wrapper.AgentController;
-import jade.wrapper.ControllerException;
+import jade.proto.SubscriptionResponder.Subscription;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import org.apache.commons.lang.math.RandomUtils;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
 
 /**
- * This agent maintains the area of the simulation and generates new fires. Start-up parameters area simulation area
- * width, simulation area height, and fire spawn interval.
+ * This agent maintains the area of the simulation and generates new fires. Agents can subscribe to get notified about
+ * started and ended fires. The area can be partitioned into shards ({@link AreaShards}), each maintained by its own
+ * environment agent named {@link AreaShards#getShardName(String, int)} of {@link #ENVIRONMENT_AGENT_NAME}. A shard only
+ * serves the coordinates it owns and only spawns fires on them. Start-up parameters area simulation area width,
+ * simulation area height, fire spawn interval (per shard), fire increase interval, the area storage type
+ * ({@link SimulationArea#STORAGE_DENSE} or {@link SimulationArea#STORAGE_TILED} for very large areas), the number of
+ * shard rows and columns, the shard of this agent, the fire spread interval (0 to not let fires spread), the minimum
+ * intensity of a fire to spread, the spread probability, the master seed of the random streams, if the fires are
+ * hosted in a fire table, and the initial number of pooled fire agents (0 to start a fire agent per fire). If enabled, the
+ * fire spread is modeled by {@link FireSpread} on the fire table of the owned shard, so the spread follows the actual
+ * fire intensities, and every position that catches fire gets a row of the fire table. Fires at the shard border
+ * spread into the neighbor shards: the positions there that catch fire are sent to the agents owning them, so the
+ * sharding does not change the spread. By default every fire is a {@link FireAgent}. With the fire table the
+ * fires of the shard are rows of a {@link FireTable} and this agent serves the put out, pick up casualty, and fire
+ * status protocols of the fire agents on their behalf, so heavy fire loads don't cost an agent per fire. With the fire
+ * pool the fires are pooled {@link FireAgent}s that are armed with a fire when it starts and return to the pool when it
+ * ended. The pool grows when it runs empty. Vehicles cannot derive the name of a pooled fire agent from the fire
+ * position, so they send the put out and pick up casualty requests to this agent, which forwards them to the fire
+ * agent armed with the fire at the vehicle position.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
 public final class EnvironmentAgent extends ExtendedAgent {
     
+    /**
+     * Name of the environment agent, base name of the environment agents if the area is sharded.
+     */
+    public final static String ENVIRONMENT_AGENT_NAME = "environment";
     /**
      * DF type of area dimension service.
      */
@@ -47,15 +95,79 @@ public final class EnvironmentAgent extends ExtendedAgent {
      * Protocol for on fire status messages.
      */
     final static String ON_FIRE_STATUS_PROTOCOL = "OnFireStatus";
+    /**
+     * Protocol for on fire region messages. Served as part of the on fire status service.
+     */
+    final static String ON_FIRE_REGION_PROTOCOL = "OnFireRegion";
+    /**
+     * DF type of fire event service.
+     */
+    final static String FIRE_EVENTS_DF_TYPE = "FireEvents";
+    /**
+     * Protocol for fire event messages.
+     */
+    final static String FIRE_EVENTS_PROTOCOL = "FireEvents";
+    /**
+     * Protocol for the messages of fire agents reporting that their fire ended.
+     */
+    final static String FIRE_ENDED_PROTOCOL = "FireEnded";
+    /**
+     * Protocol for the messages of environment agents reporting that a fire spread into the shard of the receiver.
+     */
+    final static String FIRE_SPREAD_PROTOCOL = "FireSpread";
     
     /**
-     * Model of the simulation area. Package scoped for faster access by inner classes.
+     * Partitioning of the simulation area. Package scoped for faster access by inner classes.
+     */
+    AreaShards shards;
+    /**
+     * Shard owned by this agent. Package scoped for faster access by inner classes.
+     */
+    int shard;
+    /**
+     * Upper left coordinate of the owned shard on the simulation area. Package scoped for faster access by inner
+     * classes.
+     */
+    Coordinate shardCoord;
+    /**
+     * Model of the owned shard of the simulation area, in shard coordinates (see {@link #toShard(Coordinate)}).
+     * Registry of the live fires: set when a fire agent is started and reset when the fire agent reports that its fire
+     * ended, so the on fire states can be read without checking the fire agents. Package scoped for faster access by
+     * inner classes.
      */
     SimulationArea area;
+    /**
+     * Model of the fire spread on the owned shard, <code>null</code> if fires don't spread. Package scoped for faster
+     * access by inner classes.
+     */
+    FireSpread spread = null;
+    /**
+     * Fires of the owned shard (in shard coordinates), <code>null</code> if every fire is a {@link FireAgent}. Package
+     * scoped for faster access by inner classes.
+     */
+    FireTable fires = null;
+    /**
+     * Idle pooled fire agents, <code>null</code> if the fire agents are not pooled. Package scoped for faster access by
+     * inner classes.
+     */
+    Deque<AID> fireAgentPool = null;
+    /**
+     * Pooled fire agents armed with a fire, by fire coordinate (on the simulation area). Package scoped for faster access
+     * by inner classes.
+     */
+    final Map<Coordinate, AID> armedFireAgents = new HashMap<Coordinate, AID>();
+    /**
+     * Number of pooled fire agents started so far.
+     */
+    private int numPooledFireAgents = 0;
     /**
      * Increase interval to be passed to started fire agents.
      */
     int fireIncreaseIval;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final Subscribers fireEventSubscribers = new FireEventSubscribers();
     
     /**
      * @see jade.core.Agent#setup()
@@ -70,16 +182,45 @@ public final class EnvironmentAgent extends ExtendedAgent {
                 put("AREA_HEIGHT", 10);
                 put("SPAWN_FIRE_IVAL", 100000);
                 put("FIRE_INCREASE_IVAL", 10000);
+                put("AREA_STORAGE", SimulationArea.STORAGE_DENSE);
+                put("SHARD_ROWS", 1);
+                put("SHARD_COLS", 1);
+                put("SHARD", 0);
+                put("SPREAD_IVAL", 0);
+                put("SPREAD_THRESHOLD", 5);
+                put("SPREAD_PROBABILITY", 0.05);
+                put(SEED_PARAM, UNSEEDED);
+                put("FIRE_TABLE", false);
+                put("FIRE_POOL", 0);
             }
         };
         
-        dfTypes = new String[] {AREA_DIMENSIONS_DF_TYPE, ON_FIRE_STATUS_DF_TYPE};
+        dfTypes = new String[] {AREA_DIMENSIONS_DF_TYPE, ON_FIRE_STATUS_DF_TYPE, FIRE_EVENTS_DF_TYPE};
         
         super.setup();
         
-        area = new SimulationArea(new AreaDimensions((Integer) params.get("AREA_WIDTH"),
-                                                     (Integer) params.get("AREA_HEIGHT")));
+        shards = new AreaShards(new AreaDimensions((Integer) params.get("AREA_WIDTH"),
+                                                   (Integer) params.get("AREA_HEIGHT")),
+                                (Integer) params.get("SHARD_ROWS"), (Integer) params.get("SHARD_COLS"));
+        shard = (Integer) params.get("SHARD");
+        if (shard < 0 || shard >= shards.getNumShards()) {
+            logger.error("shard " + shard + " does not exist");
+            doDelete();
+            return;
+        }
+        shardCoord = shards.getShardCoordinate(shard);
+        area = SimulationArea.create(shards.getShardDimensions(shard), (String) params.get("AREA_STORAGE"));
+        if (area == null) {
+            logger.error("unknown area storage type " + params.get("AREA_STORAGE"));
+            doDelete();
+            return;
+        }
         fireIncreaseIval = (Integer) params.get("FIRE_INCREASE_IVAL");
+        if ((Integer) params.get("SPREAD_IVAL") > 0 && !(Boolean) params.get("FIRE_TABLE")) {
+            logger.error("fire spread needs the fire table");
+            doDelete();
+            return;
+        }
         
         // create behaviors
         final MessageTemplate areaDimReqTpl = createMessageTemplate(null, AREA_DIMENSIONS_PROTOCOL, ACLMessage.REQUEST);
@@ -87,13 +228,144 @@ public final class EnvironmentAgent extends ExtendedAgent {
         final MessageTemplate onFireStatusReqTpl = createMessageTemplate(null, ON_FIRE_STATUS_PROTOCOL,
                                                                          ACLMessage.REQUEST);
         final OnFireStatusService onFireStatusService = new OnFireStatusService(this, onFireStatusReqTpl);
+        final MessageTemplate onFireRegionReqTpl = createMessageTemplate(null, ON_FIRE_REGION_PROTOCOL,
+                                                                         ACLMessage.REQUEST);
+        final OnFireRegionService onFireRegionService = new OnFireRegionService(this, onFireRegionReqTpl);
+        final MessageTemplate fireEventsSubsTpl = createMessageTemplate(null, FIRE_EVENTS_PROTOCOL,
+                                                                        ACLMessage.SUBSCRIBE);
+        final SubscriptionService fireEventsSubsService = new SubscriptionService(this, fireEventsSubsTpl,
+                                                                                  fireEventSubscribers);
         final SpawnFire spawnFires = new SpawnFire(this, (Integer) params.get("SPAWN_FIRE_IVAL"));
+        if ((Boolean) params.get("FIRE_TABLE")) {
+            fires = new FireTable(area.dimensions);
+            final MessageTemplate putOutTpl = createMessageTemplate(null, FireAgent.PUT_OUT_PROTOCOL,
+                                                                    ACLMessage.REQUEST);
+            final MessageTemplate pickUpTpl = createMessageTemplate(null, FireAgent.PICK_UP_CASUALTY_PROTOCOL,
+                                                                    ACLMessage.REQUEST);
+            parallelBehaviours.addAll(Arrays.asList(new PutOutService(this, putOutTpl),
+                                                    new PickUpCasualtyService(this, pickUpTpl),
+                                                    new IncreaseFires(this, fireIncreaseIval)));
+            final int spreadIval = (Integer) params.get("SPREAD_IVAL");
+            if (spreadIval > 0) {
+                spread = new FireSpread(shards, shard, (Integer) params.get("SPREAD_THRESHOLD"),
+                                        (Double) params.get("SPREAD_PROBABILITY"), random.nextLong(),
+                                        Runtime.getRuntime().availableProcessors());
+                parallelBehaviours.add(new SpreadFire(this, spreadIval));
+                addMessageHandler(FIRE_SPREAD_PROTOCOL, ACLMessage.INFORM, new ReceiveFireSpread());
+            }
+        } else if ((Integer) params.get("FIRE_POOL") > 0) {
+            fireAgentPool = new ArrayDeque<AID>();
+            for (int i = 0; i < (Integer) params.get("FIRE_POOL"); i++) {
+                final AID fireAgent = startPooledFireAgent();
+                if (fireAgent != null) {
+                    fireAgentPool.add(fireAgent);
+                }
+            }
+            logger.info("started " + fireAgentPool.size() + " pooled fire agents");
+            final ForwardFireRequests forwardFireRequests = new ForwardFireRequests();
+            addMessageHandler(FireAgent.PUT_OUT_PROTOCOL, ACLMessage.REQUEST, forwardFireRequests);
+            addMessageHandler(FireAgent.PICK_UP_CASUALTY_PROTOCOL, ACLMessage.REQUEST, forwardFireRequests);
+        }
         
         // add behaviors
-        parallelBehaviours.addAll(Arrays.asList(areaDimService, onFireStatusService, spawnFires));
+        parallelBehaviours.addAll(Arrays.asList(areaDimService, onFireStatusService, onFireRegionService,
+                                                fireEventsSubsService, spawnFires));
+        addMessageHandler(FIRE_ENDED_PROTOCOL, ACLMessage.INFORM, new ReceiveFireEnded());
         addBehaviours();
     }
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#takeDown()
+     */
+    @Override
+    protected void takeDown() {
+
+        if (spread != null) {
+            spread.shutdown();
+        }
+        
+        super.takeDown();
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        Checkpoint.writeCoordinates(out, area.getOnFireCoordinates());
+        if (spread != null) {
+            spread.write(out);
+        }
+        if (fires != null) {
+            fires.write(out);
+        }
+        if (fireAgentPool != null) {
+            out.writeInt(numPooledFireAgents);
+            out.writeInt(armedFireAgents.size());
+            for (final Entry<Coordinate, AID> armed : armedFireAgents.entrySet()) {
+                Checkpoint.writeCoordinate(out, armed.getKey());
+                out.writeUTF(armed.getValue().getLocalName());
+            }
+        }
+    }
+    
+    /**
+     * Restores the on fire states, the fire spread, and the fires. Without fire table or pool the fire agents are
+     * started again under their names and restore their fires from their own checkpoints. The pool is grown to its
+     * size at the checkpoint, the pooled fire agents restore their fires from their own checkpoints. The fire event
+     * subscribers get the restored fires when they subscribe.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        final List<Coordinate> onFire = new ArrayList<Coordinate>();
+        Checkpoint.readCoordinates(in, onFire);
+        for (final Coordinate shardFireCoord : onFire) {
+            area.setOnFireState(shardFireCoord, true);
+        }
+        if (spread != null) {
+            spread.read(in);
+        }
+        if (fires != null) {
+            fires.read(in);
+        } else if (fireAgentPool != null) {
+            final int numFireAgents = in.readInt();
+            while (numPooledFireAgents < numFireAgents) {
+                if (startPooledFireAgent() == null) throw new IOException("cannot start pooled fire agent");
+            }
+            final Map<String, Coordinate> armed = new HashMap<String, Coordinate>();
+            final int numArmed = in.readInt();
+            for (int i = 0; i < numArmed; i++) {
+                final Coordinate fireCoord = Checkpoint.readCoordinate(in);
+                armed.put(in.readUTF(), fireCoord);
+            }
+            fireAgentPool.clear();
+            armedFireAgents.clear();
+            for (int i = 0; i < numPooledFireAgents; i++) {
+                final String name = getLocalName() + " " + FireAgent.FIRE_AGENT_NAME_PREFIX + i;
+                if (armed.containsKey(name)) {
+                    armedFireAgents.put(armed.get(name), new AID(name, false));
+                } else {
+                    fireAgentPool.add(new AID(name, false));
+                }
+            }
+        } else {
+            for (final Coordinate shardFireCoord : onFire) {
+                final Position firePosition = new Position(fromShard(shardFireCoord));
+                final Object[] args = {
+                    firePosition.getRow(), firePosition.getCol(), fireIncreaseIval, getName(), random.nextLong()};
+                AgentUtil.startAgent(getContainerController(), FireAgent.FIRE_AGENT_NAME_PREFIX + firePosition,
+                                     FireAgent.class.getName(), args);
+            }
+        }
+        logger.info("restored " + onFire.size() + " fires");
+    }
+    
     /**
      * Provides the dimensions of the simulation area. Is used by the fire monitor agent.
      */
@@ -115,7 +387,8 @@ public final class EnvironmentAgent extends ExtendedAgent {
         protected ACLMessage handleRequest(final ACLMessage request) throws NotUnderstoodException, RefuseException {
 
 //            logger.debug("received request for area dimensions");
-            return createReply(request, ACLMessage.INFORM, new AreaDimensionsInfo(area.dimensions));
+            return createReply(request, ACLMessage.INFORM, new AreaDimensionsInfo(shards.dimensions, shards.shardRows,
+                                                                                   shards.shardCols));
         }
         
         /**
@@ -161,22 +434,67 @@ public final class EnvironmentAgent extends ExtendedAgent {
             
 //            logger.debug("received on fire status request for (" + coord + ")");
             
-            if (area.getOnFireState(coord)) {
-                
-                // check if fire agent still alive (fire still burning)
-                AgentController fireAgent = null;
-                try {
-                    fireAgent = getContainerController().getAgent(FireAgent.FIRE_AGENT_NAME_PREFIX + coord);
-                } catch (final ControllerException e) {
-                    // pass
-                }
-                if (fireAgent == null) {
-                    logger.debug("fire at (" + coord + ") no longer burning");
-                    area.setOnFireState(coord, false);
-                }
+            if (shards.getShard(coord) != shard) throw new RefuseException("coordinate not in shard");
+            return createReply(request, ACLMessage.INFORM, new OnFireStatusInfo(area.getOnFireState(toShard(coord))));
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#prepareResultNotification(jade.lang.acl.ACLMessage,
+         *      jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage prepareResultNotification(final ACLMessage request, final ACLMessage response)
+                throws FailureException {
+
+            return null;
+        }
+    }
+    
+    /**
+     * Provides the on fire states of a rectangular region of the simulation area. Lets the fire monitor agent scan
+     * whole rows or blocks of rows with a single message instead of one message per coordinate. The region is clipped
+     * to the owned shard, so the same request can be sent to all shards it overlaps.
+     */
+    private class OnFireRegionService extends AchieveREResponder {
+        
+        /**
+         * @param a
+         * @param mt
+         */
+        public OnFireRegionService(final Agent a, final MessageTemplate mt) {
+
+            super(a, mt);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#handleRequest(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage handleRequest(final ACLMessage request) throws NotUnderstoodException, RefuseException {
+
+            OnFireRegionRequest regionReq;
+            try {
+                regionReq = extractMessageContent(OnFireRegionRequest.class, request, false);
+            } catch (final Exception e) {
+                throw new NotUnderstoodException("could not read request message content");
             }
             
-            return createReply(request, ACLMessage.INFORM, new OnFireStatusInfo(area.getOnFireState(coord)));
+            // clip region to the owned shard
+            final Coordinate reqCoord = regionReq.getCoordinate();
+            final int firstRow = Math.max(reqCoord.getRow(), shardCoord.getRow());
+            final int firstCol = Math.max(reqCoord.getCol(), shardCoord.getCol());
+            final int width = Math.min(reqCoord.getCol() + regionReq.getWidth(),
+                                       shardCoord.getCol() + area.dimensions.getWidth()) - firstCol;
+            final int height = Math.min(reqCoord.getRow() + regionReq.getHeight(),
+                                        shardCoord.getRow() + area.dimensions.getHeight()) - firstRow;
+            if (width < 1 || height < 1) throw new RefuseException("region outside of the shard");
+            final Coordinate coord = new Coordinate(firstRow, firstCol);
+            
+//            logger.debug("received on fire region request for (" + coord + "), " + width + "x" + height);
+            
+            return createReply(request, ACLMessage.INFORM,
+                               new OnFireRegionInfo(coord, width, height,
+                                                    area.getOnFireStates(toShard(coord), width, height)));
         }
         
         /**
@@ -192,7 +510,120 @@ public final class EnvironmentAgent extends ExtendedAgent {
     }
     
     /**
-     * Starts a new fire at a random position (that is not yet on fire).
+     * Subscribers to the fire events. Newly registered subscribers are notified about all fires that are currently
+     * burning.
+     */
+    private class FireEventSubscribers extends Subscribers {
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.model.Subscribers#register(jade.proto.SubscriptionResponder.Subscription)
+         */
+        @Override
+        public boolean register(final Subscription s) throws RefuseException, NotUnderstoodException {
+
+            if (!super.register(s)) return false;
+            
+            for (final Coordinate fireCoord : area.getOnFireCoordinates()) {
+                s.notify(createMessage(ACLMessage.INFORM, FIRE_EVENTS_PROTOCOL, Arrays.asList(new AID[] {}),
+                                       new OnFireStatusChangeInfo(fromShard(fireCoord), true)));
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param coord Coordinate on the simulation area.
+     * @return Coordinate on the owned shard.
+     */
+    Coordinate toShard(final Coordinate coord) {
+
+        return new Coordinate(coord.getRow() - shardCoord.getRow() + 1, coord.getCol() - shardCoord.getCol() + 1);
+    }
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param coord Coordinate on the owned shard.
+     * @return Coordinate on the simulation area.
+     */
+    Coordinate fromShard(final Coordinate coord) {
+
+        return new Coordinate(coord.getRow() + shardCoord.getRow() - 1, coord.getCol() + shardCoord.getCol() - 1);
+    }
+    
+    /**
+     * Notifies all fire event subscribers about a started or ended fire. Package scoped for faster access by inner
+     * classes.
+     * 
+     * @param coord
+     * @param onFire <code>true</code> if the fire started, <code>false</code> if it ended
+     */
+    void sendFireEvent(final Coordinate coord, final boolean onFire) {
+
+        final Set<Subscription> fireEventSubscriptions = fireEventSubscribers.getSubscriptions();
+        if (fireEventSubscriptions.isEmpty()) return;
+        final ACLMessage eventMsg = createMessage(ACLMessage.INFORM, FIRE_EVENTS_PROTOCOL,
+                                                  Arrays.asList(new AID[] {}),
+                                                  new OnFireStatusChangeInfo(coord, onFire));
+        for (final Subscription sub : fireEventSubscriptions) {
+            sub.notify(eventMsg);
+        }
+//        logger.debug("sent fire event for (" + coord + ")");
+    }
+    
+    /**
+     * Receives the messages of fire agents reporting that their fire ended and removes the fires from the {@link #area}.
+     */
+    private class ReceiveFireEnded extends MessageHandler {
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        public void handleMessage(final ACLMessage endedMsg) {
+
+            Coordinate coord;
+            try {
+                coord = extractMessageContent(OnFireStatusChangeInfo.class, endedMsg, false).getCoordinate();
+            } catch (final Exception e) {
+                return;
+            }
+            if (fireAgentPool == null) {
+                if (!endedMsg.getSender().getLocalName().equals(FireAgent.FIRE_AGENT_NAME_PREFIX + coord)) {
+                    logger.error("received fire ended report for (" + coord + ") from wrong agent");
+                    return;
+                }
+            } else {
+                if (!endedMsg.getSender().equals(armedFireAgents.get(coord))) {
+                    logger.error("received fire ended report for (" + coord + ") from wrong agent");
+                    return;
+                }
+                // back to the pool
+                fireAgentPool.add(armedFireAgents.remove(coord));
+            }
+            if (shards.getShard(coord) != shard || !area.getOnFireState(toShard(coord))) return;
+            
+            fireEnded(coord);
+        }
+    }
+    
+    /**
+     * Resets the position of an ended fire. Package scoped for faster access by inner classes.
+     * 
+     * @param coord Coordinate of the fire on the simulation area.
+     */
+    void fireEnded(final Coordinate coord) {
+
+        logger.debug("fire at (" + coord + ") ended");
+        area.setOnFireState(toShard(coord), false);
+        IncidentMetrics.fireEnded(coord);
+        sendFireEvent(coord, false);
+    }
+    
+    /**
+     * Starts a new fire at a random position (that is not yet on fire). Does nothing if all positions are on fire.
      */
     private class SpawnFire extends TickerBehaviour {
         
@@ -212,21 +643,361 @@ public final class EnvironmentAgent extends ExtendedAgent {
         protected void onTick() {
 
             // find fire position
-            final Position firePosition = new Position(0, 0);
-            do {
-                firePosition.setRow(RandomUtils.nextInt(area.dimensions.getHeight() - 1) + 1);
-                firePosition.setCol(RandomUtils.nextInt(area.dimensions.getWidth() - 1) + 1);
-            } while (area.getOnFireState(firePosition.getCoordinate()));
-            
+            Coordinate shardFireCoord = inputLog.isReplaying() ? inputLog.readCoordinate(InputLog.SPAWN) : null;
+            if (!inputLog.isReplaying()) {
+                shardFireCoord = area.getRandomFreeCoordinate(random);
+                inputLog.writeCoordinate(InputLog.SPAWN, shardFireCoord);
+            }
+            if (shardFireCoord == null) {
+                logger.info("all positions on fire, cannot start new fire");
+                return;
+            }
+            startFire(shardFireCoord);
+        }
+    }
+    
+    /**
+     * Advances the {@link #spread} by one generation and adds a fire to the {@link #fires} table at every position of
+     * the owned shard that caught fire. The positions of other shards that caught fire are sent to the agents owning
+     * them.
+     */
+    private class SpreadFire extends TickerBehaviour {
+        
+        /**
+         * @param a
+         * @param period
+         */
+        public SpreadFire(final Agent a, final long period) {
+
+            super(a, period);
+        }
+        
+        /**
+         * @see jade.core.behaviours.TickerBehaviour#onTick()
+         */
+        @Override
+        protected void onTick() {
+
+            for (final Coordinate fireCoord : spread.step(fires)) {
+                final int fireShard = shards.getShard(fireCoord);
+                if (fireShard != shard) {
+                    sendMessage(ACLMessage.INFORM, FIRE_SPREAD_PROTOCOL,
+                                new AID(shards.getShardName(ENVIRONMENT_AGENT_NAME, fireShard), false),
+                                new OnFireStatusChangeInfo(fireCoord, true));
+                } else if (startFire(toShard(fireCoord))) {
+                    logger.debug("fire spread to (" + fireCoord + ")");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Receives the messages of the environment agents of the neighbor shards reporting that a fire spread into the owned
+     * shard, and starts the fire unless the position is already on fire.
+     */
+    private class ReceiveFireSpread extends MessageHandler {
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        public void handleMessage(final ACLMessage spreadMsg) {
+
+            Coordinate coord;
+            try {
+                coord = extractMessageContent(OnFireStatusChangeInfo.class, spreadMsg, false).getCoordinate();
+            } catch (final Exception e) {
+                return;
+            }
+            if (shards.getShard(coord) != shard) {
+                logger.error("received fire spread to (" + coord + ") outside of the shard");
+                return;
+            }
+            if (area.getOnFireState(toShard(coord))) return;
+            if (startFire(toShard(coord))) {
+                logger.debug("fire spread to (" + coord + ") from " + spreadMsg.getSender().getLocalName());
+            }
+        }
+    }
+    
+    /**
+     * Starts a fire agent and sets the position on fire. Package scoped for faster access by inner classes.
+     * 
+     * @param shardFireCoord Coordinate of the fire on the owned shard.
+     * @return <code>true</code> if the fire was started, <code>false</code> if not
+     */
+    boolean startFire(final Coordinate shardFireCoord) {
+
+        final Position firePosition = new Position(fromShard(shardFireCoord));
+        
+        if (fireAgentPool != null) {
+            // arm pooled fire agent, same increases as the fire agent
+            AID fireAgent = fireAgentPool.poll();
+            if (fireAgent == null) {
+                fireAgent = startPooledFireAgent();
+                if (fireAgent == null) return false;
+                logger.debug("fire agent pool grown to " + numPooledFireAgents);
+            }
+            final int intensityInc = random.nextInt(4) + 1;
+            final int casualtiesInc = random.nextInt(1) + 1;
+            sendMessage(ACLMessage.REQUEST, FireAgent.ARM_FIRE_PROTOCOL, fireAgent,
+                        new ArmFireRequest(firePosition.getCoordinate(), intensityInc, casualtiesInc));
+            armedFireAgents.put(firePosition.getCoordinate(), fireAgent);
+        } else if (fires == null) {
             // start fire agent
-            AgentUtil.startAgent(getContainerController(), FireAgent.FIRE_AGENT_NAME_PREFIX + firePosition,
-                                 FireAgent.class.getName(), new Object[] {
-                                     firePosition.getRow(), firePosition.getCol(), fireIncreaseIval});
+            final Object[] args = {
+                firePosition.getRow(), firePosition.getCol(), fireIncreaseIval, getName(), random.nextLong()};
+            if (AgentUtil.startAgent(getContainerController(), FireAgent.FIRE_AGENT_NAME_PREFIX + firePosition,
+                                     FireAgent.class.getName(), args) == null) return false;
+        } else {
+            // add to fire table, same increases as the fire agent
+            final int intensityInc = random.nextInt(4) + 1;
+            final int casualtiesInc = random.nextInt(1) + 1;
+            if (fires.add(shardFireCoord, intensityInc, casualtiesInc) < 0) return false;
+        }
+        
+        // set fire state
+        area.setOnFireState(shardFireCoord, true);
+        IncidentMetrics.fireStarted(firePosition.getCoordinate());
+        sendFireEvent(firePosition.getCoordinate(), true);
+        
+        logger.info("started fire at (" + firePosition + ")");
+        return true;
+    }
+    
+    /**
+     * Starts a pooled fire agent without a fire.
+     * 
+     * @return AID of the fire agent, <code>null</code> if it could not be started.
+     */
+    private AID startPooledFireAgent() {
+
+        final String name = getLocalName() + " " + FireAgent.FIRE_AGENT_NAME_PREFIX + numPooledFireAgents;
+        final Object[] args = {0, 0, fireIncreaseIval, getName(), random.nextLong(), true};
+        if (AgentUtil.startAgent(getContainerController(), name, FireAgent.class.getName(), args) == null) return null;
+        numPooledFireAgents++;
+        return new AID(name, false);
+    }
+    
+    /**
+     * Forwards the put out and pick up casualty requests of the vehicles to the pooled fire agent armed with the fire at
+     * the vehicle position. The sender of the forwarded request stays the vehicle, so the fire agent replies to it
+     * directly.
+     */
+    private class ForwardFireRequests extends MessageHandler {
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        public void handleMessage(final ACLMessage request) {
+
+            Coordinate vehicleCoord;
+            try {
+                if (FireAgent.PUT_OUT_PROTOCOL.equals(request.getProtocol())) {
+                    vehicleCoord = extractMessageContent(PutOutRequest.class, request, false).getFireEnginePosition();
+                } else {
+                    vehicleCoord = extractMessageContent(PickUpCasualtyRequest.class, request, false)
+                                                                                                   .getAmbulancePosition();
+                }
+            } catch (final Exception e) {
+                sendReply(request, ACLMessage.NOT_UNDERSTOOD, null);
+                return;
+            }
+            final AID fireAgent = armedFireAgents.get(vehicleCoord);
+            if (fireAgent == null) {
+                logger.debug("no fire at the vehicle position");
+                sendReply(request, ACLMessage.REFUSE, null);
+                return;
+            }
+            request.clearAllReceiver();
+            request.addReceiver(fireAgent);
+            forwardMessage(request);
+        }
+    }
+    
+    /**
+     * Increases all fires of the {@link #fires} table. Unlike the fire agents the fires increase together, so the first
+     * increase of a fire happens within one increase interval after it started.
+     */
+    private class IncreaseFires extends TickerBehaviour {
+        
+        /**
+         * @param a
+         * @param period
+         */
+        public IncreaseFires(final Agent a, final long period) {
+
+            super(a, period);
+        }
+        
+        /**
+         * @see jade.core.behaviours.TickerBehaviour#onTick()
+         */
+        @Override
+        protected void onTick() {
+
+            fires.increase();
+            for (int i = 0; i < fires.size(); i++) {
+                if (fires.isIncreasing(i)) {
+                    IncidentMetrics.casualtiesAdded(fromShard(fires.getCoordinate(i)), fires.getCasualtiesIncrease(i));
+                }
+            }
+            logger.debug("increased " + fires.size() + " fires");
+        }
+    }
+    
+    /**
+     * Service for fire engines to reduce the intensity of a fire of the {@link #fires} table, like the fire agent's put
+     * out service. The fire is the one at the position of the fire engine.
+     */
+    private class PutOutService extends AchieveREResponder {
+        
+        /**
+         * @param a
+         * @param mt
+         */
+        public PutOutService(final Agent a, final MessageTemplate mt) {
+
+            super(a, mt);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#handleRequest(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage handleRequest(final ACLMessage request) throws NotUnderstoodException, RefuseException {
+
+            Coordinate engineCoord;
+            try {
+                engineCoord = extractMessageContent(PutOutRequest.class, request, false).getFireEnginePosition();
+            } catch (final Exception e) {
+                throw new NotUnderstoodException("could not read message content");
+            }
+            final int index = (shards.getShard(engineCoord) == shard) ? fires.indexOf(toShard(engineCoord)) : -1;
+            String refuse = null;
+            if (index < 0) {
+                refuse = "no fire at the fire engine position";
+            } else if (fires.getIntensity(index) < 1) {
+                refuse = "fire is already put out";
+            }
+            if (refuse != null) {
+                logger.debug(refuse);
+                throw new RefuseException(refuse);
+            }
             
-            // set fire state
-            area.setOnFireState(firePosition.getCoordinate(), true);
+            final boolean ended = fires.decreaseIntensity(index);
+            logger.info("new intensity of fire at (" + engineCoord + "): " + fires.getIntensity(index));
+            if (fires.getIntensity(index) < 1) {
+                IncidentMetrics.fireExtinguished(engineCoord);
+            }
+            sendFireStatus(index, request.getSender());
+            if (ended) {
+                removeFire(index);
+            }
             
-            logger.info("started fire at (" + firePosition + ")");
+            return null;
         }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#prepareResultNotification(jade.lang.acl.ACLMessage,
+         *      jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage prepareResultNotification(final ACLMessage request, final ACLMessage response)
+                throws FailureException {
+
+            return null;
+        }
+    }
+    
+    /**
+     * Service for ambulances to pick up a casualty of a fire of the {@link #fires} table, like the fire agent's pick up
+     * casualty service. The fire is the one at the position of the ambulance.
+     */
+    private class PickUpCasualtyService extends AchieveREResponder {
+        
+        /**
+         * @param a
+         * @param mt
+         */
+        public PickUpCasualtyService(final Agent a, final MessageTemplate mt) {
+
+            super(a, mt);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#handleRequest(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage handleRequest(final ACLMessage request) throws NotUnderstoodException, RefuseException {
+
+            Coordinate ambulanceCoord;
+            try {
+                ambulanceCoord = extractMessageContent(PickUpCasualtyRequest.class, request, false)
+                                                                                                  .getAmbulancePosition();
+            } catch (final Exception e) {
+                throw new NotUnderstoodException("could not read message content");
+            }
+            final int index = (shards.getShard(ambulanceCoord) == shard) ? fires.indexOf(toShard(ambulanceCoord))
+                                                                          : -1;
+            String refuse = null;
+            if (index < 0) {
+                refuse = "no fire at the ambulance position";
+            } else if (fires.getCasualties(index) < 1) {
+                refuse = "no casualty to pick up";
+            }
+            if (refuse != null) {
+                logger.debug(refuse);
+                throw new RefuseException(refuse);
+            }
+            
+            IncidentMetrics.casualtyPickedUp(ambulanceCoord);
+            final boolean ended = fires.decreaseCasualties(index);
+            logger.info("new casualty count of fire at (" + ambulanceCoord + "): " + fires.getCasualties(index));
+            sendFireStatus(index, request.getSender());
+            if (ended) {
+                removeFire(index);
+            }
+            
+            return createReply(request, ACLMessage.AGREE, null);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#prepareResultNotification(jade.lang.acl.ACLMessage,
+         *      jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage prepareResultNotification(final ACLMessage request, final ACLMessage response)
+                throws FailureException {
+
+            return null;
+        }
+    }
+    
+    /**
+     * Sends the current status of a fire of the {@link #fires} table to a vehicle agent. Package scoped for faster
+     * access by inner classes.
+     * 
+     * @param index
+     * @param aid
+     */
+    void sendFireStatus(final int index, final AID aid) {
+
+        final FireStatus status = new FireStatus(fromShard(fires.getCoordinate(index)), fires.getIntensity(index),
+                                                 fires.getCasualties(index));
+        sendMessage(ACLMessage.INFORM, FireAgent.FIRE_STATUS_PROTOCOL, aid, new FireStatusInfo(status));
+    }
+    
+    /**
+     * Removes an ended fire from the {@link #fires} table. Package scoped for faster access by inner classes.
+     * 
+     * @param index
+     */
+    void removeFire(final int index) {
+
+        final Coordinate coord = fromShard(fires.getCoordinate(index));
+        fires.remove(index);
+        fireEnded(coord);
     }
 }
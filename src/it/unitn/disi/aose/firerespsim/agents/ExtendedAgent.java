@@ -1,6 +1,16 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
+import it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher;
+import it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler;
+import it.unitn.disi.aose.firerespsim.behaviours.ThreadedBehaviour;
+import it.unitn.disi.aose.firerespsim.ontology.BinaryCodec;
+import it.unitn.disi.aose.firerespsim.ontology.CloneablePredicate;
 import it.unitn.disi.aose.firerespsim.ontology.FireResponseOntology;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.CountingMessageQueue;
+import it.unitn.disi.aose.firerespsim.util.InputLog;
+import it.unitn.disi.aose.firerespsim.util.MessageCounters;
+import it.unitn.disi.aose.firerespsim.util.RandomStreams;
 import jade.content.ContentElement;
 import jade.content.Predicate;
 import jade.content.lang.Codec;
@@ -8,25 +18,44 @@ import jade.content.lang.sl.SLCodec;
 import jade.content.onto.Ontology;
 import jade.core.AID;
 import jade.core.Agent;
+import jade.core.MessageQueue;
 import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.ParallelBehaviour;
 import jade.core.behaviours.SequentialBehaviour;
-import jade.core.behaviours.ThreadedBehaviourFactory;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
+import jade.domain.FIPANames;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Envelope;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.util.leap.Iterator;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import org.apache.log4j.Logger;
 
 /**
@@ -37,7 +66,29 @@ import org.apache.log4j.Logger;
 @SuppressWarnings("serial")
 public abstract class ExtendedAgent extends Agent {
     
-    private static final Boolean THREADED = false;
+    /**
+     * Factory of the threads running the {@link #parallelBehaviours} of the agents of this JVM, <code>null</code> to
+     * run them in the agent thread.
+     */
+    private static ThreadFactory behaviourThreadFactory = null;
+    /**
+     * Content language of the messages started by the agents of this JVM. Replies keep the language of the message
+     * they reply to, and all languages are understood.
+     */
+    private static String contentLanguage = FIPANames.ContentLanguage.FIPA_SL;
+    /**
+     * If to pass the message content by reference to receivers in the same container.
+     */
+    private static boolean contentByReference = false;
+    /**
+     * Envelope property holding the content passed by reference. JADE copies the envelope properties by reference
+     * when it clones a message for delivery, and only encodes the envelope for receivers in other containers.
+     */
+    private static final String CONTENT_REFERENCE = "content-reference";
+    /**
+     * Container names of the agents of this JVM by agent name.
+     */
+    private static final Map<String, String> agentContainers = new ConcurrentHashMap<String, String>();
     
     /**
      * Log4J logger.
@@ -63,10 +114,112 @@ public abstract class ExtendedAgent extends Agent {
      */
     protected String[] dfTypes = null;
     
-    private final Codec codec = new SLCodec();
+    /**
+     * Name of the start-up parameter with the seed of the agent's random stream. Agents that need randomness add it to
+     * their {@link #params} with the default {@link #UNSEEDED}. Without it (or with {@link #UNSEEDED}) the stream is not
+     * reproducible.
+     */
+    final static String SEED_PARAM = "SEED";
+    /**
+     * Default value of the {@link #SEED_PARAM}, for an unseeded random stream.
+     */
+    final static String UNSEEDED = "unseeded";
+    /**
+     * Protocol for the requests to pause for a checkpoint round, served by every agent.
+     */
+    final static String CHECKPOINT_PAUSE_PROTOCOL = "CheckpointPause";
+    /**
+     * Protocol for the requests to write the checkpoint of a round, served by every paused agent.
+     */
+    final static String CHECKPOINT_PROTOCOL = "Checkpoint";
+    /**
+     * Protocol for the messages ending a checkpoint round, served by every paused agent.
+     */
+    final static String CHECKPOINT_RESUME_PROTOCOL = "CheckpointResume";
+    /**
+     * Random stream of the agent, derived from the {@link #SEED_PARAM} seed and the local name. Not shared with other
+     * agents.
+     */
+    protected Random random = null;
+    /**
+     * Log of the external inputs of the agent, the {@link #random} draws are logged by default.
+     */
+    protected InputLog inputLog = null;
+    
+    private final Codec[] codecs = new Codec[] {new SLCodec(), new BinaryCodec()};
+    private String containerName = null;
     private final Ontology onto = FireResponseOntology.getInstance();
-    private final ThreadedBehaviourFactory tbf = new ThreadedBehaviourFactory();
+    /**
+     * Template of the messages of the checkpoint rounds to the agent, without the replies to the checkpoint agent.
+     */
+    private final MessageTemplate checkpointTemplate =
+        MessageTemplate.or(createMessageTemplate(null, CHECKPOINT_PAUSE_PROTOCOL, ACLMessage.REQUEST),
+                           MessageTemplate.or(createMessageTemplate(null, CHECKPOINT_PROTOCOL, ACLMessage.REQUEST),
+                                              createMessageTemplate(null, CHECKPOINT_RESUME_PROTOCOL,
+                                                                    ACLMessage.INFORM)));
+    /**
+     * Wrappers of the {@link #parallelBehaviours} running in threads. Synchronized, as the behaviours in threads add and
+     * stop parallel behaviours.
+     */
+    private final Map<Behaviour, ThreadedBehaviour> threadedBehaviours =
+        Collections.synchronizedMap(new HashMap<Behaviour, ThreadedBehaviour>());
+    /**
+     * Thread of the agent, the only one that changes the scheduled behaviours.
+     */
+    private transient Thread agentThread = null;
+    /**
+     * Queue of the delivered messages, the not handled ones are part of the checkpoint.
+     */
+    private transient CountingMessageQueue messageQueue = null;
     private final ParallelBehaviour pb = new ParallelBehaviour(ParallelBehaviour.WHEN_ALL);
+    private final MessageDispatcher dispatcher = new MessageDispatcher(this);
+    
+    /**
+     * @param language Content language of the messages started by the agents of this JVM,
+     *            {@link FIPANames.ContentLanguage#FIPA_SL} or {@link BinaryCodec#NAME}.
+     * @return <code>true</code> if set, <code>false</code> if the language is unknown.
+     */
+    public static boolean setContentLanguage(final String language) {
+
+        if (!FIPANames.ContentLanguage.FIPA_SL.equals(language) && !BinaryCodec.NAME.equals(language)) return false;
+        contentLanguage = language;
+        return true;
+    }
+    
+    /**
+     * Enables passing the content of messages by reference, without encoding, if all receivers are agents in the
+     * container of the sender. The content is copied when filled into the message and again when extracted (see
+     * {@link CloneablePredicate}), so the sender and the receivers never share the content objects.
+     * 
+     * @param byReference
+     */
+    public static void setContentByReference(final boolean byReference) {
+
+        contentByReference = byReference;
+    }
+    
+    /**
+     * @param threads Threads running the {@link #parallelBehaviours} of the agents of this JVM: <code>none</code> to run
+     *            them in the agent thread, <code>platform</code> for a thread per behaviour, or <code>virtual</code>
+     *            for a virtual thread per behaviour.
+     * @return <code>true</code> if set, <code>false</code> if the threads are unknown or the JVM has no virtual
+     *         threads.
+     */
+    public static boolean setBehaviourThreads(final String threads) {
+
+        if ("none".equals(threads)) {
+            behaviourThreadFactory = null;
+        } else if ("platform".equals(threads)) {
+            behaviourThreadFactory = Executors.defaultThreadFactory();
+        } else if ("virtual".equals(threads)) {
+            final ThreadFactory factory = ThreadedBehaviour.getVirtualThreadFactory();
+            if (factory == null) return false;
+            behaviourThreadFactory = factory;
+        } else {
+            return false;
+        }
+        return true;
+    }
     
     /**
      * @see jade.core.Agent#setup()
@@ -78,11 +231,23 @@ public abstract class ExtendedAgent extends Agent {
         
         super.setup();
         
-        getContentManager().registerLanguage(codec);
+        agentThread = Thread.currentThread();
+        for (final Codec codec : codecs) {
+            getContentManager().registerLanguage(codec);
+        }
         getContentManager().registerOntology(onto);
+        MessageCounters.COUNTERS.registerAgent(getName(), getClass().getSimpleName());
+        containerName = here().getName();
+        agentContainers.put(getName(), containerName);
         
         readArguments();
         
+        final Object seed = (params == null) ? null : params.get(SEED_PARAM);
+        random = (seed instanceof Number) ? RandomStreams.create(((Number) seed).longValue(), getLocalName())
+                                          : new Random();
+        inputLog = InputLog.open(getLocalName());
+        random = inputLog.wrap(random);
+        
         registerAtDF();
     }
     
@@ -94,17 +259,43 @@ public abstract class ExtendedAgent extends Agent {
 
         logger.info("shutting down");
         
-        if (THREADED) {
-            for (final Behaviour b : parallelBehaviours) {
-                if (b != null) {
-                    tbf.getThread(b).interrupt();
-                }
+        // stop the behaviour threads before they can use the input log
+        final List<ThreadedBehaviour> tbs;
+        synchronized (threadedBehaviours) {
+            tbs = new ArrayList<ThreadedBehaviour>(threadedBehaviours.values());
+        }
+        for (final ThreadedBehaviour tb : tbs) {
+            tb.interrupt();
+        }
+        for (final ThreadedBehaviour tb : tbs) {
+            try {
+                tb.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
+        if (inputLog != null) {
+            inputLog.close();
+        }
+        MessageCounters.COUNTERS.deregisterAgent(getName());
+        agentContainers.remove(getName());
         
         super.takeDown();
     }
     
+    /**
+     * Counts the delivered messages by agent type in the {@link MessageCounters}.
+     * 
+     * @see jade.core.Agent#createMessageQueue()
+     */
+    @Override
+    protected MessageQueue createMessageQueue() {
+
+        messageQueue = new CountingMessageQueue(getClass().getSimpleName());
+        return messageQueue;
+    }
+    
     /**
      * Reads the startup arguments and replace the default parameter values if corresponding arguments are given.
      */
@@ -154,10 +345,13 @@ public abstract class ExtendedAgent extends Agent {
     }
     
     /**
-     * Adds the {@link #sequentialBehaviours} and {@link #parallelBehaviours} to the agent.
+     * Adds the {@link #sequentialBehaviours} and {@link #parallelBehaviours} to the agent. Restores the state of the
+     * agent from its checkpoint before, if restoring (see {@link #readCheckpoint(DataInput)}).
      */
     protected void addBehaviours() {
 
+        restoreCheckpoint();
+        
         SequentialBehaviour sb = null;
         if (!sequentialBehaviours.isEmpty()) {
             sb = new SequentialBehaviour();
@@ -165,10 +359,11 @@ public abstract class ExtendedAgent extends Agent {
                 sb.addSubBehaviour(b);
             }
         }
-        parallelBehaviours.addAll(parallelBehaviours);
         for (final Behaviour b : parallelBehaviours) {
-            pb.addSubBehaviour(THREADED ? tbf.wrap(b) : b);
+            pb.addSubBehaviour(wrap(b));
         }
+        pb.addSubBehaviour(dispatcher);
+        pb.addSubBehaviour(new CheckpointService(this));
         if (sb == null) {
             addBehaviour(pb);
         } else {
@@ -178,18 +373,237 @@ public abstract class ExtendedAgent extends Agent {
     }
     
     /**
-     * Adds a behavior to the {@link #parallelBehaviours} after the initial {@link #addBehaviours()} call.
+     * Writes the state of the agent into a checkpoint. Agents with state override this and call the super method
+     * first.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+    // no state
+    }
+    
+    /**
+     * Restores the state of the agent written by {@link #writeCheckpoint(DataOutput)}. Gets called at the end of the
+     * set-up, before the behaviors are added, if the agent has a checkpoint. Agents with state override this and call
+     * the super method first.
+     * 
+     * @param in
+     * @throws IOException
+     */
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+    // no state
+    }
+    
+    /**
+     * Restores the state of the agent from its checkpoint, if restoring and the agent has one.
+     */
+    private void restoreCheckpoint() {
+
+        DataInputStream in = null;
+        try {
+            in = Checkpoint.read(getLocalName());
+            if (in == null) return;
+            readCheckpoint(in);
+            final int numMsgs = in.readInt();
+            for (int i = 0; i < numMsgs; i++) {
+                postMessage(Checkpoint.readMessage(in));
+            }
+            logger.info("restored checkpoint with " + numMsgs + " pending messages");
+        } catch (final IOException e) {
+            logger.error("error restoring checkpoint: " + e.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes the checkpoint of the agent into a round of the {@link CheckpointAgent}, after the state written by
+     * {@link #writeCheckpoint(DataOutput)}: the messages that were delivered but not handled yet.
+     * 
+     * @param round
+     * @throws IOException
+     */
+    private void writeCheckpoint(final int round) throws IOException {
+
+        final ByteArrayOutputStream state = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(state);
+        writeCheckpoint(out);
+        final List<ACLMessage> pending;
+        synchronized (messageQueue) {
+            pending = messageQueue.copyMessages();
+        }
+        final List<ACLMessage> msgs = new ArrayList<ACLMessage>(pending.size());
+        for (final ACLMessage msg : pending) {
+            if (!checkpointTemplate.match(msg)) {
+                msgs.add(msg);
+            }
+        }
+        out.writeInt(msgs.size());
+        for (final ACLMessage msg : msgs) {
+            final Predicate reference = getContentReference(msg);
+            if (reference == null) {
+                Checkpoint.writeMessage(out, msg);
+                continue;
+            }
+            // encode the content passed by reference
+            final ACLMessage encoded = (ACLMessage) msg.clone();
+            try {
+                getContentManager().fillContent(encoded, reference);
+            } catch (final Exception e) {
+                throw new IOException("cannot encode message content: " + e.getMessage());
+            }
+            Checkpoint.writeMessage(out, encoded);
+        }
+        out.flush();
+        Checkpoint.write(getLocalName(), round, state.toByteArray());
+    }
+    
+    /**
+     * Pauses the {@link ThreadedBehaviour}s after their current actions.
+     */
+    private void pauseThreadedBehaviours() {
+
+        final List<ThreadedBehaviour> tbs;
+        synchronized (threadedBehaviours) {
+            tbs = new ArrayList<ThreadedBehaviour>(threadedBehaviours.values());
+        }
+        for (final ThreadedBehaviour tb : tbs) {
+            try {
+                tb.pause();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Lets the {@link ThreadedBehaviour}s continue.
+     */
+    private void resumeThreadedBehaviours() {
+
+        synchronized (threadedBehaviours) {
+            for (final ThreadedBehaviour tb : threadedBehaviours.values()) {
+                tb.resume();
+            }
+        }
+    }
+    
+    /**
+     * Takes part in the checkpoint rounds of the {@link CheckpointAgent}. The conversation id is the round. On a pause
+     * request the agent pauses its behaviour threads, confirms, and then only receives the messages of the round in
+     * the agent thread, so neither its tickers nor its message handlers run until the round ends. On the write request
+     * it writes its checkpoint and confirms, and on the resume message it continues. If the round does not end by the
+     * reply-by date of the pause request, the agent continues by itself. Messages of rounds that ended are refused.
+     */
+    private class CheckpointService extends CyclicBehaviour {
+        
+        /**
+         * @param a
+         */
+        public CheckpointService(final Agent a) {
+
+            super(a);
+        }
+        
+        /**
+         * @see jade.core.behaviours.Behaviour#action()
+         */
+        @Override
+        public void action() {
+
+            final ACLMessage msg = myAgent.receive(checkpointTemplate);
+            if (msg == null) {
+                block();
+                return;
+            }
+            if (msg.getPerformative() != ACLMessage.REQUEST) return;
+            final Date deadline = msg.getReplyByDate();
+            if (!CHECKPOINT_PAUSE_PROTOCOL.equals(msg.getProtocol()) || deadline == null
+                || deadline.getTime() <= System.currentTimeMillis()) {
+                sendReply(msg, ACLMessage.REFUSE, null);
+                return;
+            }
+            
+            final String round = msg.getConversationId();
+            pauseThreadedBehaviours();
+            try {
+                sendReply(msg, ACLMessage.INFORM, null);
+                final MessageTemplate roundTpl = MessageTemplate.and(checkpointTemplate,
+                                                                     MessageTemplate.MatchConversationId(round));
+                while (true) {
+                    final long timeout = deadline.getTime() - System.currentTimeMillis();
+                    final ACLMessage roundMsg = (timeout > 0) ? myAgent.blockingReceive(roundTpl, timeout) : null;
+                    if (roundMsg == null) {
+                        logger.warn("checkpoint round " + round + " did not end in time, continuing");
+                        return;
+                    }
+                    if (CHECKPOINT_RESUME_PROTOCOL.equals(roundMsg.getProtocol())) return;
+                    if (CHECKPOINT_PROTOCOL.equals(roundMsg.getProtocol())
+                        && roundMsg.getPerformative() == ACLMessage.REQUEST) {
+                        sendReply(roundMsg, write(round) ? ACLMessage.INFORM : ACLMessage.FAILURE, null);
+                    }
+                }
+            } finally {
+                resumeThreadedBehaviours();
+            }
+        }
+        
+        /**
+         * @param round
+         * @return <code>true</code> if the checkpoint was written, <code>false</code> if not.
+         */
+        private boolean write(final String round) {
+
+            try {
+                writeCheckpoint(Integer.parseInt(round));
+                return true;
+            } catch (final NumberFormatException e) {
+                logger.error("no checkpoint round");
+            } catch (final IOException e) {
+                logger.error("error writing checkpoint: " + e.getMessage());
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Adds a behavior to the {@link #parallelBehaviours} after the initial {@link #addBehaviours()} call. A re-used
+     * behavior that is still running is not added twice. Re-used behaviors must be stopped with
+     * {@link #stopParallelBehaviour(Behaviour)} before they are reset. Can be called by behaviors running in threads,
+     * the scheduler is then changed in the agent thread.
      * 
      * @param b
      */
     protected void addParallelBehaviour(final Behaviour b) {
 
-        parallelBehaviours.add(b);
-        pb.addSubBehaviour(THREADED ? tbf.wrap(b) : b);
+        unschedule(b);
+        final Behaviour wrapper = wrap(b);
+        runInAgentThread(new Runnable() {
+            
+            @Override
+            public void run() {
+
+                parallelBehaviours.remove(b);
+                parallelBehaviours.add(b);
+                pb.addSubBehaviour(wrapper);
+            }
+        });
     }
     
     /**
-     * Stops and removes a behavior from the {@link #parallelBehaviours}.
+     * Stops and removes a behavior from the {@link #parallelBehaviours}. If it runs in a thread, waits until the thread
+     * has ended (unless called by the behavior itself), so the behavior can be reset afterwards. Can be called by
+     * behaviors running in threads, the scheduler is then changed in the agent thread.
      * 
      * @param b
      */
@@ -198,11 +612,98 @@ public abstract class ExtendedAgent extends Agent {
         if (b instanceof TickerBehaviour) {
             ((TickerBehaviour) b).stop();
         }
-        if (THREADED) {
-            tbf.getThread(b).interrupt();
+        unschedule(b);
+        runInAgentThread(new Runnable() {
+            
+            @Override
+            public void run() {
+
+                parallelBehaviours.remove(b);
+            }
+        });
+    }
+    
+    /**
+     * @param b Parallel behavior.
+     * @return The behavior, or the {@link ThreadedBehaviour} running it if the parallel behaviors run in threads.
+     */
+    private Behaviour wrap(final Behaviour b) {
+
+        if (behaviourThreadFactory == null) return b;
+        final ThreadedBehaviour tb = new ThreadedBehaviour(this, b, behaviourThreadFactory);
+        threadedBehaviours.put(b, tb);
+        return tb;
+    }
+    
+    /**
+     * Removes a parallel behavior from the scheduler. If it runs in a thread, interrupts the thread and waits until it
+     * has ended, unless called in that thread.
+     * 
+     * @param b
+     */
+    private void unschedule(final Behaviour b) {
+
+        final ThreadedBehaviour tb = threadedBehaviours.remove(b);
+        if (tb != null) {
+            tb.interrupt();
+            try {
+                tb.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        runInAgentThread(new Runnable() {
+            
+            @Override
+            public void run() {
+
+                pb.removeSubBehaviour((tb == null) ? b : tb);
+            }
+        });
+    }
+    
+    /**
+     * Runs a change of the scheduled behaviors in the agent thread: at once if called in the agent thread (after the
+     * pending changes), otherwise by the message dispatcher at its next action.
+     * 
+     * @param change
+     */
+    private void runInAgentThread(final Runnable change) {
+
+        if (Thread.currentThread() == agentThread) {
+            dispatcher.runTasks();
+            change.run();
+        } else {
+            dispatcher.invokeLater(change);
+        }
+    }
+    
+    /**
+     * Registers the handler of the messages of a protocol and performative at the message dispatcher of the agent,
+     * which runs in parallel to the {@link #parallelBehaviours}. Use this instead of a cyclic behaviour receiving the
+     * messages with a template. Handlers must not block.
+     * 
+     * @param protocol
+     * @param performative
+     * @param handler
+     */
+    protected void addMessageHandler(final String protocol, final int performative, final MessageHandler handler) {
+
+        dispatcher.register(protocol, performative, handler);
+    }
+    
+    /**
+     * @param protocol
+     * @param performatives
+     * @param handler
+     * @see #addMessageHandler(String, int, MessageHandler)
+     */
+    protected void addMessageHandler(final String protocol, final List<Integer> performatives,
+                                     final MessageHandler handler) {
+
+        for (final Integer performative : performatives) {
+            dispatcher.register(protocol, performative, handler);
         }
-        pb.removeSubBehaviour(b);
-        parallelBehaviours.remove(b);
     }
     
     /**
@@ -239,6 +740,21 @@ public abstract class ExtendedAgent extends Agent {
         send(createReply(msg, performative, content));
     }
     
+    /**
+     * Sends a received message on to the receivers set in it. Content passed by reference is encoded if the new
+     * receivers are not in the container of this agent.
+     * 
+     * @param msg
+     */
+    protected void forwardMessage(final ACLMessage msg) {
+
+        final Predicate reference = getContentReference(msg);
+        if (reference != null) {
+            fillMessage(msg, reference);
+        }
+        send(msg);
+    }
+    
     /**
      * @param performative
      * @param protocol
@@ -274,7 +790,7 @@ public abstract class ExtendedAgent extends Agent {
 
         final ACLMessage msg = new ACLMessage(performative);
         msg.setOntology(onto.getName());
-        msg.setLanguage(codec.getName());
+        msg.setLanguage(contentLanguage);
         msg.setProtocol(protocol);
         if (recipients != null) {
             for (final AID recipient : recipients) {
@@ -311,17 +827,41 @@ public abstract class ExtendedAgent extends Agent {
             recipients.add((AID) iter.next());
         }
         final ACLMessage copy = createMessage(msg.getPerformative(), msg.getProtocol(), recipients, null);
-        copy.setContent(msg.getContent());
+        copy.setLanguage(msg.getLanguage());
+        final Predicate reference = getContentReference(msg);
+        if (reference != null) {
+            fillMessage(copy, reference);
+        } else if (msg.hasByteSequenceContent()) {
+            copy.setByteSequenceContent(msg.getByteSequenceContent());
+        } else {
+            copy.setContent(msg.getContent());
+        }
         return copy;
     }
     
     /**
+     * Fills the content into the message, by reference if enabled and all receivers are agents in the container of
+     * this agent, otherwise encoded in the language of the message. Set the receivers before.
+     * 
      * @param msg
      * @param content
      */
     protected void fillMessage(final ACLMessage msg, final Predicate content) {
 
+        // drop the reference of a copied or forwarded message
+        final Property reference = getContentReferenceProperty(msg);
+        if (reference != null) {
+            msg.getEnvelope().removeProperties(reference);
+        }
         if (content == null) return;
+        if (contentByReference && isInContainer(msg)) {
+            msg.setContent(null);
+            if (msg.getEnvelope() == null) {
+                msg.setEnvelope(new Envelope());
+            }
+            msg.getEnvelope().addProperties(new Property(CONTENT_REFERENCE, copyContent(content)));
+            return;
+        }
         try {
             getContentManager().fillContent(msg, content);
         } catch (final Exception e) {
@@ -329,6 +869,55 @@ public abstract class ExtendedAgent extends Agent {
         }
     }
     
+    /**
+     * @param msg
+     * @return <code>true</code> if all receivers of the message are agents in the container of this agent.
+     */
+    private boolean isInContainer(final ACLMessage msg) {
+
+        final Iterator iter = msg.getAllReceiver();
+        if (!iter.hasNext()) return false;
+        while (iter.hasNext()) {
+            if (!containerName.equals(agentContainers.get(((AID) iter.next()).getName()))) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @param msg
+     * @return Content passed by reference, <code>null</code> if the content is encoded.
+     */
+    private static Predicate getContentReference(final ACLMessage msg) {
+
+        final Property reference = getContentReferenceProperty(msg);
+        return (reference == null) ? null : (Predicate) reference.getValue();
+    }
+    
+    /**
+     * @param content Can be <code>null</code>.
+     * @return Deep copy of the content, the content itself if it cannot be copied.
+     */
+    private static Predicate copyContent(final Predicate content) {
+
+        return (content instanceof CloneablePredicate) ? ((CloneablePredicate) content).clone() : content;
+    }
+    
+    /**
+     * @param msg
+     * @return Envelope property with the content passed by reference, <code>null</code> if none.
+     */
+    private static Property getContentReferenceProperty(final ACLMessage msg) {
+
+        final Envelope env = msg.getEnvelope();
+        if (env == null) return null;
+        final Iterator iter = env.getAllProperties();
+        while (iter.hasNext()) {
+            final Property property = (Property) iter.next();
+            if (CONTENT_REFERENCE.equals(property.getName())) return property;
+        }
+        return null;
+    }
+    
     /**
      * @param sender
      * @param protocol
@@ -375,6 +964,40 @@ public abstract class ExtendedAgent extends Agent {
         return tpl;
     }
     
+    /**
+     * Records the arrival order of messages at a decision point, or restores the recorded order when replaying the
+     * {@link #inputLog}. Messages from senders not in the recorded order are moved to the end.
+     * 
+     * @param msgs Messages in arrival order.
+     */
+    protected void logArrivalOrder(final List<ACLMessage> msgs) {
+
+        if (inputLog.isReplaying()) {
+            final List<String> order = inputLog.readNames(InputLog.ORDER);
+            if (order == null) return;
+            Collections.sort(msgs, new Comparator<ACLMessage>() {
+                
+                @Override
+                public int compare(final ACLMessage msg1, final ACLMessage msg2) {
+
+                    return getRank(msg1) - getRank(msg2);
+                }
+                
+                private int getRank(final ACLMessage msg) {
+
+                    final int index = order.indexOf(msg.getSender().getLocalName());
+                    return (index < 0) ? order.size() : index;
+                }
+            });
+        } else if (inputLog.isRecording()) {
+            final List<String> order = new ArrayList<String>(msgs.size());
+            for (final ACLMessage msg : msgs) {
+                order.add(msg.getSender().getLocalName());
+            }
+            inputLog.writeNames(InputLog.ORDER, order);
+        }
+    }
+    
     /**
      * @param <T>
      * @param clazz
@@ -387,15 +1010,17 @@ public abstract class ExtendedAgent extends Agent {
     protected <T> T extractMessageContent(final Class<T> clazz, final ACLMessage msg, final boolean expectingException)
             throws Exception {
 
-        ContentElement ce;
-        try {
-            ce = getContentManager().extractContent(msg);
-        } catch (final Exception e) {
-            if (!expectingException) {
-                logger.error("error extracting message content");
-                e.printStackTrace();
+        ContentElement ce = copyContent(getContentReference(msg));
+        if (ce == null) {
+            try {
+                ce = getContentManager().extractContent(msg);
+            } catch (final Exception e) {
+                if (!expectingException) {
+                    logger.error("error extracting message content");
+                    e.printStackTrace();
+                }
+                throw new Exception();
             }
-            throw new Exception();
         }
         if (ce.getClass() != clazz) {
             logger.error("reply message has wrong content ('" + clazz.getName() + "' expected)");
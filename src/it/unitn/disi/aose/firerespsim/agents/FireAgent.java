@@ -1,9 +1,14 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
 import it.unitn.disi.aose.firerespsim.model.Fire;
+import it.unitn.disi.aose.firerespsim.ontology.ArmFireRequest;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
 import it.unitn.disi.aose.firerespsim.ontology.FireStatusInfo;
-import it.unitn.disi.aose.firerespsim.ontology.VehiclePositionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusChangeInfo;
+import it.unitn.disi.aose.firerespsim.ontology.PickUpCasualtyRequest;
+import it.unitn.disi.aose.firerespsim.ontology.PutOutRequest;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.TickerBehaviour;
@@ -13,14 +18,20 @@ import jade.domain.FIPAAgentManagement.RefuseException;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.AchieveREResponder;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
-import org.apache.commons.lang.math.RandomUtils;
 
 /**
  * This agent represents a fire. It's intensity increases in intervals. Mobile agents (fire engines and hospitals) next
  * to it can read it's current status (intensity and number of casualties). Fire engines next to it can decrease its
- * intensity. Start-up parameters are the row, column, and the increase interval.
+ * intensity. Reports to the environment agent when the fire ended. Start-up parameters are the row, column, the increase
+ * interval, the environment (GUID name of the environment agent), the seed of the random stream (drawn by the
+ * environment agent), and if the agent is pooled. A pooled agent is started without a fire by the environment agent and
+ * waits until the environment agent arms it with a fire. When its fire ended it reports it and waits for the next
+ * fire instead of deleting itself, so starting a fire costs one message instead of an agent start-up.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
@@ -43,15 +54,28 @@ public final class FireAgent extends ExtendedAgent {
      * Protocol for pick up casualty messages.
      */
     final static String PICK_UP_CASUALTY_PROTOCOL = "PickUpCasualty";
+    /**
+     * Protocol for arm fire messages to pooled fire agents.
+     */
+    final static String ARM_FIRE_PROTOCOL = "ArmFire";
     
     /**
-     * Model of the fire. Package scoped for faster access by inner classes.
+     * Model of the fire, <code>null</code> while a pooled agent has no fire. Package scoped for faster access by inner
+     * classes.
      */
-    Fire fire;
+    Fire fire = null;
     /**
      * Instance of the {@link Increase} behavior. Package scoped for faster access by inner classes.
      */
     Increase increaseBehaviour;
+    /**
+     * AID of the environment agent that started this fire.
+     */
+    private AID environment;
+    /**
+     * If the agent is pooled.
+     */
+    private boolean pooled;
     
     /**
      * @see jade.core.Agent#setup()
@@ -65,31 +89,176 @@ public final class FireAgent extends ExtendedAgent {
                 put("ROW", null);
                 put("COLUMN", null);
                 put("INCREASE_IVAL", null);
+                put("ENVIRONMENT", null);
+                put(SEED_PARAM, UNSEEDED);
+                put("POOLED", false);
             }
         };
         
         super.setup();
         
-        fire = new Fire(new Coordinate((Integer) params.get("ROW"), (Integer) params.get("COLUMN")), 0, 0);
-        final int intensityInc = RandomUtils.nextInt(4) + 1; // intensity increase per {@link Increase#onTick()} (from 1 to 5)
-        final int casualtiesInc = RandomUtils.nextInt(1) + 1; // casualties increase per {@link Increase#onTick()} (from 1 to 2)
+        environment = new AID((String) params.get("ENVIRONMENT"), true);
+        pooled = (Boolean) params.get("POOLED");
         
         // create behaviors
         final MessageTemplate putOutTpl = createMessageTemplate(null, PUT_OUT_PROTOCOL, ACLMessage.REQUEST);
         final PutOutService putOutService = new PutOutService(this, putOutTpl);
         final MessageTemplate pickUpTpl = createMessageTemplate(null, PICK_UP_CASUALTY_PROTOCOL, ACLMessage.REQUEST);
         final PickUpCasualtyService pickUpService = new PickUpCasualtyService(this, pickUpTpl);
-        increaseBehaviour = new Increase(this, (Integer) params.get("INCREASE_IVAL"), intensityInc, casualtiesInc);
+        parallelBehaviours.addAll(Arrays.asList(putOutService, pickUpService));
+        if (pooled) {
+            final MessageTemplate armTpl = createMessageTemplate(environment, ARM_FIRE_PROTOCOL, ACLMessage.REQUEST);
+            parallelBehaviours.add(new ArmService(this, armTpl));
+        } else {
+            fire = new Fire(new Coordinate((Integer) params.get("ROW"), (Integer) params.get("COLUMN")), 0, 0);
+            final int intensityInc = random.nextInt(4) + 1; // intensity increase per {@link Increase#onTick()} (from 1 to 5)
+            final int casualtiesInc = random.nextInt(1) + 1; // casualties increase per {@link Increase#onTick()} (from 1 to 2)
+            increaseBehaviour = new Increase(this, (Integer) params.get("INCREASE_IVAL"), intensityInc, casualtiesInc);
+            parallelBehaviours.add(increaseBehaviour);
+        }
         
         // add behaviors
-        parallelBehaviours.addAll(Arrays.asList(putOutService, pickUpService, increaseBehaviour));
         addBehaviours();
     }
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        out.writeBoolean(fire != null);
+        if (fire == null) return;
+        Checkpoint.writeCoordinate(out, fire.coordinate);
+        out.writeInt(fire.getIntensity());
+        out.writeInt(fire.getCasualties());
+        out.writeBoolean(increaseBehaviour != null && !increaseBehaviour.done());
+        if (increaseBehaviour != null) {
+            out.writeInt(increaseBehaviour.intensityIncrease);
+            out.writeInt(increaseBehaviour.casualtiesIncrease);
+        } else {
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+    }
+    
+    /**
+     * Restores the fire and if it is increasing. A pooled agent is restored with or without a fire.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        if (increaseBehaviour != null) {
+            parallelBehaviours.remove(increaseBehaviour);
+            increaseBehaviour = null;
+        }
+        fire = null;
+        if (!in.readBoolean()) return;
+        fire = new Fire(Checkpoint.readCoordinate(in), in.readInt(), in.readInt());
+        final boolean increasing = in.readBoolean();
+        final int intensityInc = in.readInt();
+        final int casualtiesInc = in.readInt();
+        if (increasing) {
+            increaseBehaviour = new Increase(this, (Integer) params.get("INCREASE_IVAL"), intensityInc, casualtiesInc);
+            parallelBehaviours.add(increaseBehaviour);
+        }
+    }
+    
+    /**
+     * Service for the environment agent to arm a pooled fire agent with a new fire. The intensity increase and the
+     * casualties increase are drawn by the environment agent.
+     */
+    private class ArmService extends AchieveREResponder {
+        
+        /**
+         * @param a
+         * @param mt
+         */
+        public ArmService(final Agent a, final MessageTemplate mt) {
+
+            super(a, mt);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#handleRequest(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage handleRequest(final ACLMessage request) throws NotUnderstoodException, RefuseException {
+
+            if (fire != null) {
+                final String refuse = "already has a fire";
+                logger.error(refuse);
+                throw new RefuseException(refuse);
+            }
+            
+            ArmFireRequest arm;
+            try {
+                arm = extractMessageContent(ArmFireRequest.class, request, false);
+            } catch (final Exception e) {
+                throw new NotUnderstoodException("could not read message content");
+            }
+            
+            fire = new Fire(arm.getCoordinate(), 0, 0);
+            increaseBehaviour = new Increase(myAgent, (Integer) params.get("INCREASE_IVAL"),
+                                             arm.getIntensityIncrease(), arm.getCasualtiesIncrease());
+            addParallelBehaviour(increaseBehaviour);
+            logger.debug("armed with fire at (" + fire.coordinate + ")");
+            
+            return null;
+        }
+        
+        /**
+         * @see jade.proto.AchieveREResponder#prepareResultNotification(jade.lang.acl.ACLMessage,
+         *      jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected ACLMessage prepareResultNotification(final ACLMessage request, final ACLMessage response)
+                throws FailureException {
+
+            return null;
+        }
+    }
+    
+    /**
+     * Ends the fire. A pooled agent reports it and waits to be armed again, otherwise the agent deletes itself (and
+     * reports it on take down). Package scoped for faster access by inner classes.
+     */
+    void endFire() {
+
+        if (!pooled) {
+            doDelete();
+            return;
+        }
+        sendMessage(ACLMessage.INFORM, EnvironmentAgent.FIRE_ENDED_PROTOCOL, environment,
+                    new OnFireStatusChangeInfo(fire.coordinate, false));
+        logger.debug("fire at (" + fire.coordinate + ") ended, back in the pool");
+        fire = null;
+        increaseBehaviour = null;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#takeDown()
+     */
+    @Override
+    protected void takeDown() {
+
+        // report that the fire ended
+        if (fire != null) {
+            sendMessage(ACLMessage.INFORM, EnvironmentAgent.FIRE_ENDED_PROTOCOL, environment,
+                        new OnFireStatusChangeInfo(fire.coordinate, false));
+        }
+        
+        super.takeDown();
+    }
+    
     /**
      * Service for fire engines to reduce the fire intensity. If the intensity reaches 0 the fire is put out and stops
-     * increasing. If also all casualties have been picked up the agent deletes itself. The fire engine must be at the
-     * fires position to be able to decrease its intensity. If it is a message with the new fire status (
+     * increasing. If also all casualties have been picked up the fire ends ({@link #endFire()}). The fire engine must
+     * be at the fires position to be able to decrease its intensity. If it is a message with the new fire status (
      * {@link Fire#toString()}) is send to the engine agent.
      */
     private class PutOutService extends AchieveREResponder {
@@ -113,10 +282,14 @@ public final class FireAgent extends ExtendedAgent {
             
             Coordinate engineCoord;
             try {
-                engineCoord = extractMessageContent(VehiclePositionInfo.class, request, false).getVehicleCoordinate();
+                engineCoord = extractMessageContent(PutOutRequest.class, request, false).getFireEnginePosition();
             } catch (final Exception e) {
                 throw new NotUnderstoodException("could not read message content");
             }
+            if (fire == null) {
+                logger.debug("no fire");
+                throw new RefuseException("no fire");
+            }
             String refuse = null;
             if (!engineCoord.equals(fire.coordinate)) {
                 refuse = "fire engine is too far away";
@@ -129,22 +302,23 @@ public final class FireAgent extends ExtendedAgent {
                 throw new RefuseException(refuse);
             }
             
-            boolean takeDown = false;
+            boolean ended = false;
             fire.decreaseIntensity(1);
             if (fire.getIntensity() < 1) {
                 // fire is put out
                 stopParallelBehaviour(increaseBehaviour);
                 fire.setIntensity(0);
+                IncidentMetrics.fireExtinguished(fire.coordinate);
                 if (fire.getCasualties() < 1) {
                     fire.setCasualties(0);
-                    takeDown = true;
+                    ended = true;
                 }
             }
             logger.info("new intensity: " + fire.getIntensity());
             sendStatus(request.getSender());
             
-            if (takeDown) {
-                doDelete();
+            if (ended) {
+                endFire();
             }
             
             return null;
@@ -188,10 +362,15 @@ public final class FireAgent extends ExtendedAgent {
             
             Coordinate ambulanceCoord;
             try {
-                ambulanceCoord = extractMessageContent(VehiclePositionInfo.class, request, false).getVehicleCoordinate();
+                ambulanceCoord = extractMessageContent(PickUpCasualtyRequest.class, request, false)
+                                                                                            .getAmbulancePosition();
             } catch (final Exception e) {
                 throw new NotUnderstoodException("could not read message content");
             }
+            if (fire == null) {
+                logger.debug("no fire");
+                throw new RefuseException("no fire");
+            }
             String refuse = null;
             if (!ambulanceCoord.equals(fire.coordinate)) {
                 refuse = "ambulance is too far away";
@@ -204,18 +383,19 @@ public final class FireAgent extends ExtendedAgent {
                 throw new RefuseException(refuse);
             }
             
-            boolean takeDown = false;
+            IncidentMetrics.casualtyPickedUp(fire.coordinate);
+            boolean ended = false;
             fire.decreaseCasualties(1);
             if (fire.getCasualties() < 1 && fire.getIntensity() < 1) {
                 fire.setIntensity(0);
                 fire.setCasualties(0);
-                takeDown = true;
+                ended = true;
             }
             logger.info("new casualty count: " + fire.getCasualties());
             sendStatus(request.getSender());
             
-            if (takeDown) {
-                doDelete();
+            if (ended) {
+                endFire();
             }
             
             return createReply(request, ACLMessage.AGREE, null);
@@ -249,8 +429,14 @@ public final class FireAgent extends ExtendedAgent {
      */
     private class Increase extends TickerBehaviour {
         
-        private final int intensityIncrease;
-        private final int casualtiesIncrease;
+        /**
+         * Package scoped for faster access by the outer class.
+         */
+        final int intensityIncrease;
+        /**
+         * Package scoped for faster access by the outer class.
+         */
+        final int casualtiesIncrease;
         
         /**
          * @param a
@@ -273,6 +459,7 @@ public final class FireAgent extends ExtendedAgent {
 
             fire.increaseIntensity(intensityIncrease);
             fire.increaseCasualties(casualtiesIncrease);
+            IncidentMetrics.casualtiesAdded(fire.coordinate, casualtiesIncrease);
             logger.info("new intensity: " + fire.getIntensity() + ", casualties: " + fire.getCasualties());
         }
     }
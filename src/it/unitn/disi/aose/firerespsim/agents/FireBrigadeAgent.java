@@ -1,6 +1,10 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
+import it.unitn.disi.aose.firerespsim.model.Vehicle;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
+import it.unitn.disi.aose.firerespsim.ontology.PutOutRequest;
+import jade.lang.acl.ACLMessage;
 
 /**
  * This agent simulates a fire brigade.
@@ -30,4 +34,60 @@ public final class FireBrigadeAgent extends StationaryAgent {
 
         return fires.get(fireCoord).getIntensity();
     }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetArrivedAtHome(int)
+     */
+    @Override
+    void fleetArrivedAtHome(final int v) {
+
+        fleet.setIdle(v);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetArrivedAtFire(int)
+     */
+    @Override
+    void fleetArrivedAtFire(final int v) {
+
+        sendFleetRequest(v, FireAgent.PUT_OUT_PROTOCOL, new PutOutRequest(fleet.getCoordinate(v)));
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetDoMove(int)
+     */
+    @Override
+    void fleetDoMove(final int v) {
+
+        if (fleet.getState(v) != Vehicle.STATE_AT_TARGET || !fleet.isAtFire(v)) return;
+        sendFleetRequest(v, FireAgent.PUT_OUT_PROTOCOL, new PutOutRequest(fleet.getCoordinate(v)));
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetReceivedReply(int, jade.lang.acl.ACLMessage)
+     */
+    @Override
+    void fleetReceivedReply(final int v, final ACLMessage reply) {
+
+        // like the fire engine agents wait at the fire on refuse until the fire status tells it is put out
+        if (reply.getPerformative() == ACLMessage.REFUSE || fleet.getFire(v) == null) return;
+        logger.info("fire at (" + fleet.getFire(v) + ") cannot be put out, fire engine " + v + " returning");
+        returnFleetHome(v);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetReceivedFireStatus(it.unitn.disi.aose.firerespsim.ontology.FireStatus)
+     */
+    @Override
+    void fleetReceivedFireStatus(final FireStatus status) {
+
+        if (status.getIntensity() >= 1) return;
+        for (int v = 0; v < fleet.size(); v++) {
+            if (!fleet.isAssignedTo(v, status.getCoordinate())) {
+                continue;
+            }
+            logger.info("fire is put out, fire engine " + v + " returning to fire brigade");
+            returnFleetHome(v);
+        }
+    }
 }
@@ -66,6 +66,7 @@ public final class FireEngineAgent extends VehicleAgent {
         if (putOutFire == null) {
             putOutFire = new PutOutFire(this, putOutMsg);
         } else {
+            stopParallelBehaviour(putOutFire);
             putOutFire.reset(putOutMsg);
         }
         addParallelBehaviour(putOutFire);
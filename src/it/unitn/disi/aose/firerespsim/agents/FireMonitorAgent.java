@@ -1,14 +1,21 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
 import it.unitn.disi.aose.firerespsim.behaviours.FindAgent;
+import it.unitn.disi.aose.firerespsim.behaviours.Subscriber;
 import it.unitn.disi.aose.firerespsim.behaviours.SubscriptionService;
+import it.unitn.disi.aose.firerespsim.model.AreaShards;
 import it.unitn.disi.aose.firerespsim.model.Subscribers;
 import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.ontology.AreaDimensionsInfo;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
 import it.unitn.disi.aose.firerespsim.ontology.FireAlert;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionInfo;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireRegionRequest;
+import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusChangeInfo;
 import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusInfo;
 import it.unitn.disi.aose.firerespsim.ontology.OnFireStatusRequest;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.DataStore;
@@ -18,15 +25,25 @@ import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.AchieveREInitiator;
 import jade.proto.SubscriptionResponder.Subscription;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 
 /**
  * This agent scans the simulation area for new fires. Agents can subscribe to get notified about newly detected fires.
- * Corresponds to the 911 emergency service in the real world. Start-up parameter is the scan area interval.
+ * Corresponds to the 911 emergency service in the real world. Instead of scanning, the agent can also subscribe at the
+ * environment agent to get notified about started and ended fires. Start-up parameters are the scan area interval, the
+ * number of area rows to scan per interval (0 to scan one coordinate per interval), and if to subscribe to fire events
+ * instead of scanning. If the area is sharded, the requests are routed to the environment agents owning the scanned
+ * coordinates and the agent subscribes at all of them.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
@@ -61,6 +78,8 @@ public final class FireMonitorAgent extends ExtendedAgent {
             
             {
                 put("SCAN_AREA_IVAL", 10000);
+                put("SCAN_REGION_ROWS", 0);
+                put("SUBSCRIBE_FIRE_EVENTS", false);
             }
         };
         
@@ -70,55 +89,132 @@ public final class FireMonitorAgent extends ExtendedAgent {
         
         // create data store
         final String areaDimAIDKey = "AREA_DIMENSIONS_AID";
-        final String onFireStatusAIDKey = "ON_FIRE_STATUS_AID";
-        final String areaDimKey = "AREA_DIMENSIONS";
+        final String shardAIDsKey = "SHARD_AIDS";
+        final String areaShardsKey = "AREA_SHARDS";
         final DataStore ds = new DataStore();
         
         // create behaviors
+        final MessageTemplate fireAlertSubsTpl = createMessageTemplate(null, FIRE_ALERT_PROTOCOL, ACLMessage.SUBSCRIBE);
+        final SubscriptionService fireAlertSubsService = new SubscriptionService(this, fireAlertSubsTpl,
+                                                                                 fireAlertSubscribers);
         final FindAgent findAreaDimAgent = new FindAgent(this, EnvironmentAgent.AREA_DIMENSIONS_DF_TYPE, areaDimAIDKey);
         findAreaDimAgent.setDataStore(ds);
         final ACLMessage getAreaDimReqMsg = createMessage(ACLMessage.REQUEST, EnvironmentAgent.AREA_DIMENSIONS_PROTOCOL);
         final GetAreaDimensions getAreaDim = new GetAreaDimensions(this, getAreaDimReqMsg, ds, areaDimAIDKey,
-                                                                   areaDimKey);
-        final FindAgent findOnFireStatusAgent = new FindAgent(this, EnvironmentAgent.ON_FIRE_STATUS_DF_TYPE,
-                                                              onFireStatusAIDKey);
-        findOnFireStatusAgent.setDataStore(ds);
-        final MessageTemplate fireAlertSubsTpl = createMessageTemplate(null, FIRE_ALERT_PROTOCOL, ACLMessage.SUBSCRIBE);
-        final ScanArea scanArea = new ScanArea(this, (Integer) params.get("SCAN_AREA_IVAL"), onFireStatusAIDKey,
-                                               areaDimKey);
+                                                                   areaShardsKey, shardAIDsKey);
+        sequentialBehaviours.add(findAreaDimAgent);
+        sequentialBehaviours.add(getAreaDim);
+        if ((Boolean) params.get("SUBSCRIBE_FIRE_EVENTS")) {
+            final ACLMessage fireEventsSubsMsg = createMessage(ACLMessage.SUBSCRIBE,
+                                                               EnvironmentAgent.FIRE_EVENTS_PROTOCOL);
+            final Subscriber fireEventsSubscriber = new Subscriber(this, fireEventsSubsMsg, ds, shardAIDsKey);
+            fireEventsSubscriber.registerHandleInform(new HandleFireEvent(this, fireEventsSubscriber.REPLY_KEY));
+            
+            // add behaviors
+            parallelBehaviours.addAll(Arrays.asList(fireEventsSubscriber, fireAlertSubsService));
+            addBehaviours();
+            return;
+        }
+        final int scanRegionRows = (Integer) params.get("SCAN_REGION_ROWS");
+        final TickerBehaviour scanArea;
+        if (scanRegionRows > 0) {
+            scanArea = new ScanRegions(this, (Integer) params.get("SCAN_AREA_IVAL"), shardAIDsKey, areaShardsKey,
+                                       scanRegionRows);
+        } else {
+            scanArea = new ScanArea(this, (Integer) params.get("SCAN_AREA_IVAL"), shardAIDsKey, areaShardsKey);
+        }
         scanArea.setDataStore(ds);
-        final SubscriptionService fireAlertSubsService = new SubscriptionService(this, fireAlertSubsTpl,
-                                                                                 fireAlertSubscribers);
         
         // add behaviors
-        sequentialBehaviours.add(findAreaDimAgent);
-        sequentialBehaviours.add(getAreaDim);
-        sequentialBehaviours.add(findOnFireStatusAgent);
         parallelBehaviours.addAll(Arrays.asList(scanArea, fireAlertSubsService));
         addBehaviours();
     }
     
     /**
-     * Gets the simulation area dimensions from the environment agent.
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        Checkpoint.writeCoordinates(out, detectedFires);
+    }
+    
+    /**
+     * Restores the detected fires.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        detectedFires.clear();
+        Checkpoint.readCoordinates(in, detectedFires);
+    }
+    
+    /**
+     * Handles a fire event of the environment agent. Stores the started fires in {@link #detectedFires} and sends a
+     * fire alert for every new one.
+     */
+    private class HandleFireEvent extends OneShotBehaviour {
+        
+        private final String replyKey;
+        
+        /**
+         * @param a
+         * @param replyKey Data store key of the received fire event message.
+         */
+        public HandleFireEvent(final Agent a, final String replyKey) {
+
+            super(a);
+            this.replyKey = replyKey;
+        }
+        
+        /**
+         * @see jade.core.behaviours.Behaviour#action()
+         */
+        @Override
+        public void action() {
+
+            OnFireStatusChangeInfo event;
+            try {
+                event = extractMessageContent(OnFireStatusChangeInfo.class, (ACLMessage) getDataStore().get(replyKey),
+                                              false);
+            } catch (final Exception e) {
+                return;
+            }
+            if (updateDetectedFires(event.getCoordinate(), event.getStatus())) {
+                sendFireAlert(event.getCoordinate());
+            }
+        }
+    }
+    
+    /**
+     * Gets the simulation area dimensions and shards from the environment agent. Stores the AIDs of the environment
+     * agents owning the shards.
      */
     private class GetAreaDimensions extends AchieveREInitiator {
         
         private final String areaDimAIDKey;
-        private final String areaDimKey;
+        private final String areaShardsKey;
+        private final String shardAIDsKey;
         
         /**
          * @param a
          * @param msg
          * @param store
          * @param areaDimAIDKey Data store key of the area dimensions service AID.
-         * @param areaDimKey Data store key of the area dimensions.
+         * @param areaShardsKey Data store key of the {@link AreaShards}.
+         * @param shardAIDsKey Data store key of the list of environment agent AIDs, indexed by shard.
          */
         public GetAreaDimensions(final Agent a, final ACLMessage msg, final DataStore store,
-                                 final String areaDimAIDKey, final String areaDimKey) {
+                                 final String areaDimAIDKey, final String areaShardsKey, final String shardAIDsKey) {
 
             super(a, msg, store);
             this.areaDimAIDKey = areaDimAIDKey;
-            this.areaDimKey = areaDimKey;
+            this.areaShardsKey = areaShardsKey;
+            this.shardAIDsKey = shardAIDsKey;
         }
         
         /**
@@ -140,13 +236,26 @@ public final class FireMonitorAgent extends ExtendedAgent {
         @Override
         protected void handleInform(final ACLMessage inform) {
 
+            AreaDimensionsInfo areaDimInfo;
             try {
-                getDataStore().put(areaDimKey,
-                                   extractMessageContent(AreaDimensionsInfo.class, inform, false).getAreaDimensions());
+                areaDimInfo = extractMessageContent(AreaDimensionsInfo.class, inform, false);
             } catch (final Exception e) {
                 return;
             }
-            logger.info("received area dimensions");
+            final AreaShards shards = new AreaShards(areaDimInfo.getAreaDimensions(), areaDimInfo.getShardRows(),
+                                                     areaDimInfo.getShardCols());
+            final List<AID> shardAIDs = new ArrayList<AID>();
+            if (shards.getNumShards() == 1) {
+                shardAIDs.add(inform.getSender());
+            } else {
+                for (int shard = 0; shard < shards.getNumShards(); shard++) {
+                    shardAIDs.add(new AID(shards.getShardName(EnvironmentAgent.ENVIRONMENT_AGENT_NAME, shard),
+                                          AID.ISLOCALNAME));
+                }
+            }
+            getDataStore().put(areaShardsKey, shards);
+            getDataStore().put(shardAIDsKey, shardAIDs);
+            logger.info("received area dimensions (" + shards.getNumShards() + " shards)");
         }
     }
     
@@ -155,9 +264,11 @@ public final class FireMonitorAgent extends ExtendedAgent {
      */
     private class ScanArea extends TickerBehaviour {
         
-        private final String onFireStatusAIDKey;
-        private final String areaDimKey;
+        private final String shardAIDsKey;
+        private final String areaShardsKey;
+        private AreaShards shards = null;
         private AreaDimensions areaDim = null;
+        private List<AID> shardAIDs = null;
         private final ACLMessage onFireStatusReqMsg = createMessage(ACLMessage.REQUEST,
                                                                     EnvironmentAgent.ON_FIRE_STATUS_PROTOCOL);
         
@@ -166,40 +277,46 @@ public final class FireMonitorAgent extends ExtendedAgent {
         /**
          * @param a
          * @param period
-         * @param onFireStatusAIDKey Data store key of the on fire status service AID.
-         * @param areaDimKey Data store key of the area dimensions.
+         * @param shardAIDsKey Data store key of the list of environment agent AIDs, indexed by shard.
+         * @param areaShardsKey Data store key of the {@link AreaShards}.
          */
-        public ScanArea(final Agent a, final long period, final String onFireStatusAIDKey, final String areaDimKey) {
+        public ScanArea(final Agent a, final long period, final String shardAIDsKey, final String areaShardsKey) {
 
             super(a, period);
-            this.onFireStatusAIDKey = onFireStatusAIDKey;
-            this.areaDimKey = areaDimKey;
+            this.shardAIDsKey = shardAIDsKey;
+            this.areaShardsKey = areaShardsKey;
         }
         
         /**
          * @see jade.core.behaviours.TickerBehaviour#onTick()
          */
+        @SuppressWarnings("unchecked")
         @Override
         protected void onTick() {
 
-            if (!onFireStatusReqMsg.getAllReceiver().hasNext()) {
-                onFireStatusReqMsg.addReceiver((AID) getDataStore().get(onFireStatusAIDKey));
-            }
-            if (areaDim == null) {
-                areaDim = (AreaDimensions) getDataStore().get(areaDimKey);
-                if (areaDim == null) {
+            if (shards == null) {
+                shards = (AreaShards) getDataStore().get(areaShardsKey);
+                if (shards == null) {
                     logger.error("area dimensions not set, cannot scan!");
                     return;
                 }
+                areaDim = shards.dimensions;
+                shardAIDs = (List<AID>) getDataStore().get(shardAIDsKey);
+            }
+            if (getOnFireStatus != null && !getOnFireStatus.done()) {
+                // previous scan still waiting for the reply
+                return;
             }
             
-            // scan current coordinate
+            // scan current coordinate at the owning environment agent
 //            logger.debug("scanning coordinate (" + areaCoord + ")");
             final ACLMessage thisReqMsg = copyMessage(onFireStatusReqMsg);
-            fillMessage(thisReqMsg, new OnFireStatusRequest(areaCoord));
+            thisReqMsg.addReceiver(shardAIDs.get(shards.getShard(areaCoord)));
+            fillMessage(thisReqMsg, new OnFireStatusRequest(areaCoord.clone()));
             if (getOnFireStatus == null) {
                 getOnFireStatus = new GetOnFireStatus(myAgent, thisReqMsg, getDataStore(), areaCoord.clone());
             } else {
+                stopParallelBehaviour(getOnFireStatus);
                 getOnFireStatus.reset(thisReqMsg, areaCoord.clone());
             }
             addParallelBehaviour(getOnFireStatus);
@@ -270,31 +387,14 @@ public final class FireMonitorAgent extends ExtendedAgent {
          */
         private void handleOnFireStatus(final boolean onFireStatus) {
 
-            if (onFireStatus) {
-                // position is on fire
-                if (detectedFires.contains(fireCoord)) {
-                    // known fire
-                    logger.debug("detected known fire at (" + fireCoord + ")");
-                } else {
-                    // new fire
-                    logger.info("detected new fire at (" + fireCoord + ")");
-                    detectedFires.add(fireCoord);
-                    if (sendFireAlert == null) {
-                        sendFireAlert = new SendFireAlert(fireCoord);
-                    } else {
-                        sendFireAlert.reset(fireCoord);
-                    }
-                    addParallelBehaviour(sendFireAlert);
-                }
+            if (!updateDetectedFires(fireCoord, onFireStatus)) return;
+            if (sendFireAlert == null) {
+                sendFireAlert = new SendFireAlert(fireCoord);
             } else {
-                // position is not on fire
-//                logger.debug("no fire at (" + fireCoord + ")");
-                if (detectedFires.contains(fireCoord)) {
-                    // remove known fire
-                    logger.info("fire at (" + fireCoord + ") no longer burning");
-                    detectedFires.remove(fireCoord);
-                }
+                stopParallelBehaviour(sendFireAlert);
+                sendFireAlert.reset(fireCoord);
             }
+            addParallelBehaviour(sendFireAlert);
         }
         
         /**
@@ -308,6 +408,205 @@ public final class FireMonitorAgent extends ExtendedAgent {
         }
     }
     
+    /**
+     * Scans the simulation area in blocks of whole rows for fires. Starts a {@link GetOnFireRegion} for each block to
+     * check.
+     */
+    private class ScanRegions extends TickerBehaviour {
+        
+        private final String shardAIDsKey;
+        private final String areaShardsKey;
+        private final int regionRows;
+        private AreaShards shards = null;
+        private AreaDimensions areaDim = null;
+        private List<AID> shardAIDs = null;
+        private final ACLMessage onFireRegionReqMsg = createMessage(ACLMessage.REQUEST,
+                                                                    EnvironmentAgent.ON_FIRE_REGION_PROTOCOL);
+        
+        private int areaRow = 1;
+        
+        /**
+         * @param a
+         * @param period
+         * @param shardAIDsKey Data store key of the list of environment agent AIDs, indexed by shard.
+         * @param areaShardsKey Data store key of the {@link AreaShards}.
+         * @param regionRows Number of rows to scan per tick.
+         */
+        public ScanRegions(final Agent a, final long period, final String shardAIDsKey, final String areaShardsKey,
+                           final int regionRows) {
+
+            super(a, period);
+            this.shardAIDsKey = shardAIDsKey;
+            this.areaShardsKey = areaShardsKey;
+            this.regionRows = regionRows;
+        }
+        
+        /**
+         * @see jade.core.behaviours.TickerBehaviour#onTick()
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void onTick() {
+
+            if (shards == null) {
+                shards = (AreaShards) getDataStore().get(areaShardsKey);
+                if (shards == null) {
+                    logger.error("area dimensions not set, cannot scan!");
+                    return;
+                }
+                areaDim = shards.dimensions;
+                shardAIDs = (List<AID>) getDataStore().get(shardAIDsKey);
+            }
+            if (getOnFireRegion != null && !getOnFireRegion.done()) {
+                // previous scan still waiting for replies of the shards
+                return;
+            }
+            
+            // scan current rows, each overlapped shard replies with its part
+            final int height = Math.min(regionRows, areaDim.getHeight() - areaRow + 1);
+//            logger.debug("scanning rows " + areaRow + " to " + (areaRow + height - 1));
+            final ACLMessage thisReqMsg = copyMessage(onFireRegionReqMsg);
+            final int firstShard = shards.getShard(new Coordinate(areaRow, 1));
+            final int lastShard = shards.getShard(new Coordinate(areaRow + height - 1, areaDim.getWidth()));
+            for (int shard = firstShard; shard <= lastShard; shard++) {
+                thisReqMsg.addReceiver(shardAIDs.get(shard));
+            }
+            fillMessage(thisReqMsg, new OnFireRegionRequest(new Coordinate(areaRow, 1), areaDim.getWidth(), height));
+            if (getOnFireRegion == null) {
+                getOnFireRegion = new GetOnFireRegion(myAgent, thisReqMsg, getDataStore());
+            } else {
+                stopParallelBehaviour(getOnFireRegion);
+                getOnFireRegion.reset(thisReqMsg);
+            }
+            addParallelBehaviour(getOnFireRegion);
+            
+            // move to next rows
+            areaRow += height;
+            if (areaRow > areaDim.getHeight()) {
+                areaRow = 1;
+            }
+        }
+    }
+    
+    /**
+     * Instance of {@link GetOnFireRegion} that gets re-used for every scanned region. Package scoped for faster access
+     * by inner classes.
+     */
+    GetOnFireRegion getOnFireRegion = null;
+    
+    /**
+     * Gets the on fire states of a region of the simulation area from the environment agent. Stores the detected fires
+     * in {@link #detectedFires}. Sends a fire alert for every newly detected fire.
+     */
+    private class GetOnFireRegion extends AchieveREInitiator {
+        
+        /**
+         * @param a
+         * @param msg
+         * @param store
+         */
+        public GetOnFireRegion(final Agent a, final ACLMessage msg, final DataStore store) {
+
+            super(a, msg, store);
+        }
+        
+        /**
+         * @see jade.proto.AchieveREInitiator#handleInform(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        protected void handleInform(final ACLMessage inform) {
+
+            OnFireRegionInfo region;
+            try {
+                region = extractMessageContent(OnFireRegionInfo.class, inform, false);
+            } catch (final Exception e) {
+                return;
+            }
+//            logger.debug("received on fire region");
+            
+            // remove fires of the region that are no longer burning
+            final int firstRow = region.getCoordinate().getRow();
+            final int firstCol = region.getCoordinate().getCol();
+            final Iterator<Coordinate> iter = detectedFires.iterator();
+            while (iter.hasNext()) {
+                final Coordinate fireCoord = iter.next();
+                if (fireCoord.getRow() < firstRow || fireCoord.getRow() >= firstRow + region.getHeight() ||
+                    fireCoord.getCol() < firstCol || fireCoord.getCol() >= firstCol + region.getWidth() ||
+                    region.isOnFire(fireCoord.getRow(), fireCoord.getCol())) {
+                    continue;
+                }
+                logger.info("fire at (" + fireCoord + ") no longer burning");
+                iter.remove();
+            }
+            
+            // add new fires
+            for (int row = firstRow; row < firstRow + region.getHeight(); row++) {
+                for (int col = firstCol; col < firstCol + region.getWidth(); col++) {
+                    if (!region.isOnFire(row, col)) {
+                        continue;
+                    }
+                    final Coordinate fireCoord = new Coordinate(row, col);
+                    if (updateDetectedFires(fireCoord, true)) {
+                        sendFireAlert(fireCoord);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Updates the {@link #detectedFires} with the on fire status of a coordinate. Package scoped for faster access by
+     * inner classes.
+     * 
+     * @param fireCoord
+     * @param onFireStatus
+     * @return <code>true</code> if a new fire was detected, <code>false</code> if not
+     */
+    boolean updateDetectedFires(final Coordinate fireCoord, final boolean onFireStatus) {
+
+        if (onFireStatus) {
+            // position is on fire
+            if (detectedFires.contains(fireCoord)) {
+                // known fire
+                logger.debug("detected known fire at (" + fireCoord + ")");
+                return false;
+            }
+            // new fire
+            logger.info("detected new fire at (" + fireCoord + ")");
+            detectedFires.add(fireCoord);
+            IncidentMetrics.fireDetected(fireCoord);
+            return true;
+        }
+        // position is not on fire
+//        logger.debug("no fire at (" + fireCoord + ")");
+        if (detectedFires.contains(fireCoord)) {
+            // remove known fire
+            logger.info("fire at (" + fireCoord + ") no longer burning");
+            detectedFires.remove(fireCoord);
+        }
+        return false;
+    }
+    
+    /**
+     * Sends a fire alert to all subscribers. Package scoped for faster access by inner classes.
+     * 
+     * @param fireCoord
+     */
+    void sendFireAlert(final Coordinate fireCoord) {
+
+        final Set<Subscription> fireAlertSubscriptions = fireAlertSubscribers.getSubscriptions();
+        if (fireAlertSubscriptions.isEmpty()) {
+            logger.error("no agents registered to send fire alert to - fire will not be handled!");
+            return;
+        }
+        final ACLMessage alertMsg = createMessage(ACLMessage.INFORM, FIRE_ALERT_PROTOCOL, Arrays.asList(new AID[] {}),
+                                                  new FireAlert(fireCoord));
+        for (final Subscription sub : fireAlertSubscriptions) {
+            sub.notify(alertMsg);
+        }
+        logger.debug("sent alert for fire at (" + fireCoord + ")");
+    }
+    
     /**
      * Instance of {@link SendFireAlert} that gets re-used for every fire.
      */
@@ -334,17 +633,7 @@ public final class FireMonitorAgent extends ExtendedAgent {
         @Override
         public void action() {
 
-            final Set<Subscription> fireAlertSubscriptions = fireAlertSubscribers.getSubscriptions();
-            if (fireAlertSubscriptions.isEmpty()) {
-                logger.error("no agents registered to send fire alert to - fire will not be handled!");
-                return;
-            }
-            final ACLMessage alertMsg = createMessage(ACLMessage.INFORM, FIRE_ALERT_PROTOCOL,
-                                                      Arrays.asList(new AID[] {}), new FireAlert(fireCoord));
-            for (final Subscription sub : fireAlertSubscriptions) {
-                sub.notify(alertMsg);
-            }
-            logger.debug("sent alert for fire at (" + fireCoord + ")");
+            sendFireAlert(fireCoord);
         }
         
         public void reset(final Coordinate fireCoord) {
@@ -1,6 +1,10 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
+import it.unitn.disi.aose.firerespsim.model.Vehicle;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
+import it.unitn.disi.aose.firerespsim.ontology.PickUpCasualtyRequest;
+import jade.lang.acl.ACLMessage;
 
 /**
  * This agent simulates a hospital.
@@ -30,4 +34,95 @@ public final class HospitalAgent extends StationaryAgent {
 
         return fires.get(fireCoord).getCasualties();
     }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetArrivedAtHome(int)
+     */
+    @Override
+    void fleetArrivedAtHome(final int v) {
+
+        if (!fleet.isCarryingCasualty(v)) {
+            fleet.setIdle(v);
+            return;
+        }
+        fleet.setCarryingCasualty(v, false);
+        fleet.setAcceptingTarget(v, true);
+        logger.info("ambulance " + v + " delivered casualty");
+        final Coordinate fireCoord = fleet.getFire(v);
+        if (fireCoord == null) {
+            fleet.setIdle(v);
+        } else {
+            setFleetTarget(v, fireCoord);
+        }
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetArrivedAtFire(int)
+     */
+    @Override
+    void fleetArrivedAtFire(final int v) {
+
+        sendFleetRequest(v, FireAgent.PICK_UP_CASUALTY_PROTOCOL, new PickUpCasualtyRequest(fleet.getCoordinate(v)));
+    }
+    
+    /**
+     * Unlike the ambulance agents, which wait for the next fire status, retries to pick up a casualty every move
+     * interval while at the fire, because the fire only sends its status to the requesting vehicle.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetDoMove(int)
+     */
+    @Override
+    void fleetDoMove(final int v) {
+
+        if (fleet.getState(v) != Vehicle.STATE_AT_TARGET || !fleet.isAtFire(v) || fleet.isCarryingCasualty(v)) return;
+        sendFleetRequest(v, FireAgent.PICK_UP_CASUALTY_PROTOCOL, new PickUpCasualtyRequest(fleet.getCoordinate(v)));
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetReceivedReply(int, jade.lang.acl.ACLMessage)
+     */
+    @Override
+    void fleetReceivedReply(final int v, final ACLMessage reply) {
+
+        final Coordinate fireCoord = fleet.getFire(v);
+        if (fireCoord == null) return;
+        if (reply.getPerformative() == ACLMessage.AGREE) {
+            logger.info("ambulance " + v + " picked up casualty from fire at (" + fireCoord
+                        + "), bringing it back to hospital");
+            fleet.setCarryingCasualty(v, true);
+            fleet.setAcceptingTarget(v, false);
+            setFleetTarget(v, fleet.home);
+            return;
+        }
+        final FireStatus status = fires.get(fireCoord);
+        if (reply.getPerformative() == ACLMessage.REFUSE
+            && (status == null || status.getIntensity() >= 1 || status.getCasualties() >= 1)) {
+            // casualties may still come, try again next move
+            return;
+        }
+        logger.info("no casualty picked up from fire at (" + fireCoord + "), ambulance " + v + " returning");
+        returnFleetHome(v);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.StationaryAgent#fleetReceivedFireStatus(it.unitn.disi.aose.firerespsim.ontology.FireStatus)
+     */
+    @Override
+    void fleetReceivedFireStatus(final FireStatus status) {
+
+        if (status.getIntensity() >= 1 || status.getCasualties() >= 1) return;
+        for (int v = 0; v < fleet.size(); v++) {
+            if (!fleet.isAssignedTo(v, status.getCoordinate())) {
+                continue;
+            }
+            if (fleet.isCarryingCasualty(v)) {
+                // already on the way home
+                fleet.setFire(v, null);
+            } else {
+                logger.info("fire is put out and all casualties have been picked up - ambulance " + v
+                            + " returning to hospital");
+                returnFleetHome(v);
+            }
+        }
+    }
 }
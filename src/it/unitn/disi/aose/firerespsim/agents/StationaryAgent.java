@@ -1,21 +1,32 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
 import it.unitn.disi.aose.firerespsim.behaviours.FindAgent;
+import it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler;
 import it.unitn.disi.aose.firerespsim.behaviours.Subscriber;
-import it.unitn.disi.aose.firerespsim.model.SimulationArea;
+import it.unitn.disi.aose.firerespsim.model.AreaShards;
+import it.unitn.disi.aose.firerespsim.model.Dispatch;
+import it.unitn.disi.aose.firerespsim.model.Fleet;
+import it.unitn.disi.aose.firerespsim.model.SpatialIndex;
+import it.unitn.disi.aose.firerespsim.model.Vehicle;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
 import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
 import it.unitn.disi.aose.firerespsim.ontology.FireStatusInfo;
 import it.unitn.disi.aose.firerespsim.ontology.HandleFireCFP;
 import it.unitn.disi.aose.firerespsim.ontology.HandleFireProposal;
 import it.unitn.disi.aose.firerespsim.ontology.SetTargetRequest;
+import it.unitn.disi.aose.firerespsim.ontology.StationPositionInfo;
 import it.unitn.disi.aose.firerespsim.ontology.VehicleStatus;
 import it.unitn.disi.aose.firerespsim.ontology.VehicleStatusInfo;
 import it.unitn.disi.aose.firerespsim.util.AgentUtil;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
+import it.unitn.disi.aose.firerespsim.util.InputLog;
+import jade.content.Predicate;
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.DataStore;
+import jade.core.behaviours.TickerBehaviour;
 import jade.domain.FIPAAgentManagement.FailureException;
 import jade.domain.FIPAAgentManagement.NotUnderstoodException;
 import jade.domain.FIPAAgentManagement.RefuseException;
@@ -25,21 +36,26 @@ import jade.proto.AchieveREInitiator;
 import jade.proto.ContractNetResponder;
 import jade.wrapper.AgentController;
 import jade.wrapper.StaleProxyException;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Vector;
 import java.util.Map.Entry;
-import org.apache.commons.lang.math.RandomUtils;
 
 /**
  * This is the super class for the fire brigade and hospital agents. Handles the communication with the
  * {@link CoordinatorAgent} and the owned {@link VehicleAgent}s and assigns the vehicle agents to the different fires it
  * is responsible for. Concrete subclasses can customize the behavior by implementing the abstract methods. Start-up
- * parameters are an id, the row, column, and the vehicle move interval.
+ * parameters are an id, the row, column, the vehicle move interval, the master seed of the random streams, the fire
+ * hosting of the vehicle agents (see {@link VehicleAgent}), if the vehicles are hosted as a fleet, and the number of
+ * vehicles (0 for a random number between 1 and 4). By default every vehicle is a {@link VehicleAgent}. With the fleet
+ * the vehicles are entries of a {@link Fleet} that are moved together by this agent, which also sends the put out and
+ * pick up casualty requests of the vehicles, so there is neither an agent nor a status message per vehicle.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
@@ -63,6 +79,10 @@ public abstract class StationaryAgent extends ExtendedAgent {
      * Vehicles. Package scoped for faster access by inner classes.
      */
     final Map<AID, VehicleStatus> vehicles = new HashMap<AID, VehicleStatus>();
+    /**
+     * Positions of the {@link #vehicles} with known status. Package scoped for faster access by inner classes.
+     */
+    final SpatialIndex<AID> vehiclePositions = new SpatialIndex<AID>();
     
     /**
      * Fires responsible for. Package scoped for faster access by inner classes.
@@ -73,6 +93,21 @@ public abstract class StationaryAgent extends ExtendedAgent {
      */
     final Map<Coordinate, Integer> fireVehicles = new HashMap<Coordinate, Integer>();
     
+    /**
+     * Vehicles if hosted as a fleet, <code>null</code> if every vehicle is a {@link VehicleAgent}. Package scoped for
+     * faster access by inner classes.
+     */
+    Fleet fleet = null;
+    /**
+     * Positions of the {@link #fleet} vehicles. Package scoped for faster access by inner classes.
+     */
+    final SpatialIndex<Integer> fleetPositions = new SpatialIndex<Integer>();
+    /**
+     * Partitioning of the area into the environment agents hosting the fires, <code>null</code> if every fire is a
+     * {@link FireAgent}.
+     */
+    private AreaShards fireTableShards = null;
+    
     /**
      * @see jade.core.Agent#setup()
      */
@@ -86,6 +121,14 @@ public abstract class StationaryAgent extends ExtendedAgent {
                 put("ROW", null);
                 put("COLUMN", null);
                 put("VEHICLE_MOVE_IVAL", 10000);
+                put(SEED_PARAM, UNSEEDED);
+                put("FIRE_TABLE", false);
+                put("AREA_WIDTH", 0);
+                put("AREA_HEIGHT", 0);
+                put("SHARD_ROWS", 1);
+                put("SHARD_COLS", 1);
+                put("VEHICLE_FLEET", false);
+                put("NUMBER_OF_VEHICLES", 0);
             }
         };
         
@@ -93,20 +136,26 @@ public abstract class StationaryAgent extends ExtendedAgent {
         
         final Coordinate position = new Coordinate((Integer) params.get("ROW"), (Integer) params.get("COLUMN"));
         
-        // create vehicle agents
-        final int numVehicles = RandomUtils.nextInt(4) + 1; // between 1 and 5
-        final Object[] args = {getName(), position.getRow(), position.getCol(), params.get("VEHICLE_MOVE_IVAL")};
-        for (int i = 0; i < numVehicles; i++) {
-            final String nickname = vehicleName + " " + params.get("ID") + "-" + i;
-            final AgentController ac = AgentUtil.startAgent(getContainerController(), nickname, vehicleAgentClass, args);
-            try {
-                vehicles.put(new AID(ac.getName(), true), null);
-//                logger.debug("created '" + nickname + "'");
-            } catch (final StaleProxyException e) {
-                logger.error("error getting vehicle agent name");
+        if ((Boolean) params.get("FIRE_TABLE")) {
+            fireTableShards = new AreaShards(new AreaDimensions((Integer) params.get("AREA_WIDTH"),
+                                                                (Integer) params.get("AREA_HEIGHT")),
+                                             (Integer) params.get("SHARD_ROWS"), (Integer) params.get("SHARD_COLS"));
+        }
+        
+        int numVehicles = (Integer) params.get("NUMBER_OF_VEHICLES");
+        if (numVehicles < 1) {
+            numVehicles = random.nextInt(4) + 1; // between 1 and 5
+        }
+        if ((Boolean) params.get("VEHICLE_FLEET")) {
+            // create fleet
+            fleet = new Fleet(position, numVehicles);
+            for (int i = 0; i < numVehicles; i++) {
+                fleetPositions.put(i, position);
             }
+            logger.info("created fleet of " + numVehicles + " vehicles");
+        } else {
+            createVehicleAgents(position, numVehicles);
         }
-        logger.info("created " + numVehicles + " vehicle agents");
         
         // create data store
         final String coordinatorAIDKey = "COORDINATOR_AID";
@@ -115,24 +164,141 @@ public abstract class StationaryAgent extends ExtendedAgent {
         // create behaviors
         final FindAgent findCoordinator = new FindAgent(this, coordinatorDfType, coordinatorAIDKey);
         findCoordinator.setDataStore(ds);
-        final ACLMessage coordSubsMsg = createMessage(ACLMessage.SUBSCRIBE, CoordinatorAgent.COORDINATION_PROTOCOL);
+        final ACLMessage coordSubsMsg = createMessage(ACLMessage.SUBSCRIBE, CoordinatorAgent.COORDINATION_PROTOCOL,
+                                                      (AID) null, new StationPositionInfo(position));
         final Subscriber coordSubscriber = new Subscriber(this, coordSubsMsg, ds, coordinatorAIDKey);
         final MessageTemplate cfpTpl = createMessageTemplate(null, CoordinatorAgent.COORDINATION_PROTOCOL,
                                                              ACLMessage.CFP);
         final ReceiveCFP receiveCFP = new ReceiveCFP(this, cfpTpl, position);
-        final MessageTemplate vehicleStatusTpl = createMessageTemplate(null, VehicleAgent.VEHICLE_STATUS_PROTOCOL,
-                                                                       ACLMessage.INFORM);
-        final ReceiveVehicleStatus receiveVehicleStatus = new ReceiveVehicleStatus(this, vehicleStatusTpl);
-        final MessageTemplate fireStatusTpl = createMessageTemplate(null, FireAgent.FIRE_STATUS_PROTOCOL,
-                                                                    ACLMessage.INFORM);
-        final ReceiveFireStatus receiveFireStatus = new ReceiveFireStatus(this, fireStatusTpl);
         
         // add behaviors
         sequentialBehaviours.add(findCoordinator);
-        parallelBehaviours.addAll(Arrays.asList(coordSubscriber, receiveCFP, receiveVehicleStatus, receiveFireStatus));
+        parallelBehaviours.addAll(Arrays.asList(coordSubscriber, receiveCFP));
+        addMessageHandler(FireAgent.FIRE_STATUS_PROTOCOL, ACLMessage.INFORM, new ReceiveFireStatus());
+        if (fleet == null) {
+            addMessageHandler(VehicleAgent.VEHICLE_STATUS_PROTOCOL, ACLMessage.INFORM, new ReceiveVehicleStatus());
+        } else {
+            parallelBehaviours.add(new MoveFleet(this, (Integer) params.get("VEHICLE_MOVE_IVAL")));
+            final List<Integer> replyPerformatives = Arrays.asList(ACLMessage.AGREE, ACLMessage.REFUSE,
+                                                                   ACLMessage.NOT_UNDERSTOOD, ACLMessage.INFORM,
+                                                                   ACLMessage.FAILURE);
+            final ReceiveFleetReply receiveFleetReply = new ReceiveFleetReply();
+            addMessageHandler(FireAgent.PUT_OUT_PROTOCOL, replyPerformatives, receiveFleetReply);
+            addMessageHandler(FireAgent.PICK_UP_CASUALTY_PROTOCOL, replyPerformatives, receiveFleetReply);
+        }
         addBehaviours();
     }
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        out.writeInt(getNumVehicles());
+        if (fleet == null) {
+            for (final Entry<AID, VehicleStatus> vehicle : vehicles.entrySet()) {
+                out.writeUTF(vehicle.getKey().getLocalName());
+                final VehicleStatus status = vehicle.getValue();
+                out.writeBoolean(status != null);
+                if (status != null) {
+                    Checkpoint.writeCoordinate(out, status.getPosition());
+                    out.writeInt(status.getState());
+                    Checkpoint.writeCoordinate(out, status.getFire());
+                }
+            }
+        } else {
+            fleet.write(out);
+        }
+        out.writeInt(fires.size());
+        for (final Entry<Coordinate, FireStatus> fire : fires.entrySet()) {
+            Checkpoint.writeCoordinate(out, fire.getKey());
+            final FireStatus status = fire.getValue();
+            out.writeBoolean(status != null);
+            if (status != null) {
+                out.writeInt(status.getIntensity());
+                out.writeInt(status.getCasualties());
+            }
+        }
+        out.writeInt(fireVehicles.size());
+        for (final Entry<Coordinate, Integer> fire : fireVehicles.entrySet()) {
+            Checkpoint.writeCoordinate(out, fire.getKey());
+            out.writeInt(fire.getValue());
+        }
+    }
+    
+    /**
+     * Restores the vehicles, the fires, and the fire vehicle distribution. The vehicle agents are matched by their
+     * local names, so the restored station must start the same vehicles.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        if (in.readInt() != getNumVehicles()) throw new IOException("number of vehicles differs");
+        if (fleet == null) {
+            final Map<String, AID> vehicleAIDs = new HashMap<String, AID>();
+            for (final AID aid : vehicles.keySet()) {
+                vehicleAIDs.put(aid.getLocalName(), aid);
+            }
+            vehiclePositions.clear();
+            for (int i = 0; i < vehicleAIDs.size(); i++) {
+                final AID aid = vehicleAIDs.get(in.readUTF());
+                if (aid == null) throw new IOException("unknown vehicle");
+                VehicleStatus status = null;
+                if (in.readBoolean()) {
+                    status = new VehicleStatus(Checkpoint.readCoordinate(in), in.readInt(),
+                                               Checkpoint.readCoordinate(in));
+                    vehiclePositions.put(aid, status.getPosition());
+                }
+                vehicles.put(aid, status);
+            }
+        } else {
+            fleet.read(in);
+            for (int v = 0; v < fleet.size(); v++) {
+                fleetPositions.put(v, fleet.getCoordinate(v));
+            }
+        }
+        fires.clear();
+        final int numFires = in.readInt();
+        for (int i = 0; i < numFires; i++) {
+            final Coordinate fireCoord = Checkpoint.readCoordinate(in);
+            fires.put(fireCoord, in.readBoolean() ? new FireStatus(fireCoord, in.readInt(), in.readInt()) : null);
+        }
+        fireVehicles.clear();
+        final int numFireVehicles = in.readInt();
+        for (int i = 0; i < numFireVehicles; i++) {
+            fireVehicles.put(Checkpoint.readCoordinate(in), in.readInt());
+        }
+    }
+    
+    /**
+     * Starts the vehicle agents.
+     * 
+     * @param position
+     * @param numVehicles
+     */
+    private void createVehicleAgents(final Coordinate position, final int numVehicles) {
+
+        final Object[] args = {
+            getName(), position.getRow(), position.getCol(), params.get("VEHICLE_MOVE_IVAL"), params.get("FIRE_TABLE"),
+            params.get("AREA_WIDTH"), params.get("AREA_HEIGHT"), params.get("SHARD_ROWS"), params.get("SHARD_COLS")};
+        for (int i = 0; i < numVehicles; i++) {
+            final String nickname = vehicleName + " " + params.get("ID") + "-" + i;
+            final AgentController ac = AgentUtil.startAgent(getContainerController(), nickname, vehicleAgentClass, args);
+            try {
+                vehicles.put(new AID(ac.getName(), true), null);
+//                logger.debug("created '" + nickname + "'");
+            } catch (final StaleProxyException e) {
+                logger.error("error getting vehicle agent name");
+            }
+        }
+        logger.info("created " + numVehicles + " vehicle agents");
+    }
+    
     /**
      * Receive calls for proposal from the coordinator agent. Sends out the a proposal.
      */
@@ -162,8 +328,8 @@ public abstract class StationaryAgent extends ExtendedAgent {
             logger.debug("received CFP for fire at (" + fireCoord + ")");
             
             // create proposal
-            final HandleFireProposal proposal = new HandleFireProposal(SimulationArea.getDistance(position, fireCoord),
-                                                                       vehicles.size() - fires.size()); // need at least one vehicle per fire
+            final HandleFireProposal proposal = Dispatch.createProposal(position, fireCoord, getNumVehicles(),
+                                                                        fires.size());
             
             return createReply(cfp, ACLMessage.PROPOSE, proposal);
         }
@@ -183,13 +349,7 @@ public abstract class StationaryAgent extends ExtendedAgent {
             // save fire
             fires.put(fireCoord, null);
             
-            // (re-)distribute vehicles
-            if (distributeVehicles == null) {
-                distributeVehicles = new DistributeVehicles(myAgent);
-            } else {
-                distributeVehicles.reset();
-            }
-            addParallelBehaviour(distributeVehicles);
+            redistributeVehicles();
             
             return null;
         }
@@ -222,7 +382,51 @@ public abstract class StationaryAgent extends ExtendedAgent {
     /**
      * Instance of {@link DistributeVehicles} that gets re-used.
      */
-    DistributeVehicles distributeVehicles = null;
+    private DistributeVehicles distributeVehicles = null;
+    
+    /**
+     * (Re-)distributes the vehicles along the {@link #fires}. The {@link #fleet} is assigned directly, the vehicle
+     * agents by {@link DistributeVehicles}. Package scoped for faster access by inner classes.
+     */
+    void redistributeVehicles() {
+
+        if (fleet != null) {
+            if (updateFireVehicles()) {
+                assignFleet();
+            }
+            return;
+        }
+        if (distributeVehicles == null) {
+            distributeVehicles = new DistributeVehicles(this);
+        } else {
+            stopParallelBehaviour(distributeVehicles);
+            distributeVehicles.reset(createMessage(ACLMessage.REQUEST, VehicleAgent.SET_TARGET_PROTOCOL));
+        }
+        addParallelBehaviour(distributeVehicles);
+    }
+    
+    /**
+     * Calculates the {@link #fireVehicles} distribution. Package scoped for faster access by inner classes.
+     * 
+     * @return <code>true</code> if the distribution changed, <code>false</code> if not
+     */
+    boolean updateFireVehicles() {
+
+        if (fires.isEmpty()) return false;
+        final Map<Coordinate, Integer> fireWeights = new HashMap<Coordinate, Integer>();
+        for (final Entry<Coordinate, FireStatus> fire : fires.entrySet()) {
+            fireWeights.put(fire.getKey(), (fire.getValue() == null) ? 1 : getFireWeight(fire.getKey()));
+        }
+        boolean fireVehiclesChanged = false;
+        for (final Entry<Coordinate, Integer> fv : Dispatch.distributeVehicles(fireWeights, getNumVehicles())
+                                                           .entrySet()) {
+            if (fv.getValue().equals(fireVehicles.put(fv.getKey(), fv.getValue()))) {
+                continue;
+            }
+            fireVehiclesChanged = true;
+        }
+        return fireVehiclesChanged;
+    }
     
     /**
      * Assigns the {@link #vehicles} to the {@link #fires}. For each fire one vehicle is assigned. Additional vehicles
@@ -245,75 +449,257 @@ public abstract class StationaryAgent extends ExtendedAgent {
         @Override
         protected Vector prepareRequests(final ACLMessage request) {
 
-            if (fires.isEmpty()) return null;
+            if (!updateFireVehicles()) return null;
             
-            // calculate vehicles distribution
-            final Map<Coordinate, Integer> fireWeights = new HashMap<Coordinate, Integer>();
-            int sumWeights = 0;
-            for (final Entry<Coordinate, FireStatus> fire : fires.entrySet()) {
-                if (!fireVehicles.containsKey(fire.getKey())) {
-                    fireVehicles.put(fire.getKey(), 1);
-                }
-                final int weight = (fire.getValue() == null) ? 1 : getFireWeight(fire.getKey());
-                fireWeights.put(fire.getKey(), weight);
-                sumWeights += weight;
-            }
-            // TODO check that exact number of vehicles assigned
-            final float addVehiclesPerWeight = (vehicles.size() - fires.size()) / sumWeights;
-            boolean fireVehiclesChanged = false;
-            for (final Entry<Coordinate, Integer> fireWeight : fireWeights.entrySet()) {
-                final int numVehicles = 1 + Math.round(fireWeight.getValue() * addVehiclesPerWeight);
-                if (fireVehicles.put(fireWeight.getKey(), numVehicles) == numVehicles) {
-                    continue;
-                }
-                fireVehiclesChanged = true;
+            // assign vehicles
+            final Vector<ACLMessage> requests = new Vector<ACLMessage>();
+            for (final Entry<AID, Coordinate> assignment : getAssignments().entrySet()) {
+                final ACLMessage thisRequest = copyMessage(request);
+                thisRequest.addReceiver(assignment.getKey());
+                fillMessage(thisRequest, new SetTargetRequest(assignment.getValue()));
+                requests.add(thisRequest);
             }
-            if (!fireVehiclesChanged) return null;
             
-            // check how many vehicles already correctly assigned
-            // TODO consider current vehicle state (at target -> leave assignment)
-            final Map<Coordinate, Integer> fireVehiclesToAssign = new HashMap<Coordinate, Integer>();
-            final Set<AID> okVehicles = new HashSet<AID>();
-            for (final Entry<Coordinate, Integer> fv : fireVehicles.entrySet()) {
-                fireVehiclesToAssign.put(fv.getKey(), fv.getValue());
-                for (final Entry<AID, VehicleStatus> vehicle : vehicles.entrySet()) {
-                    if (vehicle.getValue().getFire() == null || !vehicle.getValue().getFire().equals(fv.getKey())) {
-                        // vehicle not assigned to this fire
-                        continue;
-                    }
-                    okVehicles.add(vehicle.getKey());
-                    if (fireVehiclesToAssign.put(fv.getKey(), fv.getValue() - 1) == 1) {
-                        // all vehicles for this fire
-                        break;
+            return requests;
+        }
+        
+        /**
+         * The assignment depends on the vehicle statuses received so far, so it is recorded and replayed as a whole.
+         * 
+         * @return The new fire of each re-assigned vehicle.
+         */
+        private Map<AID, Coordinate> getAssignments() {
+
+            final Map<AID, Coordinate> assignments = new LinkedHashMap<AID, Coordinate>();
+            if (inputLog.isReplaying()) {
+                final Map<String, Coordinate> recorded = inputLog.readAssignments(InputLog.ASSIGNMENTS);
+                if (recorded != null) {
+                    for (final Entry<String, Coordinate> assignment : recorded.entrySet()) {
+                        assignments.put(new AID(assignment.getKey(), AID.ISLOCALNAME), assignment.getValue());
                     }
+                    return assignments;
                 }
             }
-            
-            final Vector<ACLMessage> requests = new Vector<ACLMessage>();
-            
-            // (re-)distribute other vehicles
-            // TODO consider current vehicle position (prefer already close)
-            for (final Entry<Coordinate, Integer> fv : fireVehiclesToAssign.entrySet()) {
-                if (fv.getValue() == 0) {
-                    // no more vehicles to assign
-                    continue;
+            final Map<AID, Coordinate> vehicleFires = new HashMap<AID, Coordinate>();
+            for (final Entry<AID, VehicleStatus> vehicle : vehicles.entrySet()) {
+                vehicleFires.put(vehicle.getKey(), (vehicle.getValue() == null) ? null : vehicle.getValue().getFire());
+            }
+            assignments.putAll(Dispatch.assignVehicles(fireVehicles, vehicleFires, vehiclePositions));
+            if (inputLog.isRecording()) {
+                final Map<String, Coordinate> recorded = new LinkedHashMap<String, Coordinate>();
+                for (final Entry<AID, Coordinate> assignment : assignments.entrySet()) {
+                    recorded.put(assignment.getKey().getLocalName(), assignment.getValue());
                 }
-                for (final AID vehicleAID : vehicles.keySet()) {
-                    if (okVehicles.contains(vehicleAID)) {
-                        continue;
-                    }
-                    final ACLMessage thisRequest = copyMessage(request);
-                    thisRequest.setSender(vehicleAID);
-                    fillMessage(thisRequest, new SetTargetRequest(fv.getKey()));
-                    requests.add(thisRequest);
-                    if (fv.setValue(fv.getValue() - 1) == 1) {
-                        // all vehicles for this fire
-                        break;
+                inputLog.writeAssignments(InputLog.ASSIGNMENTS, recorded);
+            }
+            return assignments;
+        }
+    }
+    
+    /**
+     * @return Number of vehicles.
+     */
+    private int getNumVehicles() {
+
+        return (fleet == null) ? vehicles.size() : fleet.size();
+    }
+    
+    /**
+     * Assigns the {@link #fleet} vehicles to the fires according to the {@link #fireVehicles} distribution. Unlike the
+     * vehicle agents the vehicles are sent to the fires directly. Which vehicles accept a target depends on the timing
+     * of the fire replies, so the assignment is recorded and replayed as a whole like the one of
+     * {@link DistributeVehicles}. Package scoped for faster access by inner classes.
+     */
+    void assignFleet() {
+
+        if (inputLog.isReplaying()) {
+            final Map<String, Coordinate> recorded = inputLog.readAssignments(InputLog.ASSIGNMENTS);
+            if (recorded != null) {
+                for (final Entry<String, Coordinate> assignment : recorded.entrySet()) {
+                    final int v = Integer.parseInt(assignment.getKey());
+                    fleet.setFire(v, assignment.getValue());
+                    setFleetTarget(v, assignment.getValue());
+                }
+                return;
+            }
+        }
+        final Map<Integer, Coordinate> vehicleFires = new HashMap<Integer, Coordinate>();
+        for (int v = 0; v < fleet.size(); v++) {
+            vehicleFires.put(v, fleet.getFire(v));
+        }
+        final Map<String, Coordinate> recorded = new LinkedHashMap<String, Coordinate>();
+        for (final Entry<Integer, Coordinate> assignment : Dispatch.assignVehicles(fireVehicles, vehicleFires,
+                                                                                  fleetPositions).entrySet()) {
+            final int v = assignment.getKey();
+            if (!fleet.isAcceptingTarget(v)) {
+                continue;
+            }
+            recorded.put(String.valueOf(v), assignment.getValue());
+            fleet.setFire(v, assignment.getValue());
+            setFleetTarget(v, assignment.getValue());
+        }
+        inputLog.writeAssignments(InputLog.ASSIGNMENTS, recorded);
+    }
+    
+    /**
+     * Sends a {@link #fleet} vehicle to a target, like {@link VehicleAgent#setTarget}. Package scoped for faster
+     * access by inner classes.
+     * 
+     * @param v Vehicle index.
+     * @param target
+     */
+    void setFleetTarget(final int v, final Coordinate target) {
+
+        if (fleet.setTarget(v, target)) {
+            fleetArrivedAtTarget(v);
+        }
+    }
+    
+    /**
+     * Sends a {@link #fleet} vehicle back home. Package scoped for faster access by inner classes.
+     * 
+     * @param v Vehicle index.
+     */
+    void returnFleetHome(final int v) {
+
+        fleet.setFire(v, null);
+        setFleetTarget(v, fleet.home);
+    }
+    
+    /**
+     * Sends a request on behalf of a {@link #fleet} vehicle to the fire it is assigned to. The conversation id is the
+     * vehicle index, so the reply can be matched to the vehicle. Package scoped for faster access by inner classes.
+     * 
+     * @param v Vehicle index.
+     * @param protocol
+     * @param content
+     */
+    void sendFleetRequest(final int v, final String protocol, final Predicate content) {
+
+        final ACLMessage request = createMessage(ACLMessage.REQUEST, protocol,
+                                                 VehicleAgent.getFireAID(fleet.getFire(v), fireTableShards), content);
+        request.setConversationId(String.valueOf(v));
+        send(request);
+    }
+    
+    /**
+     * Moves the {@link #fleet} vehicles towards their targets, like the move behavior of the vehicle agents but for
+     * all vehicles in one tick.
+     */
+    private class MoveFleet extends TickerBehaviour {
+        
+        /**
+         * @param a
+         * @param period
+         */
+        public MoveFleet(final Agent a, final long period) {
+
+            super(a, period);
+        }
+        
+        /**
+         * @see jade.core.behaviours.TickerBehaviour#onTick()
+         */
+        @Override
+        protected void onTick() {
+
+            for (int v = 0; v < fleet.size(); v++) {
+                if (fleet.getState(v) == Vehicle.STATE_TO_TARGET) {
+                    final boolean arrived = fleet.moveTowardsTarget(v);
+                    fleetPositions.put(v, fleet.getCoordinate(v));
+                    if (arrived) {
+                        fleetArrivedAtTarget(v);
                     }
+                } else {
+                    fleetDoMove(v);
                 }
             }
-            
-            return requests;
+        }
+    }
+    
+    /**
+     * Gets called when a {@link #fleet} vehicle arrived at its target. Package scoped for faster access by inner
+     * classes.
+     * 
+     * @param v Vehicle index.
+     */
+    void fleetArrivedAtTarget(final int v) {
+
+        fleet.setAtTarget(v);
+        if (fleet.isAtFire(v)) {
+            logger.debug("vehicle " + v + " arrived at fire");
+            IncidentMetrics.vehicleArrived(fleet.getCoordinate(v));
+            fleetArrivedAtFire(v);
+        } else {
+            logger.debug("vehicle " + v + " arrived at home");
+            fleetArrivedAtHome(v);
+        }
+    }
+    
+    /**
+     * Gets called when a {@link #fleet} vehicle arrived at home, like {@link VehicleAgent#arrivedAtHome()}. Package
+     * scoped for faster access by inner classes.
+     * 
+     * @param v Vehicle index.
+     */
+    abstract void fleetArrivedAtHome(final int v);
+    
+    /**
+     * Gets called when a {@link #fleet} vehicle arrived at its fire, like {@link VehicleAgent#arrivedAtFire()}.
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param v Vehicle index.
+     */
+    abstract void fleetArrivedAtFire(final int v);
+    
+    /**
+     * Gets called for every {@link #fleet} vehicle every move interval, like {@link VehicleAgent#doMove()}. Package
+     * scoped for faster access by inner classes.
+     * 
+     * @param v Vehicle index.
+     */
+    abstract void fleetDoMove(final int v);
+    
+    /**
+     * Gets called when a fire replied to a request of a {@link #fleet} vehicle. Package scoped for faster access by
+     * inner classes.
+     * 
+     * @param v Vehicle index.
+     * @param reply
+     */
+    abstract void fleetReceivedReply(final int v, final ACLMessage reply);
+    
+    /**
+     * Gets called when a fire status is received while the vehicles are hosted as a {@link #fleet}, like
+     * {@link VehicleAgent#receivedFireStatus(FireStatus)}. Package scoped for faster access by inner classes.
+     * 
+     * @param status
+     */
+    abstract void fleetReceivedFireStatus(final FireStatus status);
+    
+    /**
+     * Receives the replies of the fires to the requests of the {@link #fleet} vehicles.
+     */
+    private class ReceiveFleetReply extends MessageHandler {
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
+         */
+        @Override
+        public void handleMessage(final ACLMessage reply) {
+
+            final int v;
+            try {
+                v = Integer.parseInt(reply.getConversationId());
+            } catch (final NumberFormatException e) {
+                logger.error("received reply with unknown conversation id");
+                return;
+            }
+            if (v < 0 || v >= fleet.size()) {
+                logger.error("received reply for unknown vehicle " + v);
+                return;
+            }
+            fleetReceivedReply(v, reply);
         }
     }
     
@@ -328,64 +714,45 @@ public abstract class StationaryAgent extends ExtendedAgent {
     /**
      * Receives the status messages from the vehicle agents of this stationary agent.
      */
-    private class ReceiveVehicleStatus extends CyclicBehaviour {
-        
-        final MessageTemplate mt;
-        
-        public ReceiveVehicleStatus(final Agent a, final MessageTemplate mt) {
-
-            super(a);
-            this.mt = mt;
-        }
+    private class ReceiveVehicleStatus extends MessageHandler {
         
         /**
-         * @see jade.core.behaviours.Behaviour#action()
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
          */
         @Override
-        public void action() {
+        public void handleMessage(final ACLMessage statusMsg) {
 
-            final ACLMessage statusMsg = blockingReceive(mt);
-            if (statusMsg == null) return;
-            
             if (!vehicles.containsKey(statusMsg.getSender())) {
                 logger.error("received vehicle status from unknown vehicle");
                 return;
             }
             
+            final VehicleStatus status;
             try {
-                vehicles.put(statusMsg.getSender(),
-                             extractMessageContent(VehicleStatusInfo.class, statusMsg, false).getVehicleStatus());
+                status = extractMessageContent(VehicleStatusInfo.class, statusMsg, false).getVehicleStatus();
             } catch (final Exception e) {
                 return;
             }
+            vehicles.put(statusMsg.getSender(), status);
+            vehiclePositions.put(statusMsg.getSender(), status.getPosition());
             
 //            logger.debug("received status from vehicle " + statusMsg.getSender());
         }
     }
     
     /**
-     * Receives the fire status messages propagated by the vehicle agents.
+     * Receives the fire status messages propagated by the vehicle agents, or sent by the fires to the {@link #fleet}.
      */
-    private class ReceiveFireStatus extends CyclicBehaviour {
-        
-        final MessageTemplate mt;
-        
-        public ReceiveFireStatus(final Agent a, final MessageTemplate mt) {
-
-            super(a);
-            this.mt = mt;
-        }
+    private class ReceiveFireStatus extends MessageHandler {
         
         /**
-         * @see jade.core.behaviours.Behaviour#action()
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
          */
         @Override
-        public void action() {
+        public void handleMessage(final ACLMessage statusMsg) {
 
-            final ACLMessage statusMsg = blockingReceive(mt);
-            if (statusMsg == null) return;
-            
-            if (!vehicles.containsKey(statusMsg.getSender())) {
+            // with the fleet the status comes directly from the fire
+            if (fleet == null && !vehicles.containsKey(statusMsg.getSender())) {
                 logger.error("received fire status from unknown vehicle");
                 return;
             }
@@ -399,14 +766,11 @@ public abstract class StationaryAgent extends ExtendedAgent {
             fires.put(status.getCoordinate(), status);
             
             logger.debug("received status for fire at (" + status.getCoordinate() + ")");
-            
-            // (re-)distribute vehicles
-            if (distributeVehicles == null) {
-                distributeVehicles = new DistributeVehicles(myAgent);
-            } else {
-                distributeVehicles.reset();
+            if (fleet != null) {
+                fleetReceivedFireStatus(status);
             }
-            addParallelBehaviour(distributeVehicles);
+            
+            redistributeVehicles();
         }
     }
 }
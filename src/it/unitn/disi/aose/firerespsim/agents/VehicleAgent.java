@@ -1,14 +1,19 @@
 package it.unitn.disi.aose.firerespsim.agents;
 
+import it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler;
+import it.unitn.disi.aose.firerespsim.model.AreaShards;
 import it.unitn.disi.aose.firerespsim.model.Position;
 import it.unitn.disi.aose.firerespsim.model.Vehicle;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
 import it.unitn.disi.aose.firerespsim.ontology.FireStatus;
+import it.unitn.disi.aose.firerespsim.ontology.FireStatusInfo;
 import it.unitn.disi.aose.firerespsim.ontology.SetTargetRequest;
 import it.unitn.disi.aose.firerespsim.ontology.VehicleStatusInfo;
+import it.unitn.disi.aose.firerespsim.util.Checkpoint;
+import it.unitn.disi.aose.firerespsim.util.IncidentMetrics;
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.domain.FIPAAgentManagement.FailureException;
 import jade.domain.FIPAAgentManagement.NotUnderstoodException;
@@ -16,12 +21,17 @@ import jade.domain.FIPAAgentManagement.RefuseException;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.AchieveREResponder;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 
 /**
  * This is the super class for the fire engine and ambulance agents. Start-up parameters are id, owner (GUID name of the
- * owning stationary agent), row, column, and the movement interval.
+ * owning stationary agent), row, column, the movement interval, and the fire hosting: if the fires are reached through
+ * the environment agents (fire tables or pooled fire agents), and the area width, height, and shard rows and columns
+ * to find the environment agent of a fire.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
@@ -45,6 +55,11 @@ public abstract class VehicleAgent extends ExtendedAgent {
      * Model of the vehicle. Package scoped for faster access by inner classes.
      */
     Vehicle vehicle;
+    /**
+     * Partitioning of the area into the environment agents hosting the fires, <code>null</code> if every fire is a
+     * {@link FireAgent}.
+     */
+    private AreaShards fireTableShards = null;
     
     /**
      * @see jade.core.Agent#setup()
@@ -59,6 +74,11 @@ public abstract class VehicleAgent extends ExtendedAgent {
                 put("ROW", null);
                 put("COLUMN", null);
                 put("MOVE_IVAL", 10000);
+                put("FIRE_TABLE", false);
+                put("AREA_WIDTH", 0);
+                put("AREA_HEIGHT", 0);
+                put("SHARD_ROWS", 1);
+                put("SHARD_COLS", 1);
             }
         };
         
@@ -67,6 +87,11 @@ public abstract class VehicleAgent extends ExtendedAgent {
         final Position vehiclePosition = new Position((Integer) params.get("ROW"), (Integer) params.get("COLUMN"));
         vehicle = new Vehicle(vehiclePosition, Vehicle.STATE_IDLE);
         owner = new AID((String) params.get("OWNER"), true);
+        if ((Boolean) params.get("FIRE_TABLE")) {
+            fireTableShards = new AreaShards(new AreaDimensions((Integer) params.get("AREA_WIDTH"),
+                                                                (Integer) params.get("AREA_HEIGHT")),
+                                             (Integer) params.get("SHARD_ROWS"), (Integer) params.get("SHARD_COLS"));
+        }
         
         // send status to owner
         sendStatus();
@@ -75,15 +100,51 @@ public abstract class VehicleAgent extends ExtendedAgent {
         final MessageTemplate setTargetReqTpl = createMessageTemplate(owner, SET_TARGET_PROTOCOL, ACLMessage.REQUEST);
         final SetTargetService setTargetService = new SetTargetService(this, setTargetReqTpl);
         final Move move = new Move(this, (Integer) params.get("MOVE_IVAL"));
-        final MessageTemplate fireStatusTpl = createMessageTemplate(null, FireAgent.FIRE_STATUS_PROTOCOL,
-                                                                    ACLMessage.INFORM);
-        final ReceiveFireStatus receiveFireStatus = new ReceiveFireStatus(this, fireStatusTpl);
         
         // add behaviors
-        parallelBehaviours.addAll(Arrays.asList(setTargetService, move, receiveFireStatus));
+        parallelBehaviours.addAll(Arrays.asList(setTargetService, move));
+        addMessageHandler(FireAgent.FIRE_STATUS_PROTOCOL, ACLMessage.INFORM, new ReceiveFireStatus());
         addBehaviours();
     }
     
+    /**
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#writeCheckpoint(java.io.DataOutput)
+     */
+    @Override
+    protected void writeCheckpoint(final DataOutput out) throws IOException {
+
+        super.writeCheckpoint(out);
+        Checkpoint.writeCoordinate(out, vehicle.position.getCoordinate());
+        Checkpoint.writeCoordinate(out, vehicle.home.getCoordinate());
+        Checkpoint.writeCoordinate(out, (vehicle.fire == null) ? null : vehicle.fire.getCoordinate());
+        Checkpoint.writeCoordinate(out, (vehicle.target == null) ? null : vehicle.target.getCoordinate());
+        out.writeInt(vehicle.getState());
+        out.writeBoolean(vehicle.isAcceptingTarget());
+    }
+    
+    /**
+     * Restores the vehicle and sends its status to the owner. A vehicle at its target is restored on the way to it,
+     * so the next move arrives at the target again and resumes the work there.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.agents.ExtendedAgent#readCheckpoint(java.io.DataInput)
+     */
+    @Override
+    protected void readCheckpoint(final DataInput in) throws IOException {
+
+        super.readCheckpoint(in);
+        vehicle.position.set(new Position(Checkpoint.readCoordinate(in)));
+        vehicle.home = new Position(Checkpoint.readCoordinate(in));
+        final Coordinate fire = Checkpoint.readCoordinate(in);
+        vehicle.fire = (fire == null) ? null : new Position(fire);
+        final Coordinate target = Checkpoint.readCoordinate(in);
+        vehicle.target = (target == null) ? null : new Position(target);
+        final int state = in.readInt();
+        vehicle.setState((state == Vehicle.STATE_AT_TARGET && vehicle.target != null) ? Vehicle.STATE_TO_TARGET
+                                                                                       : state);
+        vehicle.setAcceptingTarget(in.readBoolean());
+        sendStatus();
+    }
+    
     /**
      * Service to send the vehicle to a target.
      */
@@ -203,16 +264,7 @@ public abstract class VehicleAgent extends ExtendedAgent {
             } else if (vehicle.fire != null && oldPosition.equals(vehicle.fire)) {
                 oldPositionStr = "fire";
             }
-            if (vehicle.position.getRow() > vehicle.target.getRow()) {
-                vehicle.position.decreaseRow(1);
-            } else if (vehicle.position.getRow() < vehicle.target.getRow()) {
-                vehicle.position.increaseRow(1);
-            }
-            if (vehicle.position.getCol() > vehicle.target.getCol()) {
-                vehicle.position.decreaseCol(1);
-            } else if (vehicle.position.getCol() < vehicle.target.getCol()) {
-                vehicle.position.increaseCol(1);
-            }
+            final boolean arrived = vehicle.moveTowardsTarget();
             final Position newPosition = vehicle.position.clone();
             String newPositionStr = "(" + newPosition.toString() + ")";
             if (newPosition.equals(vehicle.home)) {
@@ -221,7 +273,7 @@ public abstract class VehicleAgent extends ExtendedAgent {
                 newPositionStr = "fire";
             }
             logger.debug("moved from " + oldPositionStr + " to (" + newPositionStr + ")");
-            if (vehicle.position.equals(vehicle.target)) {
+            if (arrived) {
                 arrivedAtTarget();
             }
             sendStatus();
@@ -237,6 +289,7 @@ public abstract class VehicleAgent extends ExtendedAgent {
         vehicle.setState(Vehicle.STATE_AT_TARGET);
         if (vehicle.fire != null && vehicle.position.equals(vehicle.fire)) {
             logger.info("arrived at fire");
+            IncidentMetrics.vehicleArrived(vehicle.fire.getCoordinate());
             arrivedAtFire();
         } else {
             logger.info("arrived at home");
@@ -262,41 +315,26 @@ public abstract class VehicleAgent extends ExtendedAgent {
     /**
      * Receives the status messages from fire agents.
      */
-    private class ReceiveFireStatus extends CyclicBehaviour {
-        
-        private final MessageTemplate mt;
-        
-        /**
-         * @param a
-         * @param mt
-         */
-        public ReceiveFireStatus(final Agent a, final MessageTemplate mt) {
-
-            super(a);
-            this.mt = mt;
-        }
+    private class ReceiveFireStatus extends MessageHandler {
         
         /**
-         * @see jade.core.behaviours.Behaviour#action()
+         * @see it.unitn.disi.aose.firerespsim.behaviours.MessageDispatcher.MessageHandler#handleMessage(jade.lang.acl.ACLMessage)
          */
         @Override
-        public void action() {
+        public void handleMessage(final ACLMessage statusMsg) {
 
-            final ACLMessage statusMsg = blockingReceive(mt);
-            if (statusMsg == null) return;
-            
             FireStatus status;
             try {
-                status = extractMessageContent(FireStatus.class, statusMsg, false);
+                status = extractMessageContent(FireStatusInfo.class, statusMsg, false).getFireStatus();
             } catch (final Exception e) {
                 return;
             }
             logger.info("received status from fire at (" + status.getCoordinate() + ")");
             
             // propagate to stationary agent
-            statusMsg.removeReceiver(myAgent.getAID());
+            statusMsg.removeReceiver(getAID());
             statusMsg.addReceiver(owner);
-            send(statusMsg);
+            forwardMessage(statusMsg);
             logger.debug("propagated fire status to owner");
             
             receivedFireStatus(status);
@@ -311,10 +349,25 @@ public abstract class VehicleAgent extends ExtendedAgent {
     abstract void receivedFireStatus(final FireStatus fire);
     
     /**
-     * @return AID of the fire currently assigned to.
+     * @return AID of the fire currently assigned to, the AID of the environment agent of it if the fires are reached
+     *         through the environment agents.
      */
     protected AID getFireAID() {
 
-        return (vehicle.fire == null) ? null : new AID(FireAgent.FIRE_AGENT_NAME_PREFIX + vehicle.fire, false);
+        return (vehicle.fire == null) ? null : getFireAID(vehicle.fire.getCoordinate(), fireTableShards);
+    }
+    
+    /**
+     * @param fireCoord
+     * @param fireTableShards Partitioning of the area into the environment agents of the fires, <code>null</code> if
+     *            every fire is a {@link FireAgent} named after its position.
+     * @return AID of the fire agent, the AID of the environment agent of the fire if the fires are reached through the
+     *         environment agents.
+     */
+    static AID getFireAID(final Coordinate fireCoord, final AreaShards fireTableShards) {
+
+        if (fireTableShards == null) return new AID(FireAgent.FIRE_AGENT_NAME_PREFIX + fireCoord, false);
+        final int shard = fireTableShards.getShard(fireCoord);
+        return new AID(fireTableShards.getShardName(EnvironmentAgent.ENVIRONMENT_AGENT_NAME, shard), false);
     }
 }
@@ -0,0 +1,140 @@
+package it.unitn.disi.aose.firerespsim.behaviours;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.lang.acl.MessageTemplate.MatchExpression;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Receives the messages of the registered protocols and performatives and passes each to its {@link MessageHandler}.
+ * The handler of a message is looked up by its protocol in a hash map and by its performative in an array, instead of
+ * matching the message against a template per handler. Messages without a handler stay in the queue for the other
+ * behaviours of the agent, e.g. the JADE protocol behaviours. Never blocks the agent: it handles at most
+ * {@link #MAX_MESSAGES_PER_ACTION} messages per action and blocks only the behaviour when there are no more, so the
+ * other behaviours of the agent are never starved. Other threads can have tasks run in the thread of the agent by the
+ * dispatcher, e.g. changes of the scheduled behaviours (see {@link #invokeLater(Runnable)}).
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class MessageDispatcher extends CyclicBehaviour {
+    
+    private static final int MAX_MESSAGES_PER_ACTION = 16;
+    private static final int PERFORMATIVES = ACLMessage.getAllPerformativeNames().length;
+    
+    /**
+     * Handlers by protocol, indexed by performative.
+     */
+    private final Map<String, MessageHandler[]> handlers = new HashMap<String, MessageHandler[]>();
+    /**
+     * Tasks to run in the thread of the agent, added by other threads.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final MessageTemplate mt = new MessageTemplate(new MatchExpression() {
+        
+        @Override
+        public boolean match(final ACLMessage msg) {
+
+            return getHandler(msg) != null;
+        }
+    });
+    
+    /**
+     * @param a
+     */
+    public MessageDispatcher(final Agent a) {
+
+        super(a);
+    }
+    
+    /**
+     * Registers the handler of the messages of a protocol and performative, replacing the previous one.
+     * 
+     * @param protocol
+     * @param performative
+     * @param handler
+     */
+    public void register(final String protocol, final int performative, final MessageHandler handler) {
+
+        MessageHandler[] protocolHandlers = handlers.get(protocol);
+        if (protocolHandlers == null) {
+            protocolHandlers = new MessageHandler[PERFORMATIVES];
+            handlers.put(protocol, protocolHandlers);
+        }
+        protocolHandlers[performative] = handler;
+    }
+    
+    /**
+     * Runs a task in the thread of the agent at the next action of the dispatcher. Thread-safe.
+     * 
+     * @param task
+     */
+    public void invokeLater(final Runnable task) {
+
+        tasks.add(task);
+        restart();
+    }
+    
+    /**
+     * Runs the tasks added by {@link #invokeLater(Runnable)} so far, in the order they were added. Call only in the
+     * thread of the agent.
+     */
+    public void runTasks() {
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    /**
+     * @see jade.core.behaviours.Behaviour#action()
+     */
+    @Override
+    public void action() {
+
+        runTasks();
+        for (int i = 0; i < MAX_MESSAGES_PER_ACTION; i++) {
+            final ACLMessage msg = myAgent.receive(mt);
+            if (msg == null) {
+                block();
+                return;
+            }
+            getHandler(msg).handleMessage(msg);
+        }
+    }
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param msg
+     * @return Handler of the message, <code>null</code> if none.
+     */
+    MessageHandler getHandler(final ACLMessage msg) {
+
+        if (msg.getProtocol() == null) return null;
+        final MessageHandler[] protocolHandlers = handlers.get(msg.getProtocol());
+        if (protocolHandlers == null) return null;
+        final int performative = msg.getPerformative();
+        return (performative < 0 || performative >= PERFORMATIVES) ? null : protocolHandlers[performative];
+    }
+    
+    /**
+     * Handler of the messages of a protocol and performative, called by the {@link MessageDispatcher} in the thread of
+     * the agent.
+     */
+    public abstract static class MessageHandler {
+        
+        /**
+         * Handles a received message. Must not block.
+         * 
+         * @param msg
+         */
+        public abstract void handleMessage(final ACLMessage msg);
+    }
+}
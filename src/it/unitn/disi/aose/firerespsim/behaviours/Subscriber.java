@@ -5,6 +5,7 @@ import jade.core.Agent;
 import jade.core.behaviours.DataStore;
 import jade.lang.acl.ACLMessage;
 import jade.proto.SubscriptionInitiator;
+import java.util.Collection;
 import java.util.Vector;
 import org.apache.log4j.Logger;
 
@@ -21,7 +22,8 @@ public final class Subscriber extends SubscriptionInitiator {
      * @param a
      * @param msg
      * @param store
-     * @param dsKey Data store key of the subscription service AID.
+     * @param dsKey Data store key of the subscription service AID, or of a collection of AIDs to subscribe at all of
+     *            them.
      */
     public Subscriber(final Agent a, final ACLMessage msg, final DataStore store, final String dsKey) {
 
@@ -39,7 +41,14 @@ public final class Subscriber extends SubscriptionInitiator {
 
         logger.debug("sending subscription request");
         
-        subscription.addReceiver((AID) getDataStore().get(dsKey));
+        final Object receivers = getDataStore().get(dsKey);
+        if (receivers instanceof Collection) {
+            for (final AID receiver : (Collection<AID>) receivers) {
+                subscription.addReceiver(receiver);
+            }
+        } else {
+            subscription.addReceiver((AID) receivers);
+        }
         return super.prepareSubscriptions(subscription);
     }
     
@@ -0,0 +1,277 @@
+package it.unitn.disi.aose.firerespsim.behaviours;
+
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.ParallelBehaviour;
+import java.util.concurrent.ThreadFactory;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a behaviour in a thread of its own instead of the agent thread, like the wrappers of the JADE
+ * <code>ThreadedBehaviourFactory</code>, but in a thread of the given factory, e.g. a virtual thread. The thread waits
+ * while the wrapped behaviour is blocked and continues when it is restarted or a message arrives. The wrapper stays in
+ * the scheduler of the agent until the wrapped behaviour is done or the wrapper is interrupted. An interrupt stops the
+ * thread after the current action, or at once if it waits for a restart. It does not reliably end a blocking call of
+ * the wrapped behaviour: JADE swallows the interrupt of a <code>blockingReceive</code> in the agent thread while the
+ * agent is active (<code>Agent.doWait</code>), so wrapped behaviours should only block with a timeout. Changes of the
+ * scheduler must be made in the agent thread, the wrapped behaviour must not add or remove behaviours directly. The
+ * thread can be paused between two actions, e.g. for a checkpoint.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class ThreadedBehaviour extends Behaviour implements Runnable {
+    
+    private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
+    
+    private final Behaviour behaviour;
+    private final ThreadFactory threadFactory;
+    private transient Thread thread = null;
+    /**
+     * If the wrapped behaviour was restarted since its last action.
+     */
+    private boolean restarted = false;
+    /**
+     * If the thread must not start another action.
+     */
+    private boolean paused = false;
+    /**
+     * If the thread is in an action of the wrapped behaviour.
+     */
+    private boolean acting = false;
+    private volatile boolean interrupted = false;
+    private volatile boolean finished = false;
+    
+    /**
+     * @param a
+     * @param b Behaviour to run in a thread.
+     * @param threadFactory
+     */
+    public ThreadedBehaviour(final Agent a, final Behaviour b, final ThreadFactory threadFactory) {
+
+        super(a);
+        behaviour = b;
+        this.threadFactory = threadFactory;
+        new RestartListener(a).addSubBehaviour(b);
+    }
+    
+    /**
+     * @return Factory of virtual threads, <code>null</code> if the JVM has none (before Java 21).
+     */
+    public static ThreadFactory getVirtualThreadFactory() {
+
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Starts the thread.
+     * 
+     * @see jade.core.behaviours.Behaviour#onStart()
+     */
+    @Override
+    public void onStart() {
+
+        synchronized (this) {
+            if (interrupted) {
+                finished = true;
+                return;
+            }
+            thread = threadFactory.newThread(this);
+        }
+        thread.setName(myAgent.getLocalName() + "#" + behaviour.getBehaviourName());
+        thread.start();
+    }
+    
+    /**
+     * @see jade.core.behaviours.Behaviour#action()
+     */
+    @Override
+    public void action() {
+
+        if (!finished) {
+            block();
+        }
+    }
+    
+    /**
+     * @see jade.core.behaviours.Behaviour#done()
+     */
+    @Override
+    public boolean done() {
+
+        return finished;
+    }
+    
+    /**
+     * Passes a restart of the parent, e.g. because a message arrived, on to the thread.
+     * 
+     * @see jade.core.behaviours.Behaviour#handle(jade.core.behaviours.Behaviour.RunnableChangedEvent)
+     */
+    @Override
+    protected void handle(final RunnableChangedEvent rce) {
+
+        super.handle(rce);
+        if (!rce.isUpwards() && rce.isRunnable()) {
+            wakeUp();
+        }
+    }
+    
+    /**
+     * Stops the wrapped behaviour: the thread stops after the current action, or at once if it waits for a restart.
+     * Thread-safe.
+     */
+    public synchronized void interrupt() {
+
+        interrupted = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        notifyAll();
+    }
+    
+    /**
+     * Pauses the thread before its next action and waits until the current action is finished. Thread-safe.
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void pause() throws InterruptedException {
+
+        paused = true;
+        while (acting) {
+            wait();
+        }
+    }
+    
+    /**
+     * Lets the thread continue after {@link #pause()}. Thread-safe.
+     */
+    public synchronized void resume() {
+
+        paused = false;
+        notifyAll();
+    }
+    
+    /**
+     * Waits until the thread has ended, after {@link #interrupt()}. Returns at once if the thread was not started or
+     * this is called in the thread itself.
+     * 
+     * @throws InterruptedException
+     */
+    public void join() throws InterruptedException {
+
+        final Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            t.join();
+        }
+    }
+    
+    /**
+     * Runs the wrapped behaviour in the thread.
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+
+        try {
+            while (!interrupted) {
+                synchronized (this) {
+                    while (paused && !interrupted) {
+                        wait();
+                    }
+                    if (interrupted) {
+                        break;
+                    }
+                    restarted = false;
+                    acting = true;
+                }
+                behaviour.actionWrapper();
+                final boolean done = behaviour.done();
+                if (done) {
+                    behaviour.onEnd();
+                }
+                synchronized (this) {
+                    acting = false;
+                    notifyAll();
+                }
+                if (done) {
+                    break;
+                }
+                if (waitForRestart()) {
+                    behaviour.restart();
+                }
+            }
+        } catch (final InterruptedException e) {
+            // interrupted while waiting
+        } catch (final Agent.Interrupted e) {
+            // interrupted while blocking in the agent
+        } catch (final RuntimeException e) {
+            logger.error("error in threaded behaviour " + behaviour.getBehaviourName(), e);
+        } finally {
+            synchronized (this) {
+                acting = false;
+                notifyAll();
+            }
+            finished = true;
+            // let the scheduler of the agent remove this wrapper
+            restart();
+        }
+    }
+    
+    /**
+     * Waits until the wrapped behaviour is runnable, restarted, or interrupted.
+     * 
+     * @return <code>true</code> if the wrapped behaviour must be restarted, because a message arrived while it was
+     *         blocked.
+     * @throws InterruptedException
+     */
+    private synchronized boolean waitForRestart() throws InterruptedException {
+
+        while (!restarted && !behaviour.isRunnable() && !interrupted) {
+            wait();
+        }
+        return !behaviour.isRunnable() && !interrupted;
+    }
+    
+    /**
+     * Wakes up the thread if it waits. Package scoped for faster access by inner classes.
+     */
+    synchronized void wakeUp() {
+
+        restarted = true;
+        notifyAll();
+    }
+    
+    /**
+     * Parent of the wrapped behaviour that passes its restarts, e.g. by its timer, on to the thread. Never scheduled.
+     */
+    private class RestartListener extends ParallelBehaviour {
+        
+        /**
+         * @param a
+         */
+        RestartListener(final Agent a) {
+
+            super(a, WHEN_ALL);
+        }
+        
+        /**
+         * @see jade.core.behaviours.ParallelBehaviour#handle(jade.core.behaviours.Behaviour.RunnableChangedEvent)
+         */
+        @Override
+        protected void handle(final RunnableChangedEvent rce) {
+
+            if (rce.isRunnable()) {
+                wakeUp();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package it.unitn.disi.aose.firerespsim.headless;
+
+/**
+ * Event of the {@link EventQueue}. Events with a period are rescheduled after they ran until they get cancelled.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public abstract class Event implements Comparable<Event> {
+    
+    /**
+     * Simulation time (milliseconds) the event is scheduled for. Set by the {@link EventQueue}.
+     */
+    long time = 0;
+    /**
+     * Scheduling sequence number, orders events scheduled for the same time. Set by the {@link EventQueue}.
+     */
+    long seq = 0;
+    /**
+     * Period (milliseconds) for repeating events, 0 for one-shot events.
+     */
+    final long period;
+    private boolean cancelled = false;
+    
+    /**
+     * Creates a one-shot event.
+     */
+    public Event() {
+
+        this(0);
+    }
+    
+    /**
+     * @param period Period (milliseconds) of a repeating event, 0 for a one-shot event.
+     */
+    public Event(final long period) {
+
+        this.period = period;
+    }
+    
+    /**
+     * Executes the event.
+     */
+    public abstract void run();
+    
+    /**
+     * Removes the event from the queue (lazily, it is dropped when it becomes due).
+     */
+    public final void cancel() {
+
+        cancelled = true;
+    }
+    
+    /**
+     * @return <code>true</code> if cancelled, <code>false</code> if not
+     */
+    public final boolean isCancelled() {
+
+        return cancelled;
+    }
+    
+    /**
+     * @return Simulation time (milliseconds) the event is scheduled for.
+     */
+    public final long getTime() {
+
+        return time;
+    }
+    
+    /**
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    @Override
+    public final int compareTo(final Event event) {
+
+        if (time != event.time) return (time < event.time) ? -1 : 1;
+        if (seq != event.seq) return (seq < event.seq) ? -1 : 1;
+        return 0;
+    }
+}
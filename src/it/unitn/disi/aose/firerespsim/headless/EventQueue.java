@@ -0,0 +1,78 @@
+package it.unitn.disi.aose.firerespsim.headless;
+
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event simulation kernel. Runs the scheduled {@link Event}s in order of their time, events scheduled for the
+ * same time in the order they were scheduled. The simulation time jumps from event to event, so a simulation runs as
+ * fast as the events can be processed. Not thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class EventQueue {
+    
+    private final PriorityQueue<Event> queue = new PriorityQueue<Event>();
+    /**
+     * Current simulation time (milliseconds).
+     */
+    private long time = 0;
+    private long nextSeq = 0;
+    private long numProcessed = 0;
+    
+    /**
+     * @return Current simulation time (milliseconds).
+     */
+    public long getTime() {
+
+        return time;
+    }
+    
+    /**
+     * @return Number of events run so far.
+     */
+    public long getNumProcessed() {
+
+        return numProcessed;
+    }
+    
+    /**
+     * @return Number of pending events (including cancelled ones not yet dropped).
+     */
+    public int size() {
+
+        return queue.size();
+    }
+    
+    /**
+     * @param event
+     * @param delay Delay (milliseconds) from the current simulation time.
+     */
+    public void schedule(final Event event, final long delay) {
+
+        event.time = time + Math.max(0, delay);
+        event.seq = nextSeq++;
+        queue.add(event);
+    }
+    
+    /**
+     * Runs all events up to the end time. Afterwards the simulation time is the end time.
+     * 
+     * @param endTime Simulation time (milliseconds).
+     */
+    public void runUntil(final long endTime) {
+
+        while (!queue.isEmpty() && queue.peek().time <= endTime) {
+            final Event event = queue.poll();
+            if (event.isCancelled()) {
+                continue;
+            }
+            time = event.time;
+            event.run();
+            numProcessed++;
+            if (event.period > 0 && !event.isCancelled()) {
+                schedule(event, event.period);
+            }
+        }
+        time = Math.max(time, endTime);
+    }
+}
@@ -0,0 +1,579 @@
+package it.unitn.disi.aose.firerespsim.headless;
+
+import it.unitn.disi.aose.firerespsim.model.Dispatch;
+import it.unitn.disi.aose.firerespsim.model.Fire;
+import it.unitn.disi.aose.firerespsim.model.Position;
+import it.unitn.disi.aose.firerespsim.model.SimulationArea;
+import it.unitn.disi.aose.firerespsim.model.SpatialIndex;
+import it.unitn.disi.aose.firerespsim.model.Vehicle;
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.HandleFireProposal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Map.Entry;
+
+/**
+ * Emergency response simulation without JADE agents, driven by an {@link EventQueue}. Uses the same models (
+ * {@link SimulationArea}, {@link Fire}, {@link Vehicle}) and dispatch rules ({@link Dispatch}) as the agents, but
+ * replaces the messages between them with direct method calls. Fires are assigned to the stations as soon as they
+ * start (there is no monitor scanning the area).
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class HeadlessSimulation {
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final EventQueue queue = new EventQueue();
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final SimulationArea area;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final Random random;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final long fireIncreaseIval;
+    /**
+     * Burning fires. Package scoped for faster access by inner classes.
+     */
+    final Map<Coordinate, SimFire> fires = new LinkedHashMap<Coordinate, SimFire>();
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final List<Station> fireBrigades = new ArrayList<Station>();
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final List<Station> hospitals = new ArrayList<Station>();
+    
+    // statistics
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    int firesStarted = 0;
+    private int firesEnded = 0;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    int firesReached = 0;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    long sumResponseTime = 0;
+    private long sumFireDuration = 0;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    int casualtiesDelivered = 0;
+    
+    /**
+     * @param dimensions
+     * @param storage {@link SimulationArea#STORAGE_DENSE} or {@link SimulationArea#STORAGE_TILED}
+     * @param spawnFireIval Interval (milliseconds) to start a new fire.
+     * @param fireIncreaseIval Interval (milliseconds) to increase the fires.
+     * @param vehicleMoveIval Interval (milliseconds) to move the vehicles.
+     * @param numFireBrigades
+     * @param numHospitals
+     * @param seed Seed for the random decisions.
+     */
+    public HeadlessSimulation(final AreaDimensions dimensions, final String storage, final long spawnFireIval,
+                              final long fireIncreaseIval, final long vehicleMoveIval, final int numFireBrigades,
+                              final int numHospitals, final long seed) {
+
+        area = SimulationArea.create(dimensions, storage);
+        if (area == null) throw new IllegalArgumentException("unknown area storage: " + storage);
+        random = new Random(seed);
+        this.fireIncreaseIval = fireIncreaseIval;
+        
+        for (int i = 0; i < numFireBrigades; i++) {
+            fireBrigades.add(new Station(getRandomStationCoordinate(), false, vehicleMoveIval));
+        }
+        for (int i = 0; i < numHospitals; i++) {
+            hospitals.add(new Station(getRandomStationCoordinate(), true, vehicleMoveIval));
+        }
+        queue.schedule(new SpawnFire(spawnFireIval), spawnFireIval);
+    }
+    
+    /**
+     * @return Random position for a station (like the simulation launcher does it).
+     */
+    private Coordinate getRandomStationCoordinate() {
+
+        return new Coordinate(random.nextInt(Math.max(1, area.dimensions.getHeight() - 1)) + 1,
+                              random.nextInt(Math.max(1, area.dimensions.getWidth() - 1)) + 1);
+    }
+    
+    /**
+     * Runs the simulation.
+     * 
+     * @param duration Simulation time (milliseconds) to run for.
+     */
+    public void run(final long duration) {
+
+        queue.runUntil(queue.getTime() + duration);
+    }
+    
+    /**
+     * @return Current simulation time (milliseconds).
+     */
+    public long getTime() {
+
+        return queue.getTime();
+    }
+    
+    /**
+     * @return Number of events run so far.
+     */
+    public long getNumEvents() {
+
+        return queue.getNumProcessed();
+    }
+    
+    /**
+     * @return Number of fires started so far.
+     */
+    public int getFiresStarted() {
+
+        return firesStarted;
+    }
+    
+    /**
+     * @return Number of fires ended so far.
+     */
+    public int getFiresEnded() {
+
+        return firesEnded;
+    }
+    
+    /**
+     * @return Number of currently burning fires.
+     */
+    public int getFiresBurning() {
+
+        return fires.size();
+    }
+    
+    /**
+     * @return Number of casualties delivered at the hospitals so far.
+     */
+    public int getCasualtiesDelivered() {
+
+        return casualtiesDelivered;
+    }
+    
+    /**
+     * @return Mean time (milliseconds) from the start of a fire to the arrival of the first vehicle, -1 if no fire has
+     *         been reached yet.
+     */
+    public double getMeanResponseTime() {
+
+        return (firesReached == 0) ? -1 : sumResponseTime / (double) firesReached;
+    }
+    
+    /**
+     * @return Mean time (milliseconds) from the start to the end of a fire, -1 if no fire has ended yet.
+     */
+    public double getMeanFireDuration() {
+
+        return (firesEnded == 0) ? -1 : sumFireDuration / (double) firesEnded;
+    }
+    
+    /**
+     * Starts a fire at a random free position and assigns it to a fire brigade and a hospital.
+     */
+    private class SpawnFire extends Event {
+        
+        /**
+         * @param period
+         */
+        public SpawnFire(final long period) {
+
+            super(period);
+        }
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.headless.Event#run()
+         */
+        @Override
+        public void run() {
+
+            final Coordinate fireCoord = area.getRandomFreeCoordinate(random);
+            if (fireCoord == null) return;
+            area.setOnFireState(fireCoord, true);
+            final int intensityInc = random.nextInt(4) + 1;
+            final int casualtiesInc = random.nextInt(1) + 1;
+            final SimFire fire = new SimFire(fireCoord, intensityInc, casualtiesInc);
+            fires.put(fireCoord, fire);
+            queue.schedule(fire, fireIncreaseIval);
+            firesStarted++;
+            
+            assignFire(fireBrigades, fire);
+            assignFire(hospitals, fire);
+        }
+    }
+    
+    /**
+     * Makes the station with the best proposal responsible for the fire (like the coordinators do it).
+     * 
+     * @param stations
+     * @param fire
+     */
+    void assignFire(final List<Station> stations, final SimFire fire) {
+
+        Station bestStation = null;
+        HandleFireProposal bestProposal = null;
+        for (final Station station : stations) {
+            final HandleFireProposal proposal = Dispatch.createProposal(station.coordinate, fire.fire.coordinate,
+                                                                        station.vehicles.size(),
+                                                                        station.fires.size());
+            if (Dispatch.isBetterProposal(proposal, bestProposal)) {
+                bestStation = station;
+                bestProposal = proposal;
+            }
+        }
+        if (bestStation == null) return;
+        bestStation.fires.put(fire.fire.coordinate, fire);
+        fire.stations.add(bestStation);
+        bestStation.distributeVehicles();
+    }
+    
+    /**
+     * Fire with its increase event.
+     */
+    private class SimFire extends Event {
+        
+        /**
+         * Package scoped for faster access by inner classes.
+         */
+        final Fire fire;
+        private final int intensityIncrease;
+        private final int casualtiesIncrease;
+        /**
+         * Start time (milliseconds). Package scoped for faster access by inner classes.
+         */
+        final long startTime;
+        /**
+         * If a vehicle arrived at the fire. Package scoped for faster access by inner classes.
+         */
+        boolean reached = false;
+        /**
+         * Stations responsible for the fire. Package scoped for faster access by inner classes.
+         */
+        final List<Station> stations = new ArrayList<Station>(2);
+        
+        /**
+         * @param coordinate
+         * @param intensityIncrease
+         * @param casualtiesIncrease
+         */
+        public SimFire(final Coordinate coordinate, final int intensityIncrease, final int casualtiesIncrease) {
+
+            super(fireIncreaseIval);
+            fire = new Fire(coordinate, 0, 0);
+            this.intensityIncrease = intensityIncrease;
+            this.casualtiesIncrease = casualtiesIncrease;
+            startTime = queue.getTime();
+        }
+        
+        /**
+         * Increases the fire.
+         * 
+         * @see it.unitn.disi.aose.firerespsim.headless.Event#run()
+         */
+        @Override
+        public void run() {
+
+            fire.increaseIntensity(intensityIncrease);
+            fire.increaseCasualties(casualtiesIncrease);
+            for (final Station station : stations) {
+                station.distributeVehicles();
+            }
+        }
+    }
+    
+    /**
+     * Ends a fire that is put out and has no more casualties, and sends the vehicles assigned to it back home.
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param fire
+     */
+    void endFire(final SimFire fire) {
+
+        final Coordinate fireCoord = fire.fire.coordinate;
+        fire.cancel();
+        fires.remove(fireCoord);
+        area.setOnFireState(fireCoord, false);
+        firesEnded++;
+        sumFireDuration += queue.getTime() - fire.startTime;
+        
+        for (final Station station : fire.stations) {
+            station.fires.remove(fireCoord);
+            station.fireVehicles.remove(fireCoord);
+            for (final SimVehicle vehicle : station.vehicles) {
+                if (vehicle.vehicle.fire == null || !vehicle.vehicle.fire.getCoordinate().equals(fireCoord)) {
+                    continue;
+                }
+                vehicle.vehicle.fire = null;
+                if (!vehicle.hasCasualty) {
+                    vehicle.setTarget(vehicle.vehicle.home);
+                }
+            }
+        }
+        for (final Station station : fire.stations) {
+            station.distributeVehicles();
+        }
+    }
+    
+    /**
+     * Fire brigade or hospital with its vehicles.
+     */
+    private class Station {
+        
+        /**
+         * Package scoped for faster access by inner classes.
+         */
+        final Coordinate coordinate;
+        /**
+         * <code>true</code> for a hospital (ambulances), <code>false</code> for a fire brigade (fire engines). Package
+         * scoped for faster access by inner classes.
+         */
+        final boolean hospital;
+        /**
+         * Package scoped for faster access by inner classes.
+         */
+        final List<SimVehicle> vehicles = new ArrayList<SimVehicle>();
+        /**
+         * Package scoped for faster access by inner classes.
+         */
+        final SpatialIndex<SimVehicle> vehiclePositions = new SpatialIndex<SimVehicle>();
+        /**
+         * Fires responsible for. Package scoped for faster access by inner classes.
+         */
+        final Map<Coordinate, SimFire> fires = new LinkedHashMap<Coordinate, SimFire>();
+        /**
+         * Fire vehicle distribution. Package scoped for faster access by inner classes.
+         */
+        final Map<Coordinate, Integer> fireVehicles = new LinkedHashMap<Coordinate, Integer>();
+        
+        /**
+         * @param coordinate
+         * @param hospital
+         * @param vehicleMoveIval
+         */
+        public Station(final Coordinate coordinate, final boolean hospital, final long vehicleMoveIval) {
+
+            this.coordinate = coordinate;
+            this.hospital = hospital;
+            final int numVehicles = random.nextInt(4) + 1;
+            for (int i = 0; i < numVehicles; i++) {
+                final SimVehicle vehicle = new SimVehicle(this, vehicleMoveIval);
+                vehicles.add(vehicle);
+                vehiclePositions.put(vehicle, coordinate);
+                queue.schedule(vehicle, vehicleMoveIval);
+            }
+        }
+        
+        /**
+         * Distributes the vehicles among the fires (like the stationary agents do it).
+         */
+        void distributeVehicles() {
+
+            if (fires.isEmpty()) return;
+            
+            final Map<Coordinate, Integer> fireWeights = new LinkedHashMap<Coordinate, Integer>();
+            for (final SimFire fire : fires.values()) {
+                fireWeights.put(fire.fire.coordinate, hospital ? fire.fire.getCasualties() : fire.fire.getIntensity());
+            }
+            boolean fireVehiclesChanged = false;
+            for (final Entry<Coordinate, Integer> fv : Dispatch.distributeVehicles(fireWeights, vehicles.size())
+                                                               .entrySet()) {
+                if (fv.getValue().equals(fireVehicles.put(fv.getKey(), fv.getValue()))) {
+                    continue;
+                }
+                fireVehiclesChanged = true;
+            }
+            if (!fireVehiclesChanged) return;
+            
+            final Map<SimVehicle, Coordinate> vehicleFires = new LinkedHashMap<SimVehicle, Coordinate>();
+            for (final SimVehicle vehicle : vehicles) {
+                vehicleFires.put(vehicle, (vehicle.vehicle.fire == null) ? null : vehicle.vehicle.fire.getCoordinate());
+            }
+            for (final Entry<SimVehicle, Coordinate> assignment : Dispatch.assignVehicles(fireVehicles, vehicleFires,
+                                                                                         vehiclePositions)
+                                                                          .entrySet()) {
+                assignment.getKey().setFire(assignment.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Fire engine or ambulance with its move event.
+     */
+    private class SimVehicle extends Event {
+        
+        /**
+         * Package scoped for faster access by inner classes.
+         */
+        final Vehicle vehicle;
+        private final Station station;
+        /**
+         * If currently transporting a casualty (ambulances only). Package scoped for faster access by inner classes.
+         */
+        boolean hasCasualty = false;
+        
+        /**
+         * @param station
+         * @param moveIval
+         */
+        public SimVehicle(final Station station, final long moveIval) {
+
+            super(moveIval);
+            this.station = station;
+            vehicle = new Vehicle(new Position(station.coordinate), Vehicle.STATE_IDLE);
+        }
+        
+        /**
+         * Sends the vehicle to a fire, if it is accepting targets.
+         * 
+         * @param fireCoord
+         */
+        void setFire(final Coordinate fireCoord) {
+
+            if (!vehicle.isAcceptingTarget()) return;
+            vehicle.fire = new Position(fireCoord);
+            setTarget(vehicle.fire);
+        }
+        
+        /**
+         * @param target
+         */
+        void setTarget(final Position target) {
+
+            if (vehicle.target == null) {
+                vehicle.target = target.clone();
+            } else {
+                vehicle.target.set(target);
+            }
+            vehicle.setState(Vehicle.STATE_TO_TARGET);
+            if (vehicle.position.equals(vehicle.target)) {
+                arrivedAtTarget();
+            }
+        }
+        
+        private void setIdle() {
+
+            vehicle.setState(Vehicle.STATE_IDLE);
+            vehicle.target = null;
+        }
+        
+        /**
+         * Moves towards the target. At a fire the fire engines put it out and the ambulances try to pick up a
+         * casualty.
+         * 
+         * @see it.unitn.disi.aose.firerespsim.headless.Event#run()
+         */
+        @Override
+        public void run() {
+
+            if (vehicle.getState() == Vehicle.STATE_TO_TARGET) {
+                final boolean arrived = vehicle.moveTowardsTarget();
+                station.vehiclePositions.put(this, vehicle.position.getCoordinate());
+                if (arrived) {
+                    arrivedAtTarget();
+                }
+            } else if (vehicle.getState() == Vehicle.STATE_AT_TARGET && vehicle.fire != null &&
+                       vehicle.position.equals(vehicle.fire)) {
+                atFire();
+            }
+        }
+        
+        private void arrivedAtTarget() {
+
+            vehicle.setState(Vehicle.STATE_AT_TARGET);
+            if (vehicle.fire != null && vehicle.position.equals(vehicle.fire)) {
+                final SimFire fire = fires.get(vehicle.fire.getCoordinate());
+                if (fire != null && !fire.reached) {
+                    fire.reached = true;
+                    firesReached++;
+                    sumResponseTime += queue.getTime() - fire.startTime;
+                }
+                atFire();
+            } else {
+                arrivedAtHome();
+            }
+        }
+        
+        private void arrivedAtHome() {
+
+            if (hasCasualty) {
+                hasCasualty = false;
+                vehicle.setAcceptingTarget(true);
+                casualtiesDelivered++;
+                if (vehicle.fire != null) {
+                    setTarget(vehicle.fire);
+                    return;
+                }
+            }
+            setIdle();
+        }
+        
+        /**
+         * Puts out the fire (fire engines) or picks up a casualty (ambulances).
+         */
+        private void atFire() {
+
+            final SimFire fire = fires.get(vehicle.fire.getCoordinate());
+            if (fire == null) {
+                // fire already ended
+                vehicle.fire = null;
+                setTarget(vehicle.home);
+                return;
+            }
+            
+            if (!station.hospital) {
+                if (fire.fire.getIntensity() < 1) {
+                    if (fire.isCancelled()) {
+                        // already put out by another fire engine
+                        vehicle.fire = null;
+                        setTarget(vehicle.home);
+                    }
+                    // else fire did not increase yet, try again on the next move
+                    return;
+                }
+                fire.fire.decreaseIntensity(1);
+                if (fire.fire.getIntensity() >= 1) return;
+                // fire is put out, stops increasing
+                fire.cancel();
+                fire.fire.setIntensity(0);
+                if (fire.fire.getCasualties() < 1) {
+                    endFire(fire);
+                } else {
+                    vehicle.fire = null;
+                    setTarget(vehicle.home);
+                }
+                return;
+            }
+            
+            if (fire.fire.getCasualties() < 1) {
+                // no casualty to pick up, try again on the next move
+                return;
+            }
+            fire.fire.decreaseCasualties(1);
+            hasCasualty = true;
+            vehicle.setAcceptingTarget(false);
+            if (fire.isCancelled() && fire.fire.getCasualties() < 1) {
+                endFire(fire);
+            }
+            setTarget(vehicle.home);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+
+/**
+ * Partitioning of the simulation area into a grid of rectangular shards (tiles), each owned by its own environment
+ * agent. Routes coordinates to the owning shard. The rows and columns are split as evenly as possible, shards are
+ * numbered row by row starting with 0.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class AreaShards {
+    
+    /**
+     * Dimensions of the whole simulation area.
+     */
+    public final AreaDimensions dimensions;
+    /**
+     * Number of shard rows.
+     */
+    public final int shardRows;
+    /**
+     * Number of shard columns.
+     */
+    public final int shardCols;
+    
+    /**
+     * @param dimensions
+     * @param shardRows Number of shard rows. Limited to the area height.
+     * @param shardCols Number of shard columns. Limited to the area width.
+     */
+    public AreaShards(final AreaDimensions dimensions, final int shardRows, final int shardCols) {
+
+        this.dimensions = dimensions;
+        this.shardRows = Math.max(1, Math.min(shardRows, dimensions.getHeight()));
+        this.shardCols = Math.max(1, Math.min(shardCols, dimensions.getWidth()));
+    }
+    
+    /**
+     * @return Number of shards.
+     */
+    public int getNumShards() {
+
+        return shardRows * shardCols;
+    }
+    
+    /**
+     * @param coordinate
+     * @return Shard owning the coordinate, -1 if outside of the area.
+     */
+    public int getShard(final Coordinate coordinate) {
+
+        final int row = coordinate.getRow();
+        final int col = coordinate.getCol();
+        if (row < 1 || row > dimensions.getHeight() || col < 1 || col > dimensions.getWidth()) return -1;
+        final int shardRow = (int) (((long) row * shardRows - 1) / dimensions.getHeight());
+        final int shardCol = (int) (((long) col * shardCols - 1) / dimensions.getWidth());
+        return shardRow * shardCols + shardCol;
+    }
+    
+    /**
+     * @param shard
+     * @return Upper left coordinate of the shard on the simulation area.
+     */
+    public Coordinate getShardCoordinate(final int shard) {
+
+        return new Coordinate(getFirstRow(shard / shardCols), getFirstCol(shard % shardCols));
+    }
+    
+    /**
+     * @param shard
+     * @return Dimensions of the shard.
+     */
+    public AreaDimensions getShardDimensions(final int shard) {
+
+        final int shardRow = shard / shardCols;
+        final int shardCol = shard % shardCols;
+        return new AreaDimensions(getFirstCol(shardCol + 1) - getFirstCol(shardCol),
+                                  getFirstRow(shardRow + 1) - getFirstRow(shardRow));
+    }
+    
+    /**
+     * @param shardRow
+     * @return First area row of the shard row.
+     */
+    private int getFirstRow(final int shardRow) {
+
+        return (int) ((long) shardRow * dimensions.getHeight() / shardRows) + 1;
+    }
+    
+    /**
+     * @param shardCol
+     * @return First area column of the shard column.
+     */
+    private int getFirstCol(final int shardCol) {
+
+        return (int) ((long) shardCol * dimensions.getWidth() / shardCols) + 1;
+    }
+    
+    /**
+     * @param name Name of the agents owning the shards.
+     * @param shard
+     * @return Local name of the agent owning the shard. Only a single shard is owned by an agent with the plain name.
+     */
+    public String getShardName(final String name, final int shard) {
+
+        return (getNumShards() == 1) ? name : name + " " + shard;
+    }
+}
@@ -0,0 +1,123 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+
+/**
+ * Policy that places the agents of the simulation in the containers of the platform. Container 0 is the main
+ * container, containers 1 to n are the peripheral containers. The monitor and the coordinators always stay in the main
+ * container. The policy places the environment agents (by the upper left coordinate of their shard) and the stationary
+ * agents (by their position). The vehicle agents are started by their stationary agent and stay in its container. The
+ * placement of an agent only depends on the order and positions of the previous placements, so every process of a
+ * simulation computes the same placements.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public abstract class ContainerPlacement {
+    
+    /**
+     * Places the agents in the peripheral containers one after the other.
+     */
+    public static final String ROUND_ROBIN = "round-robin";
+    /**
+     * Partitions the area into one column region per peripheral container and places the agents in the container of
+     * the region of their position, so the agents of a region communicate within their container.
+     */
+    public static final String REGION = "region";
+    
+    /**
+     * Number of peripheral containers.
+     */
+    protected final int numContainers;
+    
+    /**
+     * @param numContainers Number of peripheral containers.
+     */
+    protected ContainerPlacement(final int numContainers) {
+
+        this.numContainers = numContainers;
+    }
+    
+    /**
+     * @param type {@link #ROUND_ROBIN} or {@link #REGION}.
+     * @param dimensions Dimensions of the simulation area.
+     * @param numContainers Number of peripheral containers.
+     * @return New placement, <code>null</code> if the type is unknown.
+     */
+    public static ContainerPlacement create(final String type, final AreaDimensions dimensions,
+                                            final int numContainers) {
+
+        if (ROUND_ROBIN.equals(type)) return new RoundRobinPlacement(numContainers);
+        if (REGION.equals(type)) return new RegionPlacement(dimensions, numContainers);
+        return null;
+    }
+    
+    /**
+     * @param position Position of the agent on the simulation area.
+     * @return Container of the next agent, 0 for the main container.
+     */
+    public final int place(final Coordinate position) {
+
+        return (numContainers < 1) ? 0 : placeInPeripheral(position);
+    }
+    
+    /**
+     * @param position Position of the agent on the simulation area.
+     * @return Peripheral container of the next agent (1 to {@link #numContainers}).
+     */
+    protected abstract int placeInPeripheral(final Coordinate position);
+    
+    /**
+     * {@link ContainerPlacement#ROUND_ROBIN} placement.
+     */
+    private static final class RoundRobinPlacement extends ContainerPlacement {
+        
+        private int next = 0;
+        
+        /**
+         * @param numContainers
+         */
+        RoundRobinPlacement(final int numContainers) {
+
+            super(numContainers);
+        }
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.model.ContainerPlacement#placeInPeripheral(it.unitn.disi.aose.firerespsim.ontology.Coordinate)
+         */
+        @Override
+        protected int placeInPeripheral(final Coordinate position) {
+
+            final int container = next + 1;
+            next = (next + 1) % numContainers;
+            return container;
+        }
+    }
+    
+    /**
+     * {@link ContainerPlacement#REGION} placement.
+     */
+    private static final class RegionPlacement extends ContainerPlacement {
+        
+        private final AreaShards regions;
+        
+        /**
+         * @param dimensions
+         * @param numContainers
+         */
+        RegionPlacement(final AreaDimensions dimensions, final int numContainers) {
+
+            super(numContainers);
+            regions = new AreaShards(dimensions, 1, Math.max(1, numContainers));
+        }
+        
+        /**
+         * @see it.unitn.disi.aose.firerespsim.model.ContainerPlacement#placeInPeripheral(it.unitn.disi.aose.firerespsim.ontology.Coordinate)
+         */
+        @Override
+        protected int placeInPeripheral(final Coordinate position) {
+
+            return regions.getShard(position) % numContainers + 1;
+        }
+    }
+}
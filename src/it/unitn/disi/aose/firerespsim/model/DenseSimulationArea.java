@@ -0,0 +1,166 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simulation area that stores the on fire states of all positions in an array. Picks random free positions in constant
+ * time.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class DenseSimulationArea extends SimulationArea {
+    
+    /**
+     * On fire status of the positions on the area. <code>true</code> stands for on fire, <code>false</code> for not on
+     * fire.
+     */
+    private final boolean[][] onFireStates;
+    /**
+     * Indexes (<code>row * width + column</code>, zero based) of the positions that are not on fire. The first
+     * {@link #numFreeCells} entries are the free positions, the rest are the positions on fire.
+     */
+    private final int[] freeCells;
+    /**
+     * Position of each index in {@link #freeCells}.
+     */
+    private final int[] freeCellSlots;
+    /**
+     * Number of positions that are not on fire.
+     */
+    private int numFreeCells;
+    
+    /**
+     * @param dimensions
+     */
+    public DenseSimulationArea(final AreaDimensions dimensions) {
+
+        super(dimensions);
+        
+        // initialize on fire statuses
+        onFireStates = new boolean[dimensions.getHeight()][dimensions.getWidth()];
+        for (int row = 0; row < dimensions.getHeight(); row++) {
+            for (int col = 0; col < dimensions.getWidth(); col++) {
+                onFireStates[row][col] = false;
+            }
+        }
+        
+        // initialize free cells
+        numFreeCells = dimensions.getHeight() * dimensions.getWidth();
+        freeCells = new int[numFreeCells];
+        freeCellSlots = new int[numFreeCells];
+        for (int i = 0; i < numFreeCells; i++) {
+            freeCells[i] = i;
+            freeCellSlots[i] = i;
+        }
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireState(it.unitn.disi.aose.firerespsim.ontology.Coordinate)
+     */
+    @Override
+    public boolean getOnFireState(final Coordinate coordinate) {
+
+        return onFireStates[coordinate.getRow() - 1][coordinate.getCol() - 1];
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#setOnFireState(it.unitn.disi.aose.firerespsim.ontology.Coordinate,
+     *      boolean)
+     */
+    @Override
+    public void setOnFireState(final Coordinate coordinate, final boolean state) {
+
+        final int row = coordinate.getRow() - 1;
+        final int col = coordinate.getCol() - 1;
+        if (onFireStates[row][col] == state) return;
+        onFireStates[row][col] = state;
+        
+        // move the cell to the other side of the free cells boundary
+        final int cell = row * dimensions.getWidth() + col;
+        if (state) {
+            swapFreeCells(freeCellSlots[cell], numFreeCells - 1);
+            numFreeCells--;
+        } else {
+            swapFreeCells(freeCellSlots[cell], numFreeCells);
+            numFreeCells++;
+        }
+    }
+    
+    /**
+     * @param slot1
+     * @param slot2
+     */
+    private void swapFreeCells(final int slot1, final int slot2) {
+
+        final int cell1 = freeCells[slot1];
+        final int cell2 = freeCells[slot2];
+        freeCells[slot1] = cell2;
+        freeCellSlots[cell2] = slot1;
+        freeCells[slot2] = cell1;
+        freeCellSlots[cell1] = slot2;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireStates(it.unitn.disi.aose.firerespsim.ontology.Coordinate,
+     *      int, int)
+     */
+    @Override
+    public BitSet getOnFireStates(final Coordinate coordinate, final int width, final int height) {
+
+        final BitSet states = new BitSet(width * height);
+        final int firstRow = coordinate.getRow() - 1;
+        final int firstCol = coordinate.getCol() - 1;
+        int i = 0;
+        for (int row = firstRow; row < firstRow + height; row++) {
+            final boolean[] rowStates = onFireStates[row];
+            for (int col = firstCol; col < firstCol + width; col++) {
+                if (rowStates[col]) {
+                    states.set(i);
+                }
+                i++;
+            }
+        }
+        return states;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireCoordinates()
+     */
+    @Override
+    public List<Coordinate> getOnFireCoordinates() {
+
+        final List<Coordinate> coords = new ArrayList<Coordinate>(freeCells.length - numFreeCells);
+        for (int slot = numFreeCells; slot < freeCells.length; slot++) {
+            coords.add(new Coordinate(freeCells[slot] / dimensions.getWidth() + 1,
+                                      freeCells[slot] % dimensions.getWidth() + 1));
+        }
+        return coords;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getNumFreeCells()
+     */
+    @Override
+    public long getNumFreeCells() {
+
+        return numFreeCells;
+    }
+    
+    /**
+     * Picks a random position that is not on fire in constant time.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getRandomFreeCoordinate(java.util.Random)
+     */
+    @Override
+    public Coordinate getRandomFreeCoordinate(final Random random) {
+
+        if (numFreeCells == 0) return null;
+        final int cell = freeCells[random.nextInt(numFreeCells)];
+        return new Coordinate(cell / dimensions.getWidth() + 1, cell % dimensions.getWidth() + 1);
+    }
+}
@@ -0,0 +1,131 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import it.unitn.disi.aose.firerespsim.ontology.HandleFireProposal;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+/**
+ * Dispatch rules of the coordinators and stations. Used by the agents and the headless simulation.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class Dispatch {
+    
+    private Dispatch() {
+
+    // utility class
+    }
+    
+    /**
+     * Creates the proposal of a station to handle a fire.
+     * 
+     * @param stationCoord
+     * @param fireCoord
+     * @param numVehicles Number of vehicles of the station.
+     * @param numFires Number of fires the station is responsible for.
+     * @return The proposal.
+     */
+    public static HandleFireProposal createProposal(final Coordinate stationCoord, final Coordinate fireCoord,
+                                                    final int numVehicles, final int numFires) {
+
+        // need at least one vehicle per fire
+        return new HandleFireProposal(SimulationArea.getDistance(stationCoord, fireCoord), numVehicles - numFires);
+    }
+    
+    /**
+     * Number of available vehicles is primary criteria, distance to fire is secondary criteria.
+     * 
+     * @param proposal
+     * @param bestProposal Best proposal so far, can be <code>null</code>.
+     * @return <code>true</code> if the proposal is better than the best one so far, <code>false</code> if not
+     */
+    public static boolean isBetterProposal(final HandleFireProposal proposal, final HandleFireProposal bestProposal) {
+
+        if (bestProposal == null || proposal.getNumVehicles() > bestProposal.getNumVehicles()) return true;
+        return proposal.getNumVehicles() == bestProposal.getNumVehicles() &&
+               proposal.getDistance() < bestProposal.getDistance();
+    }
+    
+    /**
+     * Calculates the vehicle distribution of a station. For each fire one vehicle is assigned. Additional vehicles are
+     * distributed along the fires based on their weights.
+     * 
+     * @param fireWeights Relative weight of each fire.
+     * @param numVehicles Number of vehicles of the station.
+     * @return Number of vehicles for each fire.
+     */
+    public static Map<Coordinate, Integer> distributeVehicles(final Map<Coordinate, Integer> fireWeights,
+                                                              final int numVehicles) {
+
+        int sumWeights = 0;
+        for (final Integer weight : fireWeights.values()) {
+            sumWeights += weight;
+        }
+        // TODO check that exact number of vehicles assigned
+        final float addVehiclesPerWeight = (sumWeights < 1) ? 0
+                                                           : Math.max(0, numVehicles - fireWeights.size()) /
+                                                             (float) sumWeights;
+        final Map<Coordinate, Integer> fireVehicles = new LinkedHashMap<Coordinate, Integer>();
+        for (final Entry<Coordinate, Integer> fireWeight : fireWeights.entrySet()) {
+            fireVehicles.put(fireWeight.getKey(), 1 + Math.round(fireWeight.getValue() * addVehiclesPerWeight));
+        }
+        return fireVehicles;
+    }
+    
+    /**
+     * Assigns vehicles to fires. Vehicles already assigned to a fire stay with it, the other vehicles needed are the
+     * ones closest to the fire that are not assigned yet.
+     * 
+     * @param <T> Type of the vehicle identifiers.
+     * @param fireVehicles Number of vehicles for each fire.
+     * @param vehicleFires Fire each vehicle is currently assigned to (<code>null</code> if none).
+     * @param vehiclePositions Positions of the vehicles that can be assigned.
+     * @return The new fire of each re-assigned vehicle.
+     */
+    public static <T> Map<T, Coordinate> assignVehicles(final Map<Coordinate, Integer> fireVehicles,
+                                                        final Map<T, Coordinate> vehicleFires,
+                                                        final SpatialIndex<T> vehiclePositions) {
+
+        // check how many vehicles already correctly assigned
+        // TODO consider current vehicle state (at target -> leave assignment)
+        final Map<Coordinate, Integer> fireVehiclesToAssign = new LinkedHashMap<Coordinate, Integer>(fireVehicles);
+        final Set<T> okVehicles = new HashSet<T>();
+        for (final Entry<T, Coordinate> vehicleFire : vehicleFires.entrySet()) {
+            final Integer toAssign = (vehicleFire.getValue() == null) ? null
+                                                                     : fireVehiclesToAssign.get(vehicleFire.getValue());
+            if (toAssign == null || toAssign == 0) {
+                // vehicle not assigned to a fire that needs vehicles
+                continue;
+            }
+            okVehicles.add(vehicleFire.getKey());
+            fireVehiclesToAssign.put(vehicleFire.getValue(), toAssign - 1);
+        }
+        
+        // (re-)distribute other vehicles, prefer the ones closest to the fire
+        final Map<T, Coordinate> assignments = new LinkedHashMap<T, Coordinate>();
+        for (final Entry<Coordinate, Integer> fv : fireVehiclesToAssign.entrySet()) {
+            if (fv.getValue() == 0) {
+                // no more vehicles to assign
+                continue;
+            }
+            // enough candidates to skip the already assigned ones
+            final int numCandidates = fv.getValue() + okVehicles.size();
+            for (final T vehicle : vehiclePositions.getNearest(fv.getKey(), numCandidates)) {
+                if (okVehicles.contains(vehicle)) {
+                    continue;
+                }
+                assignments.put(vehicle, fv.getKey());
+                okVehicles.add(vehicle);
+                if (fv.setValue(fv.getValue() - 1) == 1) {
+                    // all vehicles for this fire
+                    break;
+                }
+            }
+        }
+        return assignments;
+    }
+}
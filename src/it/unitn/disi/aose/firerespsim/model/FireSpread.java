@@ -0,0 +1,301 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Cellular automaton model of the fire spread on a shard of a {@link SimulationArea} (see {@link AreaShards}). The fire
+ * intensities are the ones of the {@link FireTable} of the shard, so fires that increase or get put out spread
+ * accordingly. Every generation the positions next to a fire with at least the threshold intensity catch fire with the
+ * spread probability (per such neighbor). Only the neighbors of the spreading fires are visited, so a generation costs
+ * in proportion to the fires and not to the area, and the model keeps no state per position. The neighbors of the fires
+ * at the shard border can lie in other shards: they are returned like the positions of the shard, and the owner of the
+ * shard hands them on to the owners of the other shards. Every shard only counts its own fires, and as the neighbors
+ * spread independently of each other, a position catches fire with the same probability as on an area without shards.
+ * The visited positions are split into partitions that are stepped in parallel, each only reading the fire table, in
+ * the threads of a pool shared by all models of the JVM. The random decisions only depend on the seed, the generation
+ * and the position, so the result does not depend on the number of threads. Not thread-safe, only
+ * {@link #step(FireTable)} uses multiple threads internally.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class FireSpread {
+    
+    /**
+     * Pool of the threads stepping the partitions, shared by all models of the JVM, so the shards of a JVM don't
+     * multiply the threads. <code>null</code> if no model uses it.
+     */
+    private static ExecutorService executor = null;
+    /**
+     * Number of models using the {@link #executor}.
+     */
+    private static int numExecutorUsers = 0;
+    
+    /**
+     * Dimensions of the whole area.
+     */
+    public final AreaDimensions dimensions;
+    private final int width;
+    private final int height;
+    /**
+     * Upper left coordinate of the shard on the area.
+     */
+    private final Coordinate shardCoord;
+    private final int shardWidth;
+    private final int shardHeight;
+    /**
+     * Package scoped for faster access by inner classes.
+     */
+    final int threshold;
+    private final long seed;
+    /**
+     * Probability to catch fire for each number (0 to 8) of neighbors with at least the threshold intensity. Package
+     * scoped for faster access by inner classes.
+     */
+    final double[] ignitionProbabilities = new double[9];
+    private long generation = 0;
+    private final int numThreads;
+    
+    /**
+     * @param shards Partitioning of the area.
+     * @param shard Shard of the fire table stepped by this model.
+     * @param threshold Minimum intensity of a fire to spread (at least 1).
+     * @param probability Probability that a fire spreads to a neighbor position per generation.
+     * @param seed Seed for the random decisions.
+     * @param numThreads Number of partitions to step the generations with in parallel. The threads are shared with the
+     *            other models of the JVM, and there are not more of them than processors.
+     */
+    public FireSpread(final AreaShards shards, final int shard, final int threshold, final double probability,
+                      final long seed, final int numThreads) {
+
+        dimensions = shards.dimensions;
+        width = dimensions.getWidth();
+        height = dimensions.getHeight();
+        shardCoord = shards.getShardCoordinate(shard);
+        final AreaDimensions shardDimensions = shards.getShardDimensions(shard);
+        shardWidth = shardDimensions.getWidth();
+        shardHeight = shardDimensions.getHeight();
+        this.threshold = Math.max(1, threshold);
+        this.seed = seed;
+        for (int n = 0; n < ignitionProbabilities.length; n++) {
+            ignitionProbabilities[n] = 1 - Math.pow(1 - probability, n);
+        }
+        this.numThreads = Math.max(1, numThreads);
+        if (this.numThreads > 1) {
+            synchronized (FireSpread.class) {
+                if (executor == null) {
+                    final int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+                        
+                        @Override
+                        public Thread newThread(final Runnable r) {
+
+                            final Thread t = new Thread(r, "fire spread");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                }
+                numExecutorUsers++;
+            }
+        }
+    }
+    
+    /**
+     * Writes the generation for a checkpoint.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    public void write(final DataOutput out) throws IOException {
+
+        out.writeLong(generation);
+    }
+    
+    /**
+     * Replaces the generation with the one written by {@link #write(DataOutput)}.
+     * 
+     * @param in
+     * @throws IOException
+     */
+    public void read(final DataInput in) throws IOException {
+
+        generation = in.readLong();
+    }
+    
+    /**
+     * Computes the next generation.
+     * 
+     * @param fires Fires of the shard (in shard coordinates), only read.
+     * @return Coordinates (on the area) of the positions that caught fire, including positions of other shards next to
+     *         the fires at the border of the shard.
+     */
+    public List<Coordinate> step(final FireTable fires) {
+
+        // collect the positions next to spreading fires
+        final Set<Coordinate> candidates = new LinkedHashSet<Coordinate>();
+        for (int i = 0; i < fires.size(); i++) {
+            if (fires.getIntensity(i) < threshold) {
+                continue;
+            }
+            final Coordinate fireCoord = fromShard(fires.getCoordinate(i));
+            final int lastRow = Math.min(height, fireCoord.getRow() + 1);
+            final int lastCol = Math.min(width, fireCoord.getCol() + 1);
+            for (int row = Math.max(1, fireCoord.getRow() - 1); row <= lastRow; row++) {
+                for (int col = Math.max(1, fireCoord.getCol() - 1); col <= lastCol; col++) {
+                    if (indexOf(fires, row, col) < 0) {
+                        candidates.add(new Coordinate(row, col));
+                    }
+                }
+            }
+        }
+        
+        // split them into partitions
+        final List<Coordinate> positions = new ArrayList<Coordinate>(candidates);
+        final int numPartitions = Math.max(1, Math.min(numThreads, positions.size()));
+        final List<Callable<List<Coordinate>>> partitions = new ArrayList<Callable<List<Coordinate>>>();
+        for (int p = 0; p < numPartitions; p++) {
+            final int first = p * positions.size() / numPartitions;
+            final int end = (p + 1) * positions.size() / numPartitions;
+            partitions.add(new StepPositions(fires, positions.subList(first, end)));
+        }
+        
+        final List<Coordinate> ignited = new ArrayList<Coordinate>();
+        try {
+            if (numPartitions == 1) {
+                ignited.addAll(partitions.get(0).call());
+            } else {
+                for (final Future<List<Coordinate>> result : executor.invokeAll(partitions)) {
+                    ignited.addAll(result.get());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ignited;
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+        generation++;
+        return ignited;
+    }
+    
+    /**
+     * Stops using the threads, the last model of the JVM stops them. The model must not be stepped afterwards.
+     */
+    public void shutdown() {
+
+        if (numThreads == 1) return;
+        synchronized (FireSpread.class) {
+            if (--numExecutorUsers == 0) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param fires
+     * @param row Row on the area.
+     * @param col Column on the area.
+     * @return Index of the fire at the position in the fire table of the shard, -1 if there is none or the position is
+     *         not in the shard.
+     */
+    int indexOf(final FireTable fires, final int row, final int col) {
+
+        final int shardRow = row - shardCoord.getRow() + 1;
+        final int shardCol = col - shardCoord.getCol() + 1;
+        if (shardRow < 1 || shardRow > shardHeight || shardCol < 1 || shardCol > shardWidth) return -1;
+        return fires.indexOf(new Coordinate(shardRow, shardCol));
+    }
+    
+    /**
+     * @param coord Coordinate on the shard.
+     * @return Coordinate on the area.
+     */
+    private Coordinate fromShard(final Coordinate coord) {
+
+        return new Coordinate(coord.getRow() + shardCoord.getRow() - 1, coord.getCol() + shardCoord.getCol() - 1);
+    }
+    
+    /**
+     * Decides which positions of a partition catch fire.
+     */
+    private class StepPositions implements Callable<List<Coordinate>> {
+        
+        private final FireTable fires;
+        private final List<Coordinate> positions;
+        
+        /**
+         * @param fires
+         * @param positions Positions (on the area) next to a spreading fire of the shard that are not on fire in the
+         *            shard.
+         */
+        public StepPositions(final FireTable fires, final List<Coordinate> positions) {
+
+            this.fires = fires;
+            this.positions = positions;
+        }
+        
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public List<Coordinate> call() {
+
+            final List<Coordinate> ignited = new ArrayList<Coordinate>();
+            for (final Coordinate coord : positions) {
+                // count neighbors of the shard that spread
+                int spreading = 0;
+                final int lastRow = Math.min(height, coord.getRow() + 1);
+                final int lastCol = Math.min(width, coord.getCol() + 1);
+                for (int row = Math.max(1, coord.getRow() - 1); row <= lastRow; row++) {
+                    for (int col = Math.max(1, coord.getCol() - 1); col <= lastCol; col++) {
+                        final int index = indexOf(fires, row, col);
+                        if (index >= 0 && fires.getIntensity(index) >= threshold) {
+                            spreading++;
+                        }
+                    }
+                }
+                if (getRandom(coord) < ignitionProbabilities[spreading]) {
+                    ignited.add(coord);
+                }
+            }
+            return ignited;
+        }
+    }
+    
+    /**
+     * Package scoped for faster access by inner classes.
+     * 
+     * @param coord
+     * @param coord Coordinate on the area.
+     * @return Random number between 0 (inclusive) and 1 (exclusive) for the position in the current generation.
+     */
+    double getRandom(final Coordinate coord) {
+
+        // SplitMix64 finalizer over seed, generation and position
+        final long cell = (coord.getRow() - 1) * (long) width + coord.getCol() - 1;
+        long z = seed + generation * 0x9E3779B97F4A7C15L + cell * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,273 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of the fires on a {@link SimulationArea}, alternative to one {@link Fire} per fire agent. The fire attributes
+ * are stored column-wise in primitive arrays (structure of arrays), so increasing all fires is a loop over a few
+ * arrays and a fire only costs some array slots instead of an agent. Fires are addressed by their index, which changes
+ * when another fire is removed. Same rules as the fire agent: intensity and casualties increase until the fire is put
+ * out, and it ends when both are 0. Not thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class FireTable {
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    private final int width;
+    private int size = 0;
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int[] cols = new int[INITIAL_CAPACITY];
+    private int[] intensities = new int[INITIAL_CAPACITY];
+    private int[] casualties = new int[INITIAL_CAPACITY];
+    private int[] intensityIncreases = new int[INITIAL_CAPACITY];
+    private int[] casualtiesIncreases = new int[INITIAL_CAPACITY];
+    /**
+     * If the fire is not put out yet.
+     */
+    private boolean[] increasing = new boolean[INITIAL_CAPACITY];
+    /**
+     * Index of the fire at each position (indexed by {@link #getCell(int, int)}).
+     */
+    private final Map<Long, Integer> indexes = new HashMap<Long, Integer>();
+    
+    /**
+     * @param dimensions Dimensions of the area.
+     */
+    public FireTable(final AreaDimensions dimensions) {
+
+        width = dimensions.getWidth();
+    }
+    
+    /**
+     * @param row
+     * @param col
+     * @return Key of the position.
+     */
+    private long getCell(final int row, final int col) {
+
+        return (row - 1) * (long) width + col - 1;
+    }
+    
+    /**
+     * @return Number of fires.
+     */
+    public int size() {
+
+        return size;
+    }
+    
+    /**
+     * Adds a fire with intensity and casualties 0.
+     * 
+     * @param coordinate
+     * @param intensityIncrease Intensity increase per {@link #increase()}.
+     * @param casualtiesIncrease Casualties increase per {@link #increase()}.
+     * @return Index of the fire, -1 if there is already a fire at the position.
+     */
+    public int add(final Coordinate coordinate, final int intensityIncrease, final int casualtiesIncrease) {
+
+        final long cell = getCell(coordinate.getRow(), coordinate.getCol());
+        if (indexes.containsKey(cell)) return -1;
+        if (size == rows.length) {
+            final int capacity = 2 * size;
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            intensities = Arrays.copyOf(intensities, capacity);
+            casualties = Arrays.copyOf(casualties, capacity);
+            intensityIncreases = Arrays.copyOf(intensityIncreases, capacity);
+            casualtiesIncreases = Arrays.copyOf(casualtiesIncreases, capacity);
+            increasing = Arrays.copyOf(increasing, capacity);
+        }
+        final int index = size++;
+        rows[index] = coordinate.getRow();
+        cols[index] = coordinate.getCol();
+        intensities[index] = 0;
+        casualties[index] = 0;
+        intensityIncreases[index] = intensityIncrease;
+        casualtiesIncreases[index] = casualtiesIncrease;
+        increasing[index] = true;
+        indexes.put(cell, index);
+        return index;
+    }
+    
+    /**
+     * @param coordinate
+     * @return Index of the fire at the position, -1 if there is none.
+     */
+    public int indexOf(final Coordinate coordinate) {
+
+        final Integer index = indexes.get(getCell(coordinate.getRow(), coordinate.getCol()));
+        return (index == null) ? -1 : index;
+    }
+    
+    /**
+     * Removes a fire. The last fire takes over its index.
+     * 
+     * @param index
+     */
+    public void remove(final int index) {
+
+        indexes.remove(getCell(rows[index], cols[index]));
+        final int last = --size;
+        if (index == last) return;
+        rows[index] = rows[last];
+        cols[index] = cols[last];
+        intensities[index] = intensities[last];
+        casualties[index] = casualties[last];
+        intensityIncreases[index] = intensityIncreases[last];
+        casualtiesIncreases[index] = casualtiesIncreases[last];
+        increasing[index] = increasing[last];
+        indexes.put(getCell(rows[index], cols[index]), index);
+    }
+    
+    /**
+     * @param index
+     * @return Coordinate of the fire.
+     */
+    public Coordinate getCoordinate(final int index) {
+
+        return new Coordinate(rows[index], cols[index]);
+    }
+    
+    /**
+     * @param index
+     * @return Current fire intensity.
+     */
+    public int getIntensity(final int index) {
+
+        return intensities[index];
+    }
+    
+    /**
+     * @param index
+     * @return Current number of casualties.
+     */
+    public int getCasualties(final int index) {
+
+        return casualties[index];
+    }
+    
+    /**
+     * @param index
+     * @return Casualties increase per {@link #increase()}.
+     */
+    public int getCasualtiesIncrease(final int index) {
+
+        return casualtiesIncreases[index];
+    }
+    
+    /**
+     * @param index
+     * @return <code>true</code> if the fire is not put out and increases with {@link #increase()}, <code>false</code>
+     *         if not
+     */
+    public boolean isIncreasing(final int index) {
+
+        return increasing[index];
+    }
+    
+    /**
+     * Increases the intensity and casualties of all fires that are not put out.
+     */
+    public void increase() {
+
+        for (int i = 0; i < size; i++) {
+            if (!increasing[i]) {
+                continue;
+            }
+            intensities[i] += intensityIncreases[i];
+            casualties[i] += casualtiesIncreases[i];
+        }
+    }
+    
+    /**
+     * Decreases the intensity by 1. If it reaches 0 the fire is put out and stops increasing.
+     * 
+     * @param index
+     * @return <code>true</code> if the fire ended (put out and no casualties), <code>false</code> if not
+     */
+    public boolean decreaseIntensity(final int index) {
+
+        intensities[index]--;
+        if (intensities[index] < 1) {
+            intensities[index] = 0;
+            increasing[index] = false;
+        }
+        return hasEnded(index);
+    }
+    
+    /**
+     * Decreases the casualties by 1.
+     * 
+     * @param index
+     * @return <code>true</code> if the fire ended (put out and no casualties), <code>false</code> if not
+     */
+    public boolean decreaseCasualties(final int index) {
+
+        casualties[index] = Math.max(0, casualties[index] - 1);
+        return hasEnded(index);
+    }
+    
+    /**
+     * Writes all fires for a checkpoint.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    public void write(final DataOutput out) throws IOException {
+
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(rows[i]);
+            out.writeInt(cols[i]);
+            out.writeInt(intensities[i]);
+            out.writeInt(casualties[i]);
+            out.writeInt(intensityIncreases[i]);
+            out.writeInt(casualtiesIncreases[i]);
+            out.writeBoolean(increasing[i]);
+        }
+    }
+    
+    /**
+     * Replaces all fires with the ones written by {@link #write(DataOutput)}.
+     * 
+     * @param in
+     * @throws IOException
+     */
+    public void read(final DataInput in) throws IOException {
+
+        while (size > 0) {
+            remove(size - 1);
+        }
+        final int numFires = in.readInt();
+        for (int i = 0; i < numFires; i++) {
+            final Coordinate coordinate = new Coordinate(in.readInt(), in.readInt());
+            final int intensity = in.readInt();
+            final int casualty = in.readInt();
+            final int index = add(coordinate, in.readInt(), in.readInt());
+            final boolean increase = in.readBoolean();
+            if (index < 0) throw new IOException("duplicate fire at (" + coordinate + ")");
+            intensities[index] = intensity;
+            casualties[index] = casualty;
+            increasing[index] = increase;
+        }
+    }
+    
+    /**
+     * @param index
+     * @return <code>true</code> if the fire is put out and has no casualties, <code>false</code> if not
+     */
+    private boolean hasEnded(final int index) {
+
+        return intensities[index] < 1 && casualties[index] < 1;
+    }
+}
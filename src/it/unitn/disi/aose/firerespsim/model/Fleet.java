@@ -0,0 +1,256 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Model of the vehicles of a station, alternative to one {@link Vehicle} per vehicle agent. The vehicle attributes are
+ * stored column-wise in primitive arrays (structure of arrays), so the whole fleet can be moved in one loop. Vehicles
+ * are addressed by their index. Uses the states of {@link Vehicle}. Not thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class Fleet {
+    
+    /**
+     * Position where the vehicles are stationed.
+     */
+    public final Coordinate home;
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] states;
+    private final int[] targetRows;
+    private final int[] targetCols;
+    /**
+     * Row of the fire currently assigned to, 0 for none.
+     */
+    private final int[] fireRows;
+    private final int[] fireCols;
+    private final boolean[] acceptingTarget;
+    /**
+     * If currently transporting a casualty (ambulances only).
+     */
+    private final boolean[] carryingCasualty;
+    
+    /**
+     * Creates a fleet of idle vehicles at home.
+     * 
+     * @param home
+     * @param size Number of vehicles.
+     */
+    public Fleet(final Coordinate home, final int size) {
+
+        this.home = home.clone();
+        rows = new int[size];
+        cols = new int[size];
+        states = new int[size];
+        targetRows = new int[size];
+        targetCols = new int[size];
+        fireRows = new int[size];
+        fireCols = new int[size];
+        acceptingTarget = new boolean[size];
+        carryingCasualty = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = home.getRow();
+            cols[i] = home.getCol();
+            states[i] = Vehicle.STATE_IDLE;
+            acceptingTarget[i] = true;
+        }
+    }
+    
+    /**
+     * @return Number of vehicles.
+     */
+    public int size() {
+
+        return rows.length;
+    }
+    
+    /**
+     * @param vehicle
+     * @return Current position.
+     */
+    public Coordinate getCoordinate(final int vehicle) {
+
+        return new Coordinate(rows[vehicle], cols[vehicle]);
+    }
+    
+    /**
+     * @param vehicle
+     * @return Current state ({@link Vehicle#STATE_IDLE}, {@link Vehicle#STATE_TO_TARGET}, or
+     *         {@link Vehicle#STATE_AT_TARGET}).
+     */
+    public int getState(final int vehicle) {
+
+        return states[vehicle];
+    }
+    
+    /**
+     * @param vehicle
+     * @return Coordinate of the fire currently assigned to, <code>null</code> if none.
+     */
+    public Coordinate getFire(final int vehicle) {
+
+        return (fireRows[vehicle] == 0) ? null : new Coordinate(fireRows[vehicle], fireCols[vehicle]);
+    }
+    
+    /**
+     * @param vehicle
+     * @param fire Coordinate of the fire, <code>null</code> for none.
+     */
+    public void setFire(final int vehicle, final Coordinate fire) {
+
+        fireRows[vehicle] = (fire == null) ? 0 : fire.getRow();
+        fireCols[vehicle] = (fire == null) ? 0 : fire.getCol();
+    }
+    
+    /**
+     * @param vehicle
+     * @param fire
+     * @return <code>true</code> if assigned to the fire, <code>false</code> if not
+     */
+    public boolean isAssignedTo(final int vehicle, final Coordinate fire) {
+
+        return fireRows[vehicle] == fire.getRow() && fireCols[vehicle] == fire.getCol();
+    }
+    
+    /**
+     * @param vehicle
+     * @return <code>true</code> if at the fire currently assigned to, <code>false</code> if not
+     */
+    public boolean isAtFire(final int vehicle) {
+
+        return fireRows[vehicle] != 0 && rows[vehicle] == fireRows[vehicle] && cols[vehicle] == fireCols[vehicle];
+    }
+    
+    /**
+     * Sets the target and the state to {@link Vehicle#STATE_TO_TARGET}.
+     * 
+     * @param vehicle
+     * @param target
+     * @return <code>true</code> if already at the target, <code>false</code> if not
+     */
+    public boolean setTarget(final int vehicle, final Coordinate target) {
+
+        targetRows[vehicle] = target.getRow();
+        targetCols[vehicle] = target.getCol();
+        states[vehicle] = Vehicle.STATE_TO_TARGET;
+        return rows[vehicle] == targetRows[vehicle] && cols[vehicle] == targetCols[vehicle];
+    }
+    
+    /**
+     * Sets the state to {@link Vehicle#STATE_AT_TARGET}.
+     * 
+     * @param vehicle
+     */
+    public void setAtTarget(final int vehicle) {
+
+        states[vehicle] = Vehicle.STATE_AT_TARGET;
+    }
+    
+    /**
+     * Sets the state to {@link Vehicle#STATE_IDLE}.
+     * 
+     * @param vehicle
+     */
+    public void setIdle(final int vehicle) {
+
+        states[vehicle] = Vehicle.STATE_IDLE;
+    }
+    
+    /**
+     * Moves one row and one column (diagonal moves count as one move) towards the target, like
+     * {@link Vehicle#moveTowardsTarget()}.
+     * 
+     * @param vehicle
+     * @return <code>true</code> if at the target after the move, <code>false</code> if not
+     */
+    public boolean moveTowardsTarget(final int vehicle) {
+
+        rows[vehicle] += Integer.signum(targetRows[vehicle] - rows[vehicle]);
+        cols[vehicle] += Integer.signum(targetCols[vehicle] - cols[vehicle]);
+        return rows[vehicle] == targetRows[vehicle] && cols[vehicle] == targetCols[vehicle];
+    }
+    
+    /**
+     * @param vehicle
+     * @return <code>true</code> if accepting new target, <code>false</code> if not
+     */
+    public boolean isAcceptingTarget(final int vehicle) {
+
+        return acceptingTarget[vehicle];
+    }
+    
+    /**
+     * @param vehicle
+     * @param value
+     */
+    public void setAcceptingTarget(final int vehicle, final boolean value) {
+
+        acceptingTarget[vehicle] = value;
+    }
+    
+    /**
+     * @param vehicle
+     * @return <code>true</code> if transporting a casualty, <code>false</code> if not
+     */
+    public boolean isCarryingCasualty(final int vehicle) {
+
+        return carryingCasualty[vehicle];
+    }
+    
+    /**
+     * @param vehicle
+     * @param value
+     */
+    public void setCarryingCasualty(final int vehicle, final boolean value) {
+
+        carryingCasualty[vehicle] = value;
+    }
+    
+    /**
+     * Writes all vehicles for a checkpoint.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    public void write(final DataOutput out) throws IOException {
+
+        out.writeInt(size());
+        for (int v = 0; v < size(); v++) {
+            out.writeInt(rows[v]);
+            out.writeInt(cols[v]);
+            out.writeInt(states[v]);
+            out.writeInt(targetRows[v]);
+            out.writeInt(targetCols[v]);
+            out.writeInt(fireRows[v]);
+            out.writeInt(fireCols[v]);
+            out.writeBoolean(acceptingTarget[v]);
+            out.writeBoolean(carryingCasualty[v]);
+        }
+    }
+    
+    /**
+     * Replaces the vehicles with the ones written by {@link #write(DataOutput)}.
+     * 
+     * @param in
+     * @throws IOException if the number of vehicles differs
+     */
+    public void read(final DataInput in) throws IOException {
+
+        if (in.readInt() != size()) throw new IOException("fleet size differs");
+        for (int v = 0; v < size(); v++) {
+            rows[v] = in.readInt();
+            cols[v] = in.readInt();
+            states[v] = in.readInt();
+            targetRows[v] = in.readInt();
+            targetCols[v] = in.readInt();
+            fireRows[v] = in.readInt();
+            fireCols[v] = in.readInt();
+            acceptingTarget[v] = in.readBoolean();
+            carryingCasualty[v] = in.readBoolean();
+        }
+    }
+}
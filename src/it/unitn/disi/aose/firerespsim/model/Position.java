@@ -127,6 +127,26 @@ public final class Position {
         return row + " " + col;
     }
     
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (!(obj instanceof Position)) return false;
+        final Position other = (Position) obj;
+        return (other.getRow() == getRow() && other.getCol() == getCol()) ? true : false;
+    }
+    
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        return 31 * getRow() + getCol();
+    }
+    
     /**
      * @see java.lang.Object#clone()
      */
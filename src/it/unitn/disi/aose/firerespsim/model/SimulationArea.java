@@ -3,57 +3,90 @@ package it.unitn.disi.aose.firerespsim.model;
 import it.unitn.disi.aose.firerespsim.agents.VehicleAgent;
 import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
 import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
 
 /**
- * Model of the simulation area.
+ * Model of the simulation area. Concrete subclasses implement the storage of the on fire states.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
-public final class SimulationArea {
+public abstract class SimulationArea {
+    
+    /**
+     * Storage type for {@link DenseSimulationArea}.
+     */
+    public static final String STORAGE_DENSE = "dense";
+    /**
+     * Storage type for {@link TiledSimulationArea}.
+     */
+    public static final String STORAGE_TILED = "tiled";
     
     /**
      * Dimensions of the simulation area.
      */
     public AreaDimensions dimensions;
+    
     /**
-     * On fire status of the positions on the area. <code>true</code> stands for on fire, <code>false</code> for not on
-     * fire.
+     * @param dimensions
      */
-    private final boolean[][] onFireStates;
+    protected SimulationArea(final AreaDimensions dimensions) {
+
+        this.dimensions = dimensions;
+    }
     
     /**
      * @param dimensions
+     * @param storage {@link #STORAGE_DENSE} or {@link #STORAGE_TILED}
+     * @return Simulation area with the given storage, <code>null</code> if the storage type is unknown.
      */
-    public SimulationArea(final AreaDimensions dimensions) {
+    public static SimulationArea create(final AreaDimensions dimensions, final String storage) {
 
-        this.dimensions = dimensions;
-        
-        // initialize on fire statuses
-        onFireStates = new boolean[dimensions.getHeight()][dimensions.getWidth()];
-        for (int row = 0; row < dimensions.getHeight(); row++) {
-            for (int col = 0; col < dimensions.getWidth(); col++) {
-                onFireStates[row][col] = false;
-            }
-        }
+        if (STORAGE_DENSE.equals(storage)) return new DenseSimulationArea(dimensions);
+        if (STORAGE_TILED.equals(storage)) return new TiledSimulationArea(dimensions);
+        return null;
     }
     
     /**
      * @param coordinate
      * @return <code>true</code> if on fire, <code>false</code> if not
      */
-    public boolean getOnFireState(final Coordinate coordinate) {
-
-        return onFireStates[coordinate.getRow() - 1][coordinate.getCol() - 1];
-    }
+    public abstract boolean getOnFireState(final Coordinate coordinate);
     
     /**
      * @param coordinate
      * @param state
      */
-    public void setOnFireState(final Coordinate coordinate, final boolean state) {
-
-        onFireStates[coordinate.getRow() - 1][coordinate.getCol() - 1] = state;
-    }
+    public abstract void setOnFireState(final Coordinate coordinate, final boolean state);
+    
+    /**
+     * Reads the on fire states of a rectangular region in a single pass. The region must lie within the area.
+     * 
+     * @param coordinate Upper left corner of the region.
+     * @param width Number of columns of the region.
+     * @param height Number of rows of the region.
+     * @return On fire states in row-major order, set bits stand for on fire.
+     */
+    public abstract BitSet getOnFireStates(final Coordinate coordinate, final int width, final int height);
+    
+    /**
+     * @return Coordinates of all positions on fire. Takes time proportional to the number of positions on fire.
+     */
+    public abstract List<Coordinate> getOnFireCoordinates();
+    
+    /**
+     * @return Number of positions that are not on fire.
+     */
+    public abstract long getNumFreeCells();
+    
+    /**
+     * Picks a random position that is not on fire.
+     * 
+     * @param random Random stream to draw from.
+     * @return Coordinate of the position, <code>null</code> if all positions are on fire.
+     */
+    public abstract Coordinate getRandomFreeCoordinate(final Random random);
     
     /**
      * Calculates the distance of two coordinates on the simulation area in number of moves necessary for a
@@ -0,0 +1,268 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spatial index of items (fires, stations, vehicles, ...) on the simulation area. Uses a uniform grid of square cells,
+ * so positions can be updated incrementally and nearest and range queries only look at the cells around the queried
+ * coordinate. Distances are {@link SimulationArea#getDistance(Coordinate, Coordinate)} (Chebyshev) distances. Not
+ * thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ * @param <T> Type of the indexed items. Must implement {@link Object#equals(Object)} and {@link Object#hashCode()}.
+ */
+public final class SpatialIndex<T> {
+    
+    /**
+     * Default number of rows and columns per grid cell.
+     */
+    public static final int DEFAULT_CELL_SIZE = 16;
+    
+    private final int cellSize;
+    /**
+     * Items per grid cell, indexed by {@link #getCellKey(int, int)}.
+     */
+    private final Map<Long, Set<T>> cells = new HashMap<Long, Set<T>>();
+    /**
+     * Current coordinate of every item.
+     */
+    private final Map<T, Coordinate> coordinates = new HashMap<T, Coordinate>();
+    
+    /**
+     * Creates an index with {@link #DEFAULT_CELL_SIZE}.
+     */
+    public SpatialIndex() {
+
+        this(DEFAULT_CELL_SIZE);
+    }
+    
+    /**
+     * @param cellSize Rows and columns per grid cell. Should be about the typical query distance.
+     */
+    public SpatialIndex(final int cellSize) {
+
+        this.cellSize = cellSize;
+    }
+    
+    /**
+     * @param cellRow
+     * @param cellCol
+     * @return Key of the grid cell.
+     */
+    private static long getCellKey(final int cellRow, final int cellCol) {
+
+        return ((long) cellRow << 32) | (cellCol & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * @param coord
+     * @return Grid row of the coordinate.
+     */
+    private int getCellRow(final Coordinate coord) {
+
+        return (int) Math.floor((coord.getRow() - 1) / (double) cellSize);
+    }
+    
+    /**
+     * @param coord
+     * @return Grid column of the coordinate.
+     */
+    private int getCellCol(final Coordinate coord) {
+
+        return (int) Math.floor((coord.getCol() - 1) / (double) cellSize);
+    }
+    
+    /**
+     * Adds an item or moves it to a new coordinate.
+     * 
+     * @param item
+     * @param coord
+     */
+    public void put(final T item, final Coordinate coord) {
+
+        final Coordinate oldCoord = coordinates.get(item);
+        if (oldCoord != null) {
+            if (oldCoord.equals(coord)) return;
+            if (getCellRow(oldCoord) == getCellRow(coord) && getCellCol(oldCoord) == getCellCol(coord)) {
+                // same cell, only update coordinate
+                coordinates.put(item, coord.clone());
+                return;
+            }
+            remove(item);
+        }
+        coordinates.put(item, coord.clone());
+        final long key = getCellKey(getCellRow(coord), getCellCol(coord));
+        Set<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new LinkedHashSet<T>();
+            cells.put(key, cell);
+        }
+        cell.add(item);
+    }
+    
+    /**
+     * @param item
+     * @return <code>true</code> if the item was indexed, <code>false</code> if not
+     */
+    public boolean remove(final T item) {
+
+        final Coordinate coord = coordinates.remove(item);
+        if (coord == null) return false;
+        final long key = getCellKey(getCellRow(coord), getCellCol(coord));
+        final Set<T> cell = cells.get(key);
+        cell.remove(item);
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+        return true;
+    }
+    
+    /**
+     * @param item
+     * @return Coordinate of the item, <code>null</code> if not indexed.
+     */
+    public Coordinate get(final T item) {
+
+        return coordinates.get(item);
+    }
+    
+    /**
+     * @param item
+     * @return <code>true</code> if the item is indexed, <code>false</code> if not
+     */
+    public boolean contains(final T item) {
+
+        return coordinates.containsKey(item);
+    }
+    
+    /**
+     * @return Number of indexed items.
+     */
+    public int size() {
+
+        return coordinates.size();
+    }
+    
+    /**
+     * Removes all items.
+     */
+    public void clear() {
+
+        cells.clear();
+        coordinates.clear();
+    }
+    
+    /**
+     * @param center
+     * @param distance Maximum distance.
+     * @return Items within the distance of the center, ordered by distance.
+     */
+    public List<T> getInRange(final Coordinate center, final int distance) {
+
+        final List<T> items = new ArrayList<T>();
+        final int firstCellRow = (int) Math.floor((center.getRow() - 1 - distance) / (double) cellSize);
+        final int lastCellRow = (int) Math.floor((center.getRow() - 1 + distance) / (double) cellSize);
+        final int firstCellCol = (int) Math.floor((center.getCol() - 1 - distance) / (double) cellSize);
+        final int lastCellCol = (int) Math.floor((center.getCol() - 1 + distance) / (double) cellSize);
+        if ((long) (lastCellRow - firstCellRow + 1) * (lastCellCol - firstCellCol + 1) > cells.size()) {
+            // range covers more cells than are occupied
+            for (final Set<T> cell : cells.values()) {
+                addInRange(items, cell, center, distance);
+            }
+        } else {
+            for (int cellRow = firstCellRow; cellRow <= lastCellRow; cellRow++) {
+                for (int cellCol = firstCellCol; cellCol <= lastCellCol; cellCol++) {
+                    final Set<T> cell = cells.get(getCellKey(cellRow, cellCol));
+                    if (cell != null) {
+                        addInRange(items, cell, center, distance);
+                    }
+                }
+            }
+        }
+        sortByDistance(items, center);
+        return items;
+    }
+    
+    /**
+     * @param items
+     * @param cell
+     * @param center
+     * @param distance
+     */
+    private void addInRange(final List<T> items, final Set<T> cell, final Coordinate center, final int distance) {
+
+        for (final T item : cell) {
+            if (SimulationArea.getDistance(center, coordinates.get(item)) <= distance) {
+                items.add(item);
+            }
+        }
+    }
+    
+    /**
+     * Searches the grid cells ring by ring around the center until the nearest items are found.
+     * 
+     * @param center
+     * @param k Maximum number of items.
+     * @return The (up to) <code>k</code> items nearest to the center, ordered by distance.
+     */
+    public List<T> getNearest(final Coordinate center, final int k) {
+
+        final List<T> items = new ArrayList<T>();
+        if (k < 1 || coordinates.isEmpty()) return items;
+        final int centerCellRow = getCellRow(center);
+        final int centerCellCol = getCellCol(center);
+        int seen = 0;
+        for (int ring = 0; seen < coordinates.size(); ring++) {
+            // items of the cells in this ring
+            for (int cellRow = centerCellRow - ring; cellRow <= centerCellRow + ring; cellRow++) {
+                final boolean edgeRow = (cellRow == centerCellRow - ring || cellRow == centerCellRow + ring);
+                for (int cellCol = centerCellCol - ring; cellCol <= centerCellCol + ring; cellCol += edgeRow ? 1
+                                                                                                             : 2 * ring) {
+                    final Set<T> cell = cells.get(getCellKey(cellRow, cellCol));
+                    if (cell != null) {
+                        items.addAll(cell);
+                        seen += cell.size();
+                    }
+                    if (ring == 0) {
+                        break;
+                    }
+                }
+            }
+            if (items.size() < k) {
+                continue;
+            }
+            // items outside the searched rings are farther away than ring * cell size
+            sortByDistance(items, center);
+            if (SimulationArea.getDistance(center, coordinates.get(items.get(k - 1))) <= ring * cellSize) {
+                break;
+            }
+        }
+        sortByDistance(items, center);
+        return (items.size() > k) ? new ArrayList<T>(items.subList(0, k)) : items;
+    }
+    
+    /**
+     * @param items
+     * @param center
+     */
+    private void sortByDistance(final List<T> items, final Coordinate center) {
+
+        Collections.sort(items, new Comparator<T>() {
+            
+            @Override
+            public int compare(final T item1, final T item2) {
+
+                return SimulationArea.getDistance(center, coordinates.get(item1)) -
+                       SimulationArea.getDistance(center, coordinates.get(item2));
+            }
+        });
+    }
+}
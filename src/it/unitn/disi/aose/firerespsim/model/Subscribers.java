@@ -9,11 +9,11 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Model of the subscribers to a subscription service.
+ * Model of the subscribers to a subscription service. Can be extended to react on new subscriptions.
  * 
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
-public final class Subscribers implements SubscriptionManager {
+public class Subscribers implements SubscriptionManager {
     
     /**
      * Subscriptions
@@ -0,0 +1,209 @@
+package it.unitn.disi.aose.firerespsim.model;
+
+import it.unitn.disi.aose.firerespsim.ontology.AreaDimensions;
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Map.Entry;
+
+/**
+ * Simulation area for very large areas where only few positions are on fire. The area is divided into square tiles of
+ * {@link #TILE_SIZE} positions. Only the tiles with at least one position on fire are stored, as packed bitsets.
+ * Memory usage is proportional to the number of tiles on fire instead of the area size.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class TiledSimulationArea extends SimulationArea {
+    
+    /**
+     * Rows and columns per tile. One tile row fits in a <code>long</code>.
+     */
+    private static final int TILE_SIZE = 64;
+    /**
+     * Number of random draws before {@link #getRandomFreeCoordinate()} falls back to a scan.
+     */
+    private static final int MAX_RANDOM_DRAWS = 64;
+    
+    /**
+     * Tiles with at least one position on fire, indexed by {@link #getTileKey(int, int)}. Each tile holds one
+     * <code>long</code> per row, bit <code>n</code> stands for column <code>n</code> of the tile.
+     */
+    private final Map<Long, long[]> tiles = new HashMap<Long, long[]>();
+    /**
+     * Number of positions on fire.
+     */
+    private long numOnFire = 0;
+    
+    /**
+     * @param dimensions
+     */
+    public TiledSimulationArea(final AreaDimensions dimensions) {
+
+        super(dimensions);
+    }
+    
+    /**
+     * @param row Zero based row.
+     * @param col Zero based column.
+     * @return Key of the tile containing the position.
+     */
+    private static long getTileKey(final int row, final int col) {
+
+        return ((long) (row / TILE_SIZE) << 32) | (col / TILE_SIZE);
+    }
+    
+    /**
+     * @param row Zero based row.
+     * @param col Zero based column.
+     * @return <code>true</code> if on fire, <code>false</code> if not
+     */
+    private boolean get(final int row, final int col) {
+
+        final long[] tile = tiles.get(getTileKey(row, col));
+        return tile != null && (tile[row % TILE_SIZE] & (1L << (col % TILE_SIZE))) != 0;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireState(it.unitn.disi.aose.firerespsim.ontology.Coordinate)
+     */
+    @Override
+    public boolean getOnFireState(final Coordinate coordinate) {
+
+        return get(coordinate.getRow() - 1, coordinate.getCol() - 1);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#setOnFireState(it.unitn.disi.aose.firerespsim.ontology.Coordinate,
+     *      boolean)
+     */
+    @Override
+    public void setOnFireState(final Coordinate coordinate, final boolean state) {
+
+        final int row = coordinate.getRow() - 1;
+        final int col = coordinate.getCol() - 1;
+        final long key = getTileKey(row, col);
+        long[] tile = tiles.get(key);
+        final long bit = 1L << (col % TILE_SIZE);
+        if (state) {
+            if (tile == null) {
+                tile = new long[TILE_SIZE];
+                tiles.put(key, tile);
+            } else if ((tile[row % TILE_SIZE] & bit) != 0) return;
+            tile[row % TILE_SIZE] |= bit;
+            numOnFire++;
+        } else {
+            if (tile == null || (tile[row % TILE_SIZE] & bit) == 0) return;
+            tile[row % TILE_SIZE] &= ~bit;
+            numOnFire--;
+            
+            // drop the tile if nothing on it is on fire anymore
+            for (final long tileRow : tile) {
+                if (tileRow != 0) return;
+            }
+            tiles.remove(key);
+        }
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireStates(it.unitn.disi.aose.firerespsim.ontology.Coordinate,
+     *      int, int)
+     */
+    @Override
+    public BitSet getOnFireStates(final Coordinate coordinate, final int width, final int height) {
+
+        final BitSet states = new BitSet(width * height);
+        if (tiles.isEmpty()) return states;
+        final int firstRow = coordinate.getRow() - 1;
+        final int firstCol = coordinate.getCol() - 1;
+        for (int row = firstRow; row < firstRow + height; row++) {
+            // walk the row tile by tile
+            int col = firstCol;
+            while (col < firstCol + width) {
+                final int tileEnd = Math.min((col / TILE_SIZE + 1) * TILE_SIZE, firstCol + width);
+                final long[] tile = tiles.get(getTileKey(row, col));
+                if (tile != null) {
+                    final long tileRow = tile[row % TILE_SIZE];
+                    for (int c = col; c < tileEnd; c++) {
+                        if ((tileRow & (1L << (c % TILE_SIZE))) != 0) {
+                            states.set((row - firstRow) * width + c - firstCol);
+                        }
+                    }
+                }
+                col = tileEnd;
+            }
+        }
+        return states;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getOnFireCoordinates()
+     */
+    @Override
+    public List<Coordinate> getOnFireCoordinates() {
+
+        final List<Coordinate> coords = new ArrayList<Coordinate>((int) Math.min(numOnFire, Integer.MAX_VALUE));
+        for (final Entry<Long, long[]> tile : tiles.entrySet()) {
+            final int firstRow = (int) (tile.getKey() >>> 32) * TILE_SIZE;
+            final int firstCol = (int) (tile.getKey() & 0xFFFFFFFFL) * TILE_SIZE;
+            for (int r = 0; r < TILE_SIZE; r++) {
+                long tileRow = tile.getValue()[r];
+                while (tileRow != 0) {
+                    final int c = Long.numberOfTrailingZeros(tileRow);
+                    coords.add(new Coordinate(firstRow + r + 1, firstCol + c + 1));
+                    tileRow &= tileRow - 1;
+                }
+            }
+        }
+        return coords;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getNumFreeCells()
+     */
+    @Override
+    public long getNumFreeCells() {
+
+        return (long) dimensions.getWidth() * dimensions.getHeight() - numOnFire;
+    }
+    
+    /**
+     * Draws random positions until one is not on fire, which takes few draws as long as the area is sparsely on fire.
+     * Falls back to a scan from a random position after {@link #MAX_RANDOM_DRAWS} draws.
+     * 
+     * @see it.unitn.disi.aose.firerespsim.model.SimulationArea#getRandomFreeCoordinate(java.util.Random)
+     */
+    @Override
+    public Coordinate getRandomFreeCoordinate(final Random random) {
+
+        if (getNumFreeCells() == 0) return null;
+        final int width = dimensions.getWidth();
+        final int height = dimensions.getHeight();
+        for (int i = 0; i < MAX_RANDOM_DRAWS; i++) {
+            final int row = random.nextInt(height);
+            final int col = random.nextInt(width);
+            if (!get(row, col)) return new Coordinate(row + 1, col + 1);
+        }
+        
+        // scan row by row, skipping tiles that are not stored (nothing on fire there)
+        int row = random.nextInt(height);
+        int col = 0;
+        while (true) {
+            final long[] tile = tiles.get(getTileKey(row, col));
+            if (tile == null) return new Coordinate(row + 1, col + 1);
+            final int tileEnd = Math.min((col / TILE_SIZE + 1) * TILE_SIZE, width);
+            final long tileRow = tile[row % TILE_SIZE];
+            for (int c = col; c < tileEnd; c++) {
+                if ((tileRow & (1L << (c % TILE_SIZE))) == 0) return new Coordinate(row + 1, c + 1);
+            }
+            col = tileEnd;
+            if (col == width) {
+                col = 0;
+                row = (row + 1) % height;
+            }
+        }
+    }
+}
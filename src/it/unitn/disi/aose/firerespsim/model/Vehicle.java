@@ -97,6 +97,26 @@ public final class Vehicle {
         acceptingTarget.set(value);
     }
     
+    /**
+     * Moves one row and one column (diagonal moves count as one move) towards the {@link #target}.
+     * 
+     * @return <code>true</code> if at the target after the move, <code>false</code> if not
+     */
+    public boolean moveTowardsTarget() {
+
+        if (position.getRow() > target.getRow()) {
+            position.decreaseRow(1);
+        } else if (position.getRow() < target.getRow()) {
+            position.increaseRow(1);
+        }
+        if (position.getCol() > target.getCol()) {
+            position.decreaseCol(1);
+        } else if (position.getCol() < target.getCol()) {
+            position.increaseCol(1);
+        }
+        return position.equals(target);
+    }
+    
     /**
      * @return {@link VehicleStatus}
      */
@@ -63,4 +63,13 @@ public final class AreaDimensions implements Concept {
 
         this.height = height;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public AreaDimensions clone() {
+
+        return new AreaDimensions(width, height);
+    }
 }
@@ -1,15 +1,16 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class AreaDimensionsInfo implements Predicate {
+public final class AreaDimensionsInfo implements CloneablePredicate {
     
     private AreaDimensions areaDimensions;
+    private int shardRows = 1;
+    private int shardCols = 1;
     
     /**
      * Constructor for bean instantiation.
@@ -27,6 +28,18 @@ public final class AreaDimensionsInfo implements Predicate {
         this.areaDimensions = areaDimensions;
     }
     
+    /**
+     * @param areaDimensions
+     * @param shardRows
+     * @param shardCols
+     */
+    public AreaDimensionsInfo(final AreaDimensions areaDimensions, final int shardRows, final int shardCols) {
+
+        this.areaDimensions = areaDimensions;
+        this.shardRows = shardRows;
+        this.shardCols = shardCols;
+    }
+    
     /**
      * @return Dimensions of the simulation area.
      */
@@ -43,4 +56,45 @@ public final class AreaDimensionsInfo implements Predicate {
 
         this.areaDimensions = areaDimensions;
     }
+    
+    /**
+     * @return Number of shard rows the area is partitioned into.
+     */
+    public int getShardRows() {
+
+        return shardRows;
+    }
+    
+    /**
+     * @param shardRows
+     */
+    public void setShardRows(final int shardRows) {
+
+        this.shardRows = shardRows;
+    }
+    
+    /**
+     * @return Number of shard columns the area is partitioned into.
+     */
+    public int getShardCols() {
+
+        return shardCols;
+    }
+    
+    /**
+     * @param shardCols
+     */
+    public void setShardCols(final int shardCols) {
+
+        this.shardCols = shardCols;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public AreaDimensionsInfo clone() {
+
+        return new AreaDimensionsInfo(areaDimensions.clone(), shardRows, shardCols);
+    }
 }
@@ -0,0 +1,92 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.onto.annotations.Slot;
+
+/**
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class ArmFireRequest implements CloneablePredicate {
+    
+    private Coordinate coordinate;
+    private int intensityIncrease;
+    private int casualtiesIncrease;
+    
+    /**
+     * Constructor for bean instantiation.
+     */
+    public ArmFireRequest() {
+
+    // empty
+    }
+    
+    /**
+     * @param coordinate
+     * @param intensityIncrease
+     * @param casualtiesIncrease
+     */
+    public ArmFireRequest(final Coordinate coordinate, final int intensityIncrease, final int casualtiesIncrease) {
+
+        this.coordinate = coordinate;
+        this.intensityIncrease = intensityIncrease;
+        this.casualtiesIncrease = casualtiesIncrease;
+    }
+    
+    /**
+     * @return Fire position.
+     */
+    @Slot(mandatory = true)
+    public Coordinate getCoordinate() {
+
+        return coordinate;
+    }
+    
+    /**
+     * @param coordinate
+     */
+    public void setCoordinate(final Coordinate coordinate) {
+
+        this.coordinate = coordinate;
+    }
+    
+    /**
+     * @return Intensity increase per increase interval.
+     */
+    public int getIntensityIncrease() {
+
+        return intensityIncrease;
+    }
+    
+    /**
+     * @param intensityIncrease
+     */
+    public void setIntensityIncrease(final int intensityIncrease) {
+
+        this.intensityIncrease = intensityIncrease;
+    }
+    
+    /**
+     * @return Casualties increase per increase interval.
+     */
+    public int getCasualtiesIncrease() {
+
+        return casualtiesIncrease;
+    }
+    
+    /**
+     * @param casualtiesIncrease
+     */
+    public void setCasualtiesIncrease(final int casualtiesIncrease) {
+
+        this.casualtiesIncrease = casualtiesIncrease;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public ArmFireRequest clone() {
+
+        return new ArmFireRequest(coordinate.clone(), intensityIncrease, casualtiesIncrease);
+    }
+}
@@ -0,0 +1,483 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.abs.AbsConcept;
+import jade.content.abs.AbsContentElement;
+import jade.content.abs.AbsObject;
+import jade.content.abs.AbsPredicate;
+import jade.content.abs.AbsPrimitive;
+import jade.content.abs.AbsTerm;
+import jade.content.lang.ByteArrayCodec;
+import jade.content.onto.Ontology;
+import jade.content.onto.OntologyException;
+import jade.content.schema.ObjectSchema;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary content language for the ontology. An object is encoded as the index of its schema in the sorted
+ * names of the ontology elements, followed by its slots in name order, so the encoding doesn't depend on the slot order
+ * of the JVM. Integers are zig-zag varints, so a {@link Coordinate} takes 3 to 5 bytes instead of about 40 SL
+ * characters, and decoding reads the bytes without parsing strings. Both sides need the same ontology.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class BinaryCodec extends ByteArrayCodec {
+    
+    /**
+     * Name of the language, negotiated through the language slot of the messages.
+     */
+    public static final String NAME = "fire-response-binary";
+    
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int STRING = 7;
+    private static final int DATE = 8;
+    private static final int BYTES = 9;
+    private static final int OBJECT = 10;
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private transient ElementIndex elementIndex = null;
+    
+    /**
+     * Constructor.
+     */
+    public BinaryCodec() {
+
+        super(NAME);
+    }
+    
+    /**
+     * @see jade.content.lang.ByteArrayCodec#encode(jade.content.abs.AbsContentElement)
+     */
+    @Override
+    public byte[] encode(final AbsContentElement content) throws CodecException {
+
+        throw new CodecException("ontology required");
+    }
+    
+    /**
+     * @see jade.content.lang.ByteArrayCodec#encode(jade.content.onto.Ontology, jade.content.abs.AbsContentElement)
+     */
+    @Override
+    public byte[] encode(final Ontology ontology, final AbsContentElement content) throws CodecException {
+
+        final Output out = new Output();
+        writeObject(out, getElementIndex(ontology), content);
+        return out.toByteArray();
+    }
+    
+    /**
+     * @see jade.content.lang.ByteArrayCodec#decode(byte[])
+     */
+    @Override
+    public AbsContentElement decode(final byte[] content) throws CodecException {
+
+        throw new CodecException("ontology required");
+    }
+    
+    /**
+     * @see jade.content.lang.ByteArrayCodec#decode(jade.content.onto.Ontology, byte[])
+     */
+    @Override
+    public AbsContentElement decode(final Ontology ontology, final byte[] content) throws CodecException {
+
+        if (content == null) throw new CodecException("no content");
+        final Input in = new Input(content);
+        final AbsObject abs;
+        try {
+            abs = readObject(in, getElementIndex(ontology));
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            throw new CodecException("truncated content");
+        }
+        if (!(abs instanceof AbsContentElement)) throw new CodecException("content is no content element");
+        if (in.pos != content.length) throw new CodecException("trailing content");
+        return (AbsContentElement) abs;
+    }
+    
+    /**
+     * @param ontology
+     * @return Index of the ontology elements, created once per ontology.
+     */
+    private synchronized ElementIndex getElementIndex(final Ontology ontology) {
+
+        if (elementIndex == null || elementIndex.ontology != ontology) {
+            elementIndex = new ElementIndex(ontology);
+        }
+        return elementIndex;
+    }
+    
+    /**
+     * @param out
+     * @param index
+     * @param abs
+     * @throws CodecException
+     */
+    private static void writeObject(final Output out, final ElementIndex index, final AbsObject abs)
+            throws CodecException {
+
+        if (abs == null) {
+            out.write(NULL);
+            return;
+        }
+        switch (abs.getAbsType()) {
+            case AbsObject.ABS_PRIMITIVE:
+                writePrimitive(out, ((AbsPrimitive) abs).getObject());
+                return;
+            case AbsObject.ABS_PREDICATE:
+            case AbsObject.ABS_CONCEPT:
+            case AbsObject.ABS_AGENT_ACTION:
+                out.write(OBJECT);
+                final String typeName = abs.getTypeName();
+                final Integer i = index.indices.get(typeName);
+                if (i == null) {
+                    // not an own element of the ontology, e.g. of the basic ontology
+                    out.writeVarint(0);
+                    out.writeString(typeName);
+                } else {
+                    out.writeVarint(i + 1);
+                }
+                for (final String slot : index.getSlotNames(typeName)) {
+                    writeObject(out, index, abs.getAbsObject(slot));
+                }
+                return;
+            default:
+                throw new CodecException("unsupported object " + abs.getClass().getSimpleName());
+        }
+    }
+    
+    /**
+     * @param out
+     * @param value
+     * @throws CodecException
+     */
+    private static void writePrimitive(final Output out, final Object value) throws CodecException {
+
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write(((Boolean) value) ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.write(INTEGER);
+            out.writeVarint(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarint(zigZag((Long) value));
+        } else if (value instanceof Float) {
+            out.write(FLOAT);
+            out.writeFixed(Float.floatToIntBits((Float) value), 4);
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeFixed(Double.doubleToLongBits((Double) value), 8);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Date) {
+            out.write(DATE);
+            out.writeVarint(zigZag(((Date) value).getTime()));
+        } else if (value instanceof byte[]) {
+            out.write(BYTES);
+            out.writeBytes((byte[]) value);
+        } else {
+            throw new CodecException("unsupported primitive " + value.getClass().getSimpleName());
+        }
+    }
+    
+    /**
+     * @param in
+     * @param index
+     * @return Decoded object, <code>null</code> for an absent slot.
+     * @throws CodecException
+     */
+    private static AbsObject readObject(final Input in, final ElementIndex index) throws CodecException {
+
+        final int tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return AbsPrimitive.wrap(false);
+            case TRUE:
+                return AbsPrimitive.wrap(true);
+            case INTEGER:
+                return AbsPrimitive.wrap((int) unZigZag(in.readVarint()));
+            case LONG:
+                return AbsPrimitive.wrap(unZigZag(in.readVarint()));
+            case FLOAT:
+                return AbsPrimitive.wrap(Float.intBitsToFloat((int) in.readFixed(4)));
+            case DOUBLE:
+                return AbsPrimitive.wrap(Double.longBitsToDouble(in.readFixed(8)));
+            case STRING:
+                return AbsPrimitive.wrap(in.readString());
+            case DATE:
+                return AbsPrimitive.wrap(new Date(unZigZag(in.readVarint())));
+            case BYTES:
+                return AbsPrimitive.wrap(in.readBytes());
+            case OBJECT:
+                final int i = (int) in.readVarint();
+                if (i > index.names.length) throw new CodecException("unknown element " + i);
+                final String typeName = (i == 0) ? in.readString() : index.names[i - 1];
+                final AbsObject abs;
+                try {
+                    final ObjectSchema schema = index.ontology.getSchema(typeName);
+                    if (schema == null) throw new CodecException("unknown element " + typeName);
+                    abs = schema.newInstance();
+                } catch (final OntologyException e) {
+                    throw new CodecException("unknown element " + typeName, e);
+                }
+                for (final String slot : index.getSlotNames(typeName)) {
+                    final AbsObject value = readObject(in, index);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (abs instanceof AbsPredicate) {
+                        ((AbsPredicate) abs).set(slot, value);
+                    } else if (abs instanceof AbsConcept && value instanceof AbsTerm) {
+                        ((AbsConcept) abs).set(slot, (AbsTerm) value);
+                    } else {
+                        throw new CodecException("unsupported slot " + typeName + "." + slot);
+                    }
+                }
+                return abs;
+            default:
+                throw new CodecException("unknown tag " + tag);
+        }
+    }
+    
+    /**
+     * @param value
+     * @return Zig-zag encoding of the value, small for small negative values as well.
+     */
+    private static long zigZag(final long value) {
+
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    /**
+     * @param value
+     * @return Decoded zig-zag encoding.
+     */
+    private static long unZigZag(final long value) {
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Sorted names of the own elements of an ontology and their slots.
+     */
+    private static final class ElementIndex {
+        
+        final Ontology ontology;
+        final String[] names;
+        final Map<String, Integer> indices = new HashMap<String, Integer>();
+        private final Map<String, String[]> slotNames = new ConcurrentHashMap<String, String[]>();
+        
+        /**
+         * @param ontology
+         */
+        @SuppressWarnings("unchecked")
+        ElementIndex(final Ontology ontology) {
+
+            this.ontology = ontology;
+            final List<String> list = new ArrayList<String>();
+            list.addAll(ontology.getOwnPredicateNames());
+            list.addAll(ontology.getOwnConceptNames());
+            list.addAll(ontology.getOwnActionNames());
+            Collections.sort(list);
+            names = list.toArray(new String[list.size()]);
+            for (int i = 0; i < names.length; i++) {
+                indices.put(names[i], i);
+            }
+        }
+        
+        /**
+         * @param typeName
+         * @return Sorted slot names of the element.
+         * @throws CodecException
+         */
+        String[] getSlotNames(final String typeName) throws CodecException {
+
+            String[] slots = slotNames.get(typeName);
+            if (slots == null) {
+                try {
+                    final ObjectSchema schema = ontology.getSchema(typeName);
+                    if (schema == null) throw new CodecException("unknown element " + typeName);
+                    slots = schema.getNames().clone();
+                } catch (final OntologyException e) {
+                    throw new CodecException("unknown element " + typeName, e);
+                }
+                Arrays.sort(slots);
+                slotNames.put(typeName, slots);
+            }
+            return slots;
+        }
+    }
+    
+    /**
+     * Growing byte buffer.
+     */
+    private static final class Output {
+        
+        private byte[] bytes = new byte[32];
+        private int length = 0;
+        
+        Output() {
+
+        // nothing to initialize
+        }
+        
+        /**
+         * @param b
+         */
+        void write(final int b) {
+
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = (byte) b;
+        }
+        
+        /**
+         * @param value Written in 7 bit groups, the lowest first.
+         */
+        void writeVarint(final long value) {
+
+            long rest = value;
+            while ((rest & ~0x7FL) != 0) {
+                write((int) (rest & 0x7F) | 0x80);
+                rest >>>= 7;
+            }
+            write((int) rest);
+        }
+        
+        /**
+         * @param value
+         * @param numBytes Number of bytes to write, the highest first.
+         */
+        void writeFixed(final long value, final int numBytes) {
+
+            for (int shift = 8 * (numBytes - 1); shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+        
+        /**
+         * @param value
+         */
+        void writeBytes(final byte[] value) {
+
+            writeVarint(value.length);
+            for (final byte b : value) {
+                write(b);
+            }
+        }
+        
+        /**
+         * @param value
+         */
+        void writeString(final String value) {
+
+            writeBytes(value.getBytes(UTF8));
+        }
+        
+        /**
+         * @return Written bytes.
+         */
+        byte[] toByteArray() {
+
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+    
+    /**
+     * Reader of a byte array.
+     */
+    private static final class Input {
+        
+        private final byte[] bytes;
+        int pos = 0;
+        
+        /**
+         * @param bytes
+         */
+        Input(final byte[] bytes) {
+
+            this.bytes = bytes;
+        }
+        
+        /**
+         * @return Next byte.
+         */
+        int read() {
+
+            return bytes[pos++] & 0xFF;
+        }
+        
+        /**
+         * @return Next varint.
+         * @throws CodecException
+         */
+        long readVarint() throws CodecException {
+
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new CodecException("malformed varint");
+        }
+        
+        /**
+         * @param numBytes
+         * @return Next fixed size value.
+         */
+        long readFixed(final int numBytes) {
+
+            long value = 0;
+            for (int i = 0; i < numBytes; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+        
+        /**
+         * @return Next byte array.
+         * @throws CodecException
+         */
+        byte[] readBytes() throws CodecException {
+
+            final int length = (int) readVarint();
+            if (length < 0 || length > bytes.length - pos) throw new CodecException("truncated content");
+            final byte[] value = Arrays.copyOfRange(bytes, pos, pos + length);
+            pos += length;
+            return value;
+        }
+        
+        /**
+         * @return Next string.
+         * @throws CodecException
+         */
+        String readString() throws CodecException {
+
+            final int length = (int) readVarint();
+            if (length < 0 || length > bytes.length - pos) throw new CodecException("truncated content");
+            final String value = new String(bytes, pos, length, UTF8);
+            pos += length;
+            return value;
+        }
+    }
+}
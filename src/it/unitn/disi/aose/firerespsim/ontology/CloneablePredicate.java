@@ -0,0 +1,17 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.Predicate;
+
+/**
+ * Predicate of the {@link FireResponseOntology} that can be deep copied, so content passed by reference is not shared
+ * between the sender and the receivers of a message.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public interface CloneablePredicate extends Predicate {
+    
+    /**
+     * @return Deep copy of the predicate.
+     */
+    CloneablePredicate clone();
+}
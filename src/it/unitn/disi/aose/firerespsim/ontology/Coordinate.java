@@ -106,6 +106,26 @@ public final class Coordinate implements Concept {
         return row + " " + col;
     }
     
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+
+        if (!(obj instanceof Coordinate)) return false;
+        final Coordinate other = (Coordinate) obj;
+        return (other.row == row && other.col == col) ? true : false;
+    }
+    
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+
+        return 31 * row + col;
+    }
+    
     /**
      * @see java.lang.Object#clone()
      */
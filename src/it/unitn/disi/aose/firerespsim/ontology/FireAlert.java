@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class FireAlert implements Predicate {
+public final class FireAlert implements CloneablePredicate {
     
     private Coordinate fireCoordinate;
     
@@ -43,4 +42,13 @@ public final class FireAlert implements Predicate {
 
         this.fireCoordinate = fireCoordinate;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public FireAlert clone() {
+
+        return new FireAlert(fireCoordinate.clone());
+    }
 }
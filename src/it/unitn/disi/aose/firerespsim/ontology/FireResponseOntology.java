@@ -3,6 +3,12 @@ package it.unitn.disi.aose.firerespsim.ontology;
 import jade.content.onto.BeanOntology;
 import jade.content.onto.BeanOntologyException;
 import jade.content.onto.Ontology;
+import jade.content.onto.OntologyException;
+import jade.content.schema.Facet;
+import jade.content.schema.ObjectSchema;
+import jade.content.schema.PredicateSchema;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.log4j.Logger;
 
 /**
@@ -33,6 +39,39 @@ public final class FireResponseOntology extends BeanOntology {
         } catch (final BeanOntologyException e) {
             logger.error("error adding ontology beans");
         }
+        sortPredicateSlots();
     }
     
+    /**
+     * Sorts the slots of the predicates by name. SL encodes predicate slots by their order, and the bean ontology adds
+     * the slots in hash order of the JVM, so agents in different JVMs would otherwise decode the slots of each other
+     * in a different order. Every predicate schema is replaced by a copy with the same slots and facets, added in
+     * name order.
+     */
+    @SuppressWarnings("unchecked")
+    private void sortPredicateSlots() {
+
+        try {
+            for (final String name : (List<String>) getPredicateNames()) {
+                final PredicateSchema schema = (PredicateSchema) getSchema(name);
+                final String[] slotNames = schema.getNames();
+                Arrays.sort(slotNames);
+                final PredicateSchema sorted = new PredicateSchema(schema.getTypeName());
+                for (final String slotName : slotNames) {
+                    final int optionality = schema.isMandatory(slotName) ? ObjectSchema.MANDATORY
+                                                                         : ObjectSchema.OPTIONAL;
+                    sorted.add(slotName, schema.getSchema(slotName), optionality);
+                    final Facet[] facets = schema.getFacets(slotName);
+                    if (facets != null) {
+                        for (final Facet facet : facets) {
+                            sorted.addFacet(slotName, facet);
+                        }
+                    }
+                }
+                add(sorted, getClassForElement(name));
+            }
+        } catch (final OntologyException e) {
+            logger.error("error sorting predicate slots");
+        }
+    }
 }
@@ -79,4 +79,13 @@ public final class FireStatus implements Concept {
 
         this.casualties = casualties;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public FireStatus clone() {
+
+        return new FireStatus(coordinate.clone(), intensity, casualties);
+    }
 }
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class FireStatusInfo implements Predicate {
+public final class FireStatusInfo implements CloneablePredicate {
     
     private FireStatus fireStatus;
     
@@ -43,4 +42,13 @@ public final class FireStatusInfo implements Predicate {
 
         this.fireStatus = fireStatus;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public FireStatusInfo clone() {
+
+        return new FireStatusInfo(fireStatus.clone());
+    }
 }
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class HandleFireCFP implements Predicate {
+public final class HandleFireCFP implements CloneablePredicate {
     
     private Coordinate coordinate;
     
@@ -43,4 +42,13 @@ public final class HandleFireCFP implements Predicate {
 
         this.coordinate = coordinate;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public HandleFireCFP clone() {
+
+        return new HandleFireCFP(coordinate.clone());
+    }
 }
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class HandleFireProposal implements Predicate {
+public final class HandleFireProposal implements CloneablePredicate {
     
     private int distance;
     private int numVehicles;
@@ -72,4 +71,13 @@ public final class HandleFireProposal implements Predicate {
 
         return "distance: " + distance + ", #vehicles: " + numVehicles;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public HandleFireProposal clone() {
+
+        return new HandleFireProposal(distance, numVehicles);
+    }
 }
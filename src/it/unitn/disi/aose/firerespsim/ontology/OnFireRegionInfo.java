@@ -0,0 +1,185 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.onto.annotations.Slot;
+import java.util.BitSet;
+
+/**
+ * On fire states of a rectangular region of the simulation area. The states are transported as a bitmap (hex string,
+ * one bit per position in row-major order, set bits stand for on fire).
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class OnFireRegionInfo implements CloneablePredicate {
+    
+    private Coordinate coordinate;
+    private int width;
+    private int height;
+    private String bitmap;
+    
+    /**
+     * Decoded {@link #bitmap}.
+     */
+    private transient BitSet states = null;
+    
+    /**
+     * Constructor for bean instantiation.
+     */
+    public OnFireRegionInfo() {
+
+    // empty
+    }
+    
+    /**
+     * @param coordinate
+     * @param width
+     * @param height
+     * @param states On fire states of the region in row-major order.
+     */
+    public OnFireRegionInfo(final Coordinate coordinate, final int width, final int height, final BitSet states) {
+
+        this.coordinate = coordinate;
+        this.width = width;
+        this.height = height;
+        this.states = states;
+        bitmap = encode(states, width * height);
+    }
+    
+    /**
+     * @return Upper left coordinate of the region.
+     */
+    @Slot(mandatory = true)
+    public Coordinate getCoordinate() {
+
+        return coordinate;
+    }
+    
+    /**
+     * @param coordinate
+     */
+    public void setCoordinate(final Coordinate coordinate) {
+
+        this.coordinate = coordinate;
+    }
+    
+    /**
+     * @return Number of columns of the region.
+     */
+    @Slot(mandatory = true)
+    public int getWidth() {
+
+        return width;
+    }
+    
+    /**
+     * @param width
+     */
+    public void setWidth(final int width) {
+
+        this.width = width;
+    }
+    
+    /**
+     * @return Number of rows of the region.
+     */
+    @Slot(mandatory = true)
+    public int getHeight() {
+
+        return height;
+    }
+    
+    /**
+     * @param height
+     */
+    public void setHeight(final int height) {
+
+        this.height = height;
+    }
+    
+    /**
+     * @return On fire states as hex string.
+     */
+    @Slot(mandatory = true)
+    public String getBitmap() {
+
+        return bitmap;
+    }
+    
+    /**
+     * @param bitmap
+     */
+    public void setBitmap(final String bitmap) {
+
+        this.bitmap = bitmap;
+        states = null;
+    }
+    
+    /**
+     * @param row Row on the simulation area.
+     * @param col Column on the simulation area.
+     * @return <code>true</code> if on fire, <code>false</code> if not or outside of the region
+     */
+    public boolean isOnFire(final int row, final int col) {
+
+        final int regionRow = row - coordinate.getRow();
+        final int regionCol = col - coordinate.getCol();
+        if (regionRow < 0 || regionRow >= height || regionCol < 0 || regionCol >= width) return false;
+        if (states == null) {
+            states = decode(bitmap);
+        }
+        return states.get(regionRow * width + regionCol);
+    }
+    
+    /**
+     * @param states
+     * @param length Number of bits to encode.
+     * @return Hex string with four bits per character.
+     */
+    private static String encode(final BitSet states, final int length) {
+
+        final char[] chars = new char[(length + 3) / 4];
+        for (int i = 0; i < chars.length; i++) {
+            int nibble = 0;
+            for (int bit = 0; bit < 4; bit++) {
+                if (states.get(i * 4 + bit)) {
+                    nibble |= 1 << bit;
+                }
+            }
+            chars[i] = Character.forDigit(nibble, 16);
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * @param bitmap Hex string with four bits per character.
+     * @return Decoded bits.
+     */
+    private static BitSet decode(final String bitmap) {
+
+        final BitSet states = new BitSet(bitmap.length() * 4);
+        for (int i = 0; i < bitmap.length(); i++) {
+            final int nibble = Character.digit(bitmap.charAt(i), 16);
+            for (int bit = 0; bit < 4; bit++) {
+                if ((nibble & (1 << bit)) != 0) {
+                    states.set(i * 4 + bit);
+                }
+            }
+        }
+        return states;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OnFireRegionInfo clone() {
+
+        // the bitmap string is immutable, the states get decoded from it
+        final OnFireRegionInfo copy = new OnFireRegionInfo();
+        copy.setCoordinate(coordinate.clone());
+        copy.setWidth(width);
+        copy.setHeight(height);
+        copy.setBitmap(bitmap);
+        return copy;
+    }
+}
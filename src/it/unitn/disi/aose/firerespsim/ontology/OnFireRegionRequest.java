@@ -0,0 +1,94 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.onto.annotations.Slot;
+
+/**
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class OnFireRegionRequest implements CloneablePredicate {
+    
+    private Coordinate coordinate;
+    private int width;
+    private int height;
+    
+    /**
+     * Constructor for bean instantiation.
+     */
+    public OnFireRegionRequest() {
+
+    // empty
+    }
+    
+    /**
+     * @param coordinate
+     * @param width
+     * @param height
+     */
+    public OnFireRegionRequest(final Coordinate coordinate, final int width, final int height) {
+
+        this.coordinate = coordinate;
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * @return Upper left coordinate of the region to check on fire status for.
+     */
+    @Slot(mandatory = true)
+    public Coordinate getCoordinate() {
+
+        return coordinate;
+    }
+    
+    /**
+     * @param coordinate
+     */
+    public void setCoordinate(final Coordinate coordinate) {
+
+        this.coordinate = coordinate;
+    }
+    
+    /**
+     * @return Number of columns of the region.
+     */
+    @Slot(mandatory = true)
+    public int getWidth() {
+
+        return width;
+    }
+    
+    /**
+     * @param width
+     */
+    public void setWidth(final int width) {
+
+        this.width = width;
+    }
+    
+    /**
+     * @return Number of rows of the region.
+     */
+    @Slot(mandatory = true)
+    public int getHeight() {
+
+        return height;
+    }
+    
+    /**
+     * @param height
+     */
+    public void setHeight(final int height) {
+
+        this.height = height;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OnFireRegionRequest clone() {
+
+        return new OnFireRegionRequest(coordinate.clone(), width, height);
+    }
+}
@@ -0,0 +1,74 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.onto.annotations.Slot;
+
+/**
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class OnFireStatusChangeInfo implements CloneablePredicate {
+    
+    private Coordinate coordinate;
+    private boolean status;
+    
+    /**
+     * Constructor for bean instantiation.
+     */
+    public OnFireStatusChangeInfo() {
+
+    // empty
+    }
+    
+    /**
+     * @param coordinate
+     * @param status
+     */
+    public OnFireStatusChangeInfo(final Coordinate coordinate, final boolean status) {
+
+        this.coordinate = coordinate;
+        this.status = status;
+    }
+    
+    /**
+     * @return Coordinate which on fire status changed.
+     */
+    @Slot(mandatory = true)
+    public Coordinate getCoordinate() {
+
+        return coordinate;
+    }
+    
+    /**
+     * @param coordinate
+     */
+    public void setCoordinate(final Coordinate coordinate) {
+
+        this.coordinate = coordinate;
+    }
+    
+    /**
+     * @return New on fire status. <code>true</code> if a fire started, <code>false</code> if a fire ended.
+     */
+    @Slot(mandatory = true)
+    public boolean getStatus() {
+
+        return status;
+    }
+    
+    /**
+     * @param status
+     */
+    public void setStatus(final boolean status) {
+
+        this.status = status;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OnFireStatusChangeInfo clone() {
+
+        return new OnFireStatusChangeInfo(coordinate.clone(), status);
+    }
+}
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class OnFireStatusInfo implements Predicate {
+public final class OnFireStatusInfo implements CloneablePredicate {
     
     private boolean status;
     
@@ -43,4 +42,13 @@ public final class OnFireStatusInfo implements Predicate {
 
         this.status = status;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OnFireStatusInfo clone() {
+
+        return new OnFireStatusInfo(status);
+    }
 }
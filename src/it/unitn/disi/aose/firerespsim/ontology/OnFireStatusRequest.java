@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class OnFireStatusRequest implements Predicate {
+public final class OnFireStatusRequest implements CloneablePredicate {
     
     private Coordinate coordinate;
     
@@ -44,4 +43,12 @@ public final class OnFireStatusRequest implements Predicate {
         this.coordinate = coordinate;
     }
     
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public OnFireStatusRequest clone() {
+
+        return new OnFireStatusRequest(coordinate.clone());
+    }
 }
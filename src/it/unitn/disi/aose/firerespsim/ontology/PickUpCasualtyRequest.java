@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class PickUpCasualtyRequest implements Predicate {
+public final class PickUpCasualtyRequest implements CloneablePredicate {
     
     private Coordinate ambulancePosition;
     
@@ -44,4 +43,12 @@ public final class PickUpCasualtyRequest implements Predicate {
         this.ambulancePosition = ambulancePosition;
     }
     
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public PickUpCasualtyRequest clone() {
+
+        return new PickUpCasualtyRequest(ambulancePosition.clone());
+    }
 }
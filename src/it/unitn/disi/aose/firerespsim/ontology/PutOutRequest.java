@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class PutOutRequest implements Predicate {
+public final class PutOutRequest implements CloneablePredicate {
     
     private Coordinate fireEnginePosition;
     
@@ -44,4 +43,12 @@ public final class PutOutRequest implements Predicate {
         this.fireEnginePosition = fireEnginePosition;
     }
     
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public PutOutRequest clone() {
+
+        return new PutOutRequest(fireEnginePosition.clone());
+    }
 }
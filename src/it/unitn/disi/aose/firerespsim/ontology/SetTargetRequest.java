@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class SetTargetRequest implements Predicate {
+public final class SetTargetRequest implements CloneablePredicate {
     
     private Coordinate target;
     
@@ -44,4 +43,12 @@ public final class SetTargetRequest implements Predicate {
         this.target = target;
     }
     
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public SetTargetRequest clone() {
+
+        return new SetTargetRequest(target.clone());
+    }
 }
@@ -0,0 +1,54 @@
+package it.unitn.disi.aose.firerespsim.ontology;
+
+import jade.content.onto.annotations.Slot;
+
+/**
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+@SuppressWarnings("serial")
+public final class StationPositionInfo implements CloneablePredicate {
+    
+    private Coordinate stationCoordinate;
+    
+    /**
+     * Constructor for bean instantiation.
+     */
+    public StationPositionInfo() {
+
+    // empty
+    }
+    
+    /**
+     * @param stationCoordinate
+     */
+    public StationPositionInfo(final Coordinate stationCoordinate) {
+
+        this.stationCoordinate = stationCoordinate;
+    }
+    
+    /**
+     * @return Coordinate of the station.
+     */
+    @Slot(mandatory = true)
+    public Coordinate getStationCoordinate() {
+
+        return stationCoordinate;
+    }
+    
+    /**
+     * @param stationCoordinate
+     */
+    public void setStationCoordinate(final Coordinate stationCoordinate) {
+
+        this.stationCoordinate = stationCoordinate;
+    }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public StationPositionInfo clone() {
+
+        return new StationPositionInfo(stationCoordinate.clone());
+    }
+}
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class VehiclePositionInfo implements Predicate {
+public final class VehiclePositionInfo implements CloneablePredicate {
     
     private Coordinate vehicleCoordinate;
     
@@ -43,4 +42,13 @@ public final class VehiclePositionInfo implements Predicate {
 
         this.vehicleCoordinate = vehicleCoordinate;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public VehiclePositionInfo clone() {
+
+        return new VehiclePositionInfo(vehicleCoordinate.clone());
+    }
 }
@@ -79,4 +79,14 @@ public final class VehicleStatus implements Concept {
 
         this.fire = fire;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public VehicleStatus clone() {
+
+        return new VehicleStatus((position == null) ? null : position.clone(), state,
+                                 (fire == null) ? null : fire.clone());
+    }
 }
@@ -1,13 +1,12 @@
 package it.unitn.disi.aose.firerespsim.ontology;
 
-import jade.content.Predicate;
 import jade.content.onto.annotations.Slot;
 
 /**
  * @author Thomas Hess (139467) / Musawar Saeed (140053)
  */
 @SuppressWarnings("serial")
-public final class VehicleStatusInfo implements Predicate {
+public final class VehicleStatusInfo implements CloneablePredicate {
     
     private VehicleStatus vehicleStatus;
     
@@ -43,4 +42,13 @@ public final class VehicleStatusInfo implements Predicate {
 
         this.vehicleStatus = vehicleStatus;
     }
+    
+    /**
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public VehicleStatusInfo clone() {
+
+        return new VehicleStatusInfo(vehicleStatus.clone());
+    }
 }
@@ -0,0 +1,471 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import jade.util.leap.Iterator;
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Files of a simulation checkpoint. A checkpoint is taken in rounds, and every round is written into a directory of its
+ * own in the checkpoint directory. Every agent writes its own state into a file named after the agent in the directory
+ * of the round, so the agents of separate container JVMs don't interfere. A file is written to a temporary file first
+ * and then renamed, and starts with the round it belongs to. When all agents wrote their files, the round is committed
+ * by atomically replacing the marker file that names the current round, and the directories of the other rounds are
+ * deleted. Until then the previous round stays the current one, so a round that is interrupted or incomplete leaves the
+ * last complete checkpoint intact. The rounds are numbered on from the newest round in the directory, also after a
+ * restore. When restoring, the agents of a fresh platform read their files of the current round during set-up, every
+ * file only once, so an agent started later under the same name starts fresh.
+ * <p>
+ * The {@link it.unitn.disi.aose.firerespsim.agents.CheckpointAgent} pauses all agents before they write, so the files
+ * of a round are a consistent snapshot of the simulation. The messages that were delivered to an agent but not handled
+ * yet are part of its file.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class Checkpoint {
+    
+    private static final int MAGIC = 0x46524350; // "FRCP"
+    private static final String SUFFIX = ".ckpt";
+    private static final String ROUND_PREFIX = "round-";
+    /**
+     * Name of the marker file holding the current round.
+     */
+    private static final String CURRENT = "current";
+    
+    private static File directory = null;
+    private static boolean restoring = false;
+    /**
+     * Round restored from, -1 if none.
+     */
+    private static int restoredRound = -1;
+    /**
+     * Last round returned by {@link #newRound()}, so discarded rounds are not numbered again.
+     */
+    private static int lastRound = -1;
+    /**
+     * Names of the checkpoint files not restored yet.
+     */
+    private static final Set<String> unrestored = new HashSet<String>();
+    
+    /**
+     * @param dirName Directory of the checkpoint rounds.
+     * @param restore If the agents restore their state from the current round.
+     * @throws IOException if restoring and the files of the current round are not checkpoint files of that round
+     */
+    public static void configure(final String dirName, final boolean restore) throws IOException {
+
+        directory = new File(dirName);
+        restoring = restore;
+        directory.mkdirs();
+        if (!restore) return;
+        restoredRound = getCurrentRound();
+        if (restoredRound < 0) return;
+        for (final File file : getFiles(restoredRound)) {
+            final int fileRound = readRound(file);
+            if (fileRound != restoredRound) {
+                throw new IOException("checkpoint file " + file + " of round " + fileRound + " in round "
+                                      + restoredRound);
+            }
+            unrestored.add(file.getName());
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the agents restore their state, <code>false</code> if not
+     */
+    public static boolean isRestoring() {
+
+        return restoring;
+    }
+    
+    /**
+     * @return Number of a new round, after all rounds in the checkpoint directory.
+     */
+    public static synchronized int newRound() {
+
+        int newest = Math.max(lastRound, getCurrentRound());
+        final File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (final File dir : dirs) {
+                newest = Math.max(newest, getRound(dir));
+            }
+        }
+        lastRound = newest + 1;
+        return lastRound;
+    }
+    
+    /**
+     * Writes the checkpoint file of an agent.
+     * 
+     * @param name Local name of the agent.
+     * @param round Round of the checkpoint.
+     * @param state Serialized state of the agent.
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final String name, final int round, final byte[] state) throws IOException {
+
+        final File file = getFile(round, name);
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("cannot create " + dir);
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        final OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            out.write(new byte[] {(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC,
+                (byte) (round >>> 24), (byte) (round >>> 16), (byte) (round >>> 8), (byte) round});
+            out.write(state);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) throw new IOException("cannot rename " + tmpFile);
+    }
+    
+    /**
+     * Makes a round that all agents wrote the current round and deletes the other rounds.
+     * 
+     * @param round
+     * @throws IOException if the marker file cannot be replaced
+     */
+    public static void commit(final int round) throws IOException {
+
+        final File marker = new File(directory, CURRENT);
+        final File tmpMarker = new File(directory, CURRENT + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpMarker));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(round);
+        } finally {
+            out.close();
+        }
+        Files.move(tmpMarker.toPath(), marker.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        final File[] dirs = directory.listFiles();
+        if (dirs == null) return;
+        for (final File dir : dirs) {
+            final int dirRound = getRound(dir);
+            if (dirRound >= 0 && dirRound != round) {
+                delete(dir);
+            }
+        }
+    }
+    
+    /**
+     * Deletes the files of a round that not all agents wrote. The current round stays as it is.
+     * 
+     * @param round
+     */
+    public static void discard(final int round) {
+
+        if (round != getCurrentRound()) {
+            delete(new File(directory, ROUND_PREFIX + round));
+        }
+    }
+    
+    /**
+     * Opens the checkpoint file of an agent in the current round, positioned after the round. Every file is only
+     * opened once.
+     * 
+     * @param name Local name of the agent.
+     * @return Stream of the serialized state, <code>null</code> if not restoring or the agent has no checkpoint.
+     * @throws IOException if the file is not a checkpoint file
+     */
+    public static DataInputStream read(final String name) throws IOException {
+
+        if (!restoring || restoredRound < 0) return null;
+        final File file = getFile(restoredRound, name);
+        synchronized (unrestored) {
+            if (!unrestored.remove(file.getName())) return null;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        if (in.readInt() != MAGIC) {
+            in.close();
+            throw new IOException(file + " is not a checkpoint file");
+        }
+        in.readInt(); // round, checked by configure
+        return in;
+    }
+    
+    /**
+     * @param out
+     * @param coordinate Can be <code>null</code>.
+     * @throws IOException
+     */
+    public static void writeCoordinate(final DataOutput out, final Coordinate coordinate) throws IOException {
+
+        out.writeInt((coordinate == null) ? 0 : coordinate.getRow());
+        out.writeInt((coordinate == null) ? 0 : coordinate.getCol());
+    }
+    
+    /**
+     * @param in
+     * @return Coordinate written by {@link #writeCoordinate(DataOutput, Coordinate)}, can be <code>null</code>.
+     * @throws IOException
+     */
+    public static Coordinate readCoordinate(final DataInput in) throws IOException {
+
+        final int row = in.readInt();
+        final int col = in.readInt();
+        return (row == 0) ? null : new Coordinate(row, col);
+    }
+    
+    /**
+     * @param out
+     * @param coordinates
+     * @throws IOException
+     */
+    public static void writeCoordinates(final DataOutput out, final Collection<Coordinate> coordinates)
+            throws IOException {
+
+        out.writeInt(coordinates.size());
+        for (final Coordinate coordinate : coordinates) {
+            writeCoordinate(out, coordinate);
+        }
+    }
+    
+    /**
+     * @param in
+     * @param coordinates Collection to add the coordinates written by
+     *            {@link #writeCoordinates(DataOutput, Collection)} to.
+     * @throws IOException
+     */
+    public static void readCoordinates(final DataInput in, final Collection<Coordinate> coordinates)
+            throws IOException {
+
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            coordinates.add(readCoordinate(in));
+        }
+    }
+    
+    /**
+     * Writes a message that was delivered to an agent but not handled yet. The envelope is not written, content passed
+     * by reference must be encoded before.
+     * 
+     * @param out
+     * @param msg
+     * @throws IOException
+     */
+    public static void writeMessage(final DataOutput out, final ACLMessage msg) throws IOException {
+
+        out.writeInt(msg.getPerformative());
+        writeString(out, (msg.getSender() == null) ? null : msg.getSender().getName());
+        final List<String> receivers = new ArrayList<String>();
+        final Iterator iter = msg.getAllReceiver();
+        while (iter.hasNext()) {
+            receivers.add(((AID) iter.next()).getName());
+        }
+        out.writeInt(receivers.size());
+        for (final String receiver : receivers) {
+            writeString(out, receiver);
+        }
+        writeString(out, msg.getProtocol());
+        writeString(out, msg.getConversationId());
+        writeString(out, msg.getInReplyTo());
+        writeString(out, msg.getReplyWith());
+        out.writeLong((msg.getReplyByDate() == null) ? -1 : msg.getReplyByDate().getTime());
+        writeString(out, msg.getLanguage());
+        writeString(out, msg.getOntology());
+        writeString(out, msg.getEncoding());
+        out.writeBoolean(msg.hasByteSequenceContent());
+        if (msg.hasByteSequenceContent()) {
+            final byte[] content = msg.getByteSequenceContent();
+            out.writeInt(content.length);
+            out.write(content);
+        } else {
+            writeString(out, msg.getContent());
+        }
+        final Properties params = msg.getAllUserDefinedParameters();
+        out.writeInt(params.size());
+        for (final String key : params.stringPropertyNames()) {
+            writeString(out, key);
+            writeString(out, params.getProperty(key));
+        }
+    }
+    
+    /**
+     * @param in
+     * @return Message written by {@link #writeMessage(DataOutput, ACLMessage)}.
+     * @throws IOException
+     */
+    public static ACLMessage readMessage(final DataInput in) throws IOException {
+
+        final ACLMessage msg = new ACLMessage(in.readInt());
+        final String sender = readString(in);
+        if (sender != null) {
+            msg.setSender(new AID(sender, AID.ISGUID));
+        }
+        final int numReceivers = in.readInt();
+        for (int i = 0; i < numReceivers; i++) {
+            msg.addReceiver(new AID(readString(in), AID.ISGUID));
+        }
+        msg.setProtocol(readString(in));
+        msg.setConversationId(readString(in));
+        msg.setInReplyTo(readString(in));
+        msg.setReplyWith(readString(in));
+        final long replyBy = in.readLong();
+        if (replyBy >= 0) {
+            msg.setReplyByDate(new Date(replyBy));
+        }
+        msg.setLanguage(readString(in));
+        msg.setOntology(readString(in));
+        msg.setEncoding(readString(in));
+        if (in.readBoolean()) {
+            final byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            msg.setByteSequenceContent(content);
+        } else {
+            msg.setContent(readString(in));
+        }
+        final int numParams = in.readInt();
+        for (int i = 0; i < numParams; i++) {
+            msg.addUserDefinedParameter(readString(in), readString(in));
+        }
+        return msg;
+    }
+    
+    /**
+     * Writes a string of any length, unlike {@link DataOutput#writeUTF(String)}.
+     * 
+     * @param out
+     * @param str Can be <code>null</code>.
+     * @throws IOException
+     */
+    private static void writeString(final DataOutput out, final String str) throws IOException {
+
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    /**
+     * @param in
+     * @return String written by {@link #writeString(DataOutput, String)}, can be <code>null</code>.
+     * @throws IOException
+     */
+    private static String readString(final DataInput in) throws IOException {
+
+        final int length = in.readInt();
+        if (length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+    
+    /**
+     * @return Current round, -1 if no round was committed yet.
+     */
+    private static int getCurrentRound() {
+
+        final File marker = new File(directory, CURRENT);
+        if (!marker.isFile()) return -1;
+        try {
+            final DataInputStream in = new DataInputStream(new FileInputStream(marker));
+            try {
+                return (in.readInt() == MAGIC) ? in.readInt() : -1;
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * @param dir
+     * @return Round of the directory, -1 if it is not the directory of a round.
+     */
+    private static int getRound(final File dir) {
+
+        if (!dir.isDirectory() || !dir.getName().startsWith(ROUND_PREFIX)) return -1;
+        try {
+            return Integer.parseInt(dir.getName().substring(ROUND_PREFIX.length()));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Deletes the directory of a round with its files.
+     * 
+     * @param dir
+     */
+    private static void delete(final File dir) {
+
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+    
+    /**
+     * @param round
+     * @return Checkpoint files of the round.
+     */
+    private static File[] getFiles(final int round) {
+
+        final File[] files = new File(directory, ROUND_PREFIX + round).listFiles(new FileFilter() {
+            
+            @Override
+            public boolean accept(final File file) {
+
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        return (files == null) ? new File[0] : files;
+    }
+    
+    /**
+     * @param file
+     * @return Round of the checkpoint file.
+     * @throws IOException if the file is not a checkpoint file
+     */
+    private static int readRound(final File file) throws IOException {
+
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a checkpoint file");
+            return in.readInt();
+        } catch (final EOFException e) {
+            throw new IOException(file + " is not a checkpoint file");
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * @param round
+     * @param name Local name of the agent.
+     * @return Checkpoint file of the agent in the round.
+     */
+    private static File getFile(final int round, final String name) {
+
+        return new File(new File(directory, ROUND_PREFIX + round), name.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+    }
+}
@@ -0,0 +1,129 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.util.leap.List;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Message queue of an agent that counts the delivered messages in the {@link MessageCounters}. Messages put back into
+ * the queue are not counted again. Like the JADE default queue, it drops the oldest message when it is full, and it is
+ * synchronized by the agent.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class CountingMessageQueue implements MessageQueue {
+    
+    private final String agentType;
+    private final LinkedList<ACLMessage> list = new LinkedList<ACLMessage>();
+    private int maxSize = 0;
+    
+    /**
+     * @param agentType Agent type of the owner of the queue.
+     */
+    public CountingMessageQueue(final String agentType) {
+
+        this.agentType = agentType;
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#addFirst(jade.lang.acl.ACLMessage)
+     */
+    @Override
+    public void addFirst(final ACLMessage msg) {
+
+        if (maxSize != 0 && list.size() >= maxSize) {
+            list.removeFirst();
+        }
+        list.addFirst(msg);
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#addLast(jade.lang.acl.ACLMessage)
+     */
+    @Override
+    public void addLast(final ACLMessage msg) {
+
+        MessageCounters.COUNTERS.countDelivered(agentType, msg);
+        if (maxSize != 0 && list.size() >= maxSize) {
+            list.removeFirst();
+        }
+        list.addLast(msg);
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#getMaxSize()
+     */
+    @Override
+    public int getMaxSize() {
+
+        return maxSize;
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#setMaxSize(int)
+     */
+    @Override
+    public void setMaxSize(final int newSize) {
+
+        if (newSize < 0) throw new IllegalArgumentException("invalid queue size " + newSize);
+        maxSize = newSize;
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#isEmpty()
+     */
+    @Override
+    public boolean isEmpty() {
+
+        return list.isEmpty();
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#receive(jade.lang.acl.MessageTemplate)
+     */
+    @Override
+    public ACLMessage receive(final MessageTemplate pattern) {
+
+        final Iterator<ACLMessage> iter = list.iterator();
+        while (iter.hasNext()) {
+            final ACLMessage msg = iter.next();
+            if (pattern == null || pattern.match(msg)) {
+                iter.remove();
+                return msg;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#copyTo(jade.util.leap.List)
+     */
+    @Override
+    public void copyTo(final List messages) {
+
+        for (final ACLMessage msg : list) {
+            messages.add(msg);
+        }
+    }
+    
+    /**
+     * @return Copy of the messages in the queue, oldest first. Synchronize on the queue.
+     */
+    public java.util.List<ACLMessage> copyMessages() {
+
+        return new ArrayList<ACLMessage>(list);
+    }
+    
+    /**
+     * @see jade.core.MessageQueue#size()
+     */
+    @Override
+    public int size() {
+
+        return list.size();
+    }
+}
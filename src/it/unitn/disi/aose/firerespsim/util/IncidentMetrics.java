@@ -0,0 +1,236 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * Key performance indicators of the incidents (fires), computed online into {@link LatencyHistogram}s and exposed as
+ * JMX MBeans named <code>it.unitn.disi.aose.firerespsim:type=IncidentMetrics,name=...</code>. The agents report the
+ * events of an incident by its coordinate; the incident is registered when the fire starts and dropped when it ends,
+ * so only the live incidents are kept. The metrics are per JVM: with separate container JVMs an event is only measured
+ * if the start of its fire was reported in the same JVM. The same holds for fires restored from a checkpoint, their
+ * events are not measured. Thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class IncidentMetrics {
+    
+    /**
+     * Time from the start of a fire to its detection by the fire monitor.
+     */
+    public static final LatencyHistogram DETECTION_LATENCY = new LatencyHistogram();
+    /**
+     * Time from a fire alert at a coordinator to the acceptance of a proposal for it.
+     */
+    public static final LatencyHistogram DISPATCH_LATENCY = new LatencyHistogram();
+    /**
+     * Time from the start of a fire to the arrival of the first vehicle.
+     */
+    public static final LatencyHistogram FIRST_ARRIVAL = new LatencyHistogram();
+    /**
+     * Time from the start of a fire until it is put out.
+     */
+    public static final LatencyHistogram TIME_TO_EXTINGUISH = new LatencyHistogram();
+    /**
+     * Time a casualty waits until it is picked up.
+     */
+    public static final LatencyHistogram CASUALTY_WAITING = new LatencyHistogram();
+    
+    /**
+     * Initial capacity of the casualty increases of an incident.
+     */
+    private static final int INITIAL_INCREASES = 8;
+    
+    private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
+    private static final Map<Coordinate, Incident> incidents = new ConcurrentHashMap<Coordinate, Incident>();
+    
+    static {
+        register("DetectionLatency", DETECTION_LATENCY);
+        register("DispatchLatency", DISPATCH_LATENCY);
+        register("FirstArrival", FIRST_ARRIVAL);
+        register("TimeToExtinguish", TIME_TO_EXTINGUISH);
+        register("CasualtyWaiting", CASUALTY_WAITING);
+    }
+    
+    /**
+     * @param coord Coordinate of the started fire on the simulation area.
+     */
+    public static void fireStarted(final Coordinate coord) {
+
+        incidents.put(coord, new Incident(System.currentTimeMillis()));
+    }
+    
+    /**
+     * @param coord Coordinate of the ended fire on the simulation area.
+     */
+    public static void fireEnded(final Coordinate coord) {
+
+        incidents.remove(coord);
+    }
+    
+    /**
+     * Records the {@link #DETECTION_LATENCY}.
+     * 
+     * @param coord Coordinate of the detected fire.
+     */
+    public static void fireDetected(final Coordinate coord) {
+
+        final Incident incident = incidents.get(coord);
+        if (incident == null) return;
+        DETECTION_LATENCY.record(System.currentTimeMillis() - incident.start);
+    }
+    
+    /**
+     * Records the {@link #FIRST_ARRIVAL} if the vehicle is the first one at the fire.
+     * 
+     * @param coord Coordinate of the fire.
+     */
+    public static void vehicleArrived(final Coordinate coord) {
+
+        final Incident incident = incidents.get(coord);
+        if (incident == null) return;
+        synchronized (incident) {
+            if (incident.arrived) return;
+            incident.arrived = true;
+        }
+        FIRST_ARRIVAL.record(System.currentTimeMillis() - incident.start);
+    }
+    
+    /**
+     * Records the {@link #TIME_TO_EXTINGUISH}.
+     * 
+     * @param coord Coordinate of the put out fire.
+     */
+    public static void fireExtinguished(final Coordinate coord) {
+
+        final Incident incident = incidents.get(coord);
+        if (incident == null) return;
+        TIME_TO_EXTINGUISH.record(System.currentTimeMillis() - incident.start);
+    }
+    
+    /**
+     * Records the time at which casualties appeared at a fire, for the {@link #CASUALTY_WAITING} of their pick up.
+     * 
+     * @param coord Coordinate of the fire.
+     * @param amount Number of added casualties.
+     */
+    public static void casualtiesAdded(final Coordinate coord, final int amount) {
+
+        if (amount < 1) return;
+        final Incident incident = incidents.get(coord);
+        if (incident == null) return;
+        synchronized (incident) {
+            incident.addCasualties(System.currentTimeMillis(), amount);
+        }
+    }
+    
+    /**
+     * Records the {@link #CASUALTY_WAITING} of a picked up casualty. The casualties of a fire are picked up in the
+     * order they appeared, so the picked up casualty is the oldest one recorded by
+     * {@link #casualtiesAdded(Coordinate, int)}.
+     * 
+     * @param coord Coordinate of the fire.
+     */
+    public static void casualtyPickedUp(final Coordinate coord) {
+
+        final Incident incident = incidents.get(coord);
+        if (incident == null) return;
+        long appeared;
+        synchronized (incident) {
+            appeared = incident.takeCasualty();
+        }
+        if (appeared < 0) return;
+        CASUALTY_WAITING.record(System.currentTimeMillis() - appeared);
+    }
+    
+    /**
+     * @param name
+     * @param histogram
+     */
+    private static void register(final String name, final LatencyHistogram histogram) {
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(histogram, new ObjectName("it.unitn.disi.aose.firerespsim:type=IncidentMetrics,name="
+                                                           + name));
+        } catch (final JMException e) {
+            logger.error("couldn't register MBean " + name + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Live incident.
+     */
+    private static final class Incident {
+        
+        /**
+         * Start time of the fire.
+         */
+        final long start;
+        /**
+         * If a vehicle arrived at the fire.
+         */
+        boolean arrived = false;
+        /**
+         * Ring of the times of the casualty increases not picked up completely, oldest first at {@link #first}.
+         */
+        private long[] increaseTimes = new long[INITIAL_INCREASES];
+        /**
+         * Casualties of each increase in {@link #increaseTimes} not picked up yet.
+         */
+        private int[] increaseCasualties = new int[INITIAL_INCREASES];
+        private int first = 0;
+        private int numIncreases = 0;
+        
+        /**
+         * @param start
+         */
+        Incident(final long start) {
+
+            this.start = start;
+        }
+        
+        /**
+         * @param time
+         * @param amount
+         */
+        void addCasualties(final long time, final int amount) {
+
+            if (numIncreases == increaseTimes.length) {
+                // unroll the ring into arrays of double size
+                final long[] times = new long[2 * numIncreases];
+                final int[] casualties = new int[2 * numIncreases];
+                for (int i = 0; i < numIncreases; i++) {
+                    times[i] = increaseTimes[(first + i) % numIncreases];
+                    casualties[i] = increaseCasualties[(first + i) % numIncreases];
+                }
+                increaseTimes = times;
+                increaseCasualties = casualties;
+                first = 0;
+            }
+            final int last = (first + numIncreases++) % increaseTimes.length;
+            increaseTimes[last] = time;
+            increaseCasualties[last] = amount;
+        }
+        
+        /**
+         * @return Time the oldest casualty appeared, -1 if there is no recorded casualty.
+         */
+        long takeCasualty() {
+
+            if (numIncreases == 0) return -1;
+            final long time = increaseTimes[first];
+            if (--increaseCasualties[first] == 0) {
+                first = (first + 1) % increaseTimes.length;
+                numIncreases--;
+            }
+            return time;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import it.unitn.disi.aose.firerespsim.ontology.Coordinate;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Map.Entry;
+import org.apache.log4j.Logger;
+
+/**
+ * Binary log of the external inputs of an agent, so a run can be re-driven with the same inputs. An input is a random
+ * draw, a spawned fire, the arrival order of messages at a decision point, or the outcome of a decision that depends
+ * on message timing. Every agent has its own log file in the log directory, named after the agent and the number of
+ * agents of that name started before it in the JVM, so the logs of separate container JVMs don't interfere and an
+ * agent started again under the same name (a fire agent of a position that burns again) doesn't overwrite the log of
+ * the earlier one. When recording, the inputs are appended as tagged records. When replaying,
+ * the inputs are read back in the same order instead of being drawn or received. If the run diverges from the log
+ * (another input is expected than the next record) or the log ends, the agent continues live. The timing of the run
+ * is not recorded. Not thread-safe, every agent uses its own log.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class InputLog {
+    
+    /**
+     * Mode without a log.
+     */
+    public static final String OFF = "off";
+    /**
+     * Mode recording the inputs.
+     */
+    public static final String RECORD = "record";
+    /**
+     * Mode replaying recorded inputs.
+     */
+    public static final String REPLAY = "replay";
+    
+    /**
+     * Record of a random draw.
+     */
+    public static final byte DRAW = 1;
+    /**
+     * Record of a spawned fire.
+     */
+    public static final byte SPAWN = 2;
+    /**
+     * Record of the arrival order of messages.
+     */
+    public static final byte ORDER = 3;
+    /**
+     * Record of vehicle assignments.
+     */
+    public static final byte ASSIGNMENTS = 4;
+    
+    private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
+    private static final int MAGIC = 0x4652494C; // "FRIL"
+    
+    private static String mode = OFF;
+    private static File directory = null;
+    /**
+     * Open recording logs, flushed when the JVM exits.
+     */
+    private static final List<InputLog> recordings = new ArrayList<InputLog>();
+    /**
+     * Number of logs opened for each agent name.
+     */
+    private static final Map<String, Integer> spawns = new HashMap<String, Integer>();
+    
+    private final String name;
+    private DataOutputStream out = null;
+    private DataInputStream in = null;
+    /**
+     * Tag of the next record when replaying, 0 at the end of the log.
+     */
+    private byte nextTag = 0;
+    
+    /**
+     * Sets the mode of the logs opened afterwards.
+     * 
+     * @param logMode {@link #OFF}, {@link #RECORD}, or {@link #REPLAY}.
+     * @param dirName Directory of the log files.
+     * @return <code>true</code> if configured, <code>false</code> if the mode is unknown
+     */
+    public static boolean configure(final String logMode, final String dirName) {
+
+        if (!OFF.equals(logMode) && !RECORD.equals(logMode) && !REPLAY.equals(logMode)) return false;
+        mode = logMode;
+        directory = new File(dirName);
+        if (RECORD.equals(mode)) {
+            directory.mkdirs();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                
+                @Override
+                public void run() {
+
+                    synchronized (recordings) {
+                        for (final InputLog log : recordings) {
+                            log.flush();
+                        }
+                    }
+                }
+            });
+        }
+        return true;
+    }
+    
+    /**
+     * Opens the log of an agent in the configured mode. Agents of the same name must be started in the same order
+     * when replaying as when recording.
+     * 
+     * @param name Local name of the agent.
+     * @return The log, not recording nor replaying if the mode is {@link #OFF} or the file cannot be opened.
+     */
+    public static InputLog open(final String name) {
+
+        final InputLog log = new InputLog(name);
+        if (OFF.equals(mode)) return log;
+        final int spawn;
+        synchronized (spawns) {
+            spawn = spawns.containsKey(name) ? spawns.get(name) : 0;
+            spawns.put(name, spawn + 1);
+        }
+        final File file = new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_") + "." + spawn + ".log");
+        try {
+            if (RECORD.equals(mode)) {
+                log.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                log.out.writeInt(MAGIC);
+                synchronized (recordings) {
+                    recordings.add(log);
+                }
+            } else {
+                log.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (log.in.readInt() != MAGIC) {
+                    logger.error("'" + file + "' is not an input log");
+                    log.close();
+                    return log;
+                }
+                log.readTag();
+            }
+        } catch (final IOException e) {
+            logger.error("couldn't open input log '" + file + "'");
+            log.close();
+        }
+        return log;
+    }
+    
+    private InputLog(final String name) {
+
+        this.name = name;
+    }
+    
+    /**
+     * @return <code>true</code> if recording, <code>false</code> if not
+     */
+    public boolean isRecording() {
+
+        return out != null;
+    }
+    
+    /**
+     * @return <code>true</code> if replaying and the log did not end, <code>false</code> if not
+     */
+    public boolean isReplaying() {
+
+        return in != null;
+    }
+    
+    /**
+     * @param random Live random stream.
+     * @return Random stream whose draws are recorded or replayed, the live stream if neither.
+     */
+    public Random wrap(final Random random) {
+
+        return (isRecording() || isReplaying()) ? new LoggedRandom(random) : random;
+    }
+    
+    /**
+     * @param tag
+     * @param coordinate Can be <code>null</code>.
+     */
+    public void writeCoordinate(final byte tag, final Coordinate coordinate) {
+
+        if (!isRecording()) return;
+        try {
+            out.writeByte(tag);
+            out.writeInt((coordinate == null) ? 0 : coordinate.getRow());
+            out.writeInt((coordinate == null) ? 0 : coordinate.getCol());
+        } catch (final IOException e) {
+            stopRecording();
+        }
+    }
+    
+    /**
+     * @param tag
+     * @return Recorded coordinate, <code>null</code> if none was recorded or the replay ended (see
+     *         {@link #isReplaying()}).
+     */
+    public Coordinate readCoordinate(final byte tag) {
+
+        if (!startRecord(tag)) return null;
+        try {
+            final int row = in.readInt();
+            final int col = in.readInt();
+            readTag();
+            return (row == 0) ? null : new Coordinate(row, col);
+        } catch (final IOException e) {
+            stopReplay();
+            return null;
+        }
+    }
+    
+    /**
+     * @param tag
+     * @param names
+     */
+    public void writeNames(final byte tag, final List<String> names) {
+
+        if (!isRecording()) return;
+        try {
+            out.writeByte(tag);
+            out.writeInt(names.size());
+            for (final String n : names) {
+                out.writeUTF(n);
+            }
+        } catch (final IOException e) {
+            stopRecording();
+        }
+    }
+    
+    /**
+     * @param tag
+     * @return Recorded names, <code>null</code> if the replay ended.
+     */
+    public List<String> readNames(final byte tag) {
+
+        if (!startRecord(tag)) return null;
+        try {
+            final int size = in.readInt();
+            final List<String> names = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                names.add(in.readUTF());
+            }
+            readTag();
+            return names;
+        } catch (final IOException e) {
+            stopReplay();
+            return null;
+        }
+    }
+    
+    /**
+     * @param tag
+     * @param assignments Coordinate of each name.
+     */
+    public void writeAssignments(final byte tag, final Map<String, Coordinate> assignments) {
+
+        if (!isRecording()) return;
+        try {
+            out.writeByte(tag);
+            out.writeInt(assignments.size());
+            for (final Entry<String, Coordinate> assignment : assignments.entrySet()) {
+                out.writeUTF(assignment.getKey());
+                out.writeInt(assignment.getValue().getRow());
+                out.writeInt(assignment.getValue().getCol());
+            }
+        } catch (final IOException e) {
+            stopRecording();
+        }
+    }
+    
+    /**
+     * @param tag
+     * @return Recorded coordinate of each name, <code>null</code> if the replay ended.
+     */
+    public Map<String, Coordinate> readAssignments(final byte tag) {
+
+        if (!startRecord(tag)) return null;
+        try {
+            final int size = in.readInt();
+            final Map<String, Coordinate> assignments = new LinkedHashMap<String, Coordinate>();
+            for (int i = 0; i < size; i++) {
+                assignments.put(in.readUTF(), new Coordinate(in.readInt(), in.readInt()));
+            }
+            readTag();
+            return assignments;
+        } catch (final IOException e) {
+            stopReplay();
+            return null;
+        }
+    }
+    
+    /**
+     * Writes the buffered records to the file.
+     */
+    public void flush() {
+
+        if (!isRecording()) return;
+        try {
+            out.flush();
+        } catch (final IOException e) {
+            stopRecording();
+        }
+    }
+    
+    /**
+     * Closes the log, it neither records nor replays afterwards.
+     */
+    public void close() {
+
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+        } catch (final IOException e) {
+            logger.error("error closing input log of '" + name + "'");
+        }
+        if (out != null) {
+            synchronized (recordings) {
+                recordings.remove(this);
+            }
+        }
+        out = null;
+        in = null;
+    }
+    
+    /**
+     * Checks that the next record has the tag. Replaying an input skips the random draws that produced it when it was
+     * recorded, because the input is not produced again.
+     * 
+     * @param tag
+     * @return <code>true</code> if the record can be read, <code>false</code> if the replay ended
+     */
+    private boolean startRecord(final byte tag) {
+
+        if (!isReplaying()) return false;
+        try {
+            while (tag != DRAW && nextTag == DRAW) {
+                in.readInt();
+                readTag();
+            }
+        } catch (final IOException e) {
+            stopReplay();
+            return false;
+        }
+        if (nextTag == tag) return true;
+        if (nextTag == 0) {
+            logger.info("input log of '" + name + "' ended, continuing live");
+        } else {
+            logger.warn("run diverged from the input log of '" + name + "', continuing live");
+        }
+        close();
+        return false;
+    }
+    
+    /**
+     * Reads the tag of the next record.
+     * 
+     * @throws IOException
+     */
+    private void readTag() throws IOException {
+
+        try {
+            nextTag = in.readByte();
+        } catch (final EOFException e) {
+            nextTag = 0;
+        }
+    }
+    
+    private void stopRecording() {
+
+        logger.error("error writing input log of '" + name + "', stopped recording");
+        close();
+    }
+    
+    private void stopReplay() {
+
+        logger.error("error reading input log of '" + name + "', continuing live");
+        close();
+    }
+    
+    /**
+     * Random stream that records or replays the 32 bit draws of the live stream. Smaller draws take the high bits like
+     * {@link Random} does, so the stream yields the same numbers as the live stream.
+     */
+    @SuppressWarnings("serial")
+    private final class LoggedRandom extends Random {
+        
+        private final Random live;
+        
+        /**
+         * @param live
+         */
+        LoggedRandom(final Random live) {
+
+            this.live = live;
+        }
+        
+        /**
+         * @see java.util.Random#next(int)
+         */
+        @Override
+        protected int next(final int bits) {
+
+            int value;
+            if (startRecord(DRAW)) {
+                try {
+                    value = in.readInt();
+                    readTag();
+                    return value >>> (32 - bits);
+                } catch (final IOException e) {
+                    stopReplay();
+                }
+            }
+            value = live.nextInt();
+            if (isRecording()) {
+                try {
+                    out.writeByte(DRAW);
+                    out.writeInt(value);
+                } catch (final IOException e) {
+                    stopRecording();
+                }
+            }
+            return value >>> (32 - bits);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+/**
+ * Histogram of latencies in constant memory. Latencies below {@link #SUB_BUCKETS} get a bucket each, larger latencies
+ * get {@link #SUB_BUCKETS} buckets per power of two, so a percentile is exact for small latencies and off by less than
+ * 1 / {@link #SUB_BUCKETS} of the latency otherwise. Recording is a bucket increment, no latency is kept. Thread-safe,
+ * the agents record and JMX reads concurrently.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+    
+    /**
+     * Buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+    
+    /**
+     * @param latency Negative latencies (clock skew) count as 0.
+     */
+    public synchronized void record(final long latency) {
+
+        final long value = Math.max(0, latency);
+        counts[getBucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+    
+    /**
+     * @param percentile Between 0 and 100.
+     * @return Latency at the percentile (middle of its bucket), 0 if none was recorded.
+     */
+    public synchronized long getPercentile(final double percentile) {
+
+        if (count == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return Math.min(max, (getLowerBound(bucket) + getLowerBound(bucket + 1) - 1) / 2);
+        }
+        return max;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getCount()
+     */
+    @Override
+    public synchronized long getCount() {
+
+        return count;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getMean()
+     */
+    @Override
+    public synchronized double getMean() {
+
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getMax()
+     */
+    @Override
+    public synchronized long getMax() {
+
+        return max;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getP50()
+     */
+    @Override
+    public long getP50() {
+
+        return getPercentile(50);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getP95()
+     */
+    @Override
+    public long getP95() {
+
+        return getPercentile(95);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#getP99()
+     */
+    @Override
+    public long getP99() {
+
+        return getPercentile(99);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.LatencyHistogramMBean#reset()
+     */
+    @Override
+    public synchronized void reset() {
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return "n=" + getCount() + " p50=" + getP50() + " p95=" + getP95() + " p99=" + getP99() + " max=" + getMax();
+    }
+    
+    /**
+     * @param value Not negative.
+     * @return Bucket of the value.
+     */
+    private static int getBucket(final long value) {
+
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * @param bucket
+     * @return Smallest value of the bucket.
+     */
+    private static long getLowerBound(final int bucket) {
+
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+}
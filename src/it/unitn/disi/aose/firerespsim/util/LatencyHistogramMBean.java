@@ -0,0 +1,44 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+/**
+ * JMX management interface of a {@link LatencyHistogram}. All latencies are in milliseconds.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public interface LatencyHistogramMBean {
+    
+    /**
+     * @return Number of recorded latencies.
+     */
+    long getCount();
+    
+    /**
+     * @return Mean latency, 0 if none was recorded.
+     */
+    double getMean();
+    
+    /**
+     * @return Maximum latency, 0 if none was recorded.
+     */
+    long getMax();
+    
+    /**
+     * @return Median latency.
+     */
+    long getP50();
+    
+    /**
+     * @return 95th percentile latency.
+     */
+    long getP95();
+    
+    /**
+     * @return 99th percentile latency.
+     */
+    long getP99();
+    
+    /**
+     * Discards all recorded latencies.
+     */
+    void reset();
+}
@@ -0,0 +1,380 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import jade.lang.acl.ACLMessage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * Counters of the messages and their content bytes, by agent type, direction (sent or received), protocol, and
+ * performative, exposed as the JMX MBean <code>it.unitn.disi.aose.firerespsim:type=MessageCounters</code>. A message
+ * is counted when it is delivered to the queue of its receiver (see {@link CountingMessageQueue}), once as received by
+ * the type of the receiver and once as sent by the type of the sender, so a message to several receivers counts as
+ * sent once per receiver. The type of the sender is only known if it is registered in the same JVM, otherwise it is
+ * counted as {@link #REMOTE}. The counters are looked up by the agent type and protocol strings of the message and the
+ * index of its performative, so counting a message doesn't build a key. The counters are striped by thread, so the
+ * agent threads of a JVM don't contend for the same counter. Thread-safe.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class MessageCounters implements MessageCountersMBean {
+    
+    /**
+     * Counters of this JVM.
+     */
+    public static final MessageCounters COUNTERS = new MessageCounters();
+    
+    /**
+     * Agent type of senders not registered in this JVM.
+     */
+    public static final String REMOTE = "remote";
+    
+    private static final Logger logger = Logger.getLogger("it.unitn.disi.aose.firerespsim");
+    private static final String SENT = "sent";
+    private static final String RECEIVED = "received";
+    /**
+     * Protocol key of messages without protocol.
+     */
+    private static final String NO_PROTOCOL = "null";
+    
+    /**
+     * Counters by agent type.
+     */
+    private final Map<String, TypeCounters> counters = new ConcurrentHashMap<String, TypeCounters>();
+    /**
+     * Agent types by agent name.
+     */
+    private final Map<String, String> agentTypes = new ConcurrentHashMap<String, String>();
+    
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                             .registerMBean(COUNTERS,
+                                            new ObjectName("it.unitn.disi.aose.firerespsim:type=MessageCounters"));
+        } catch (final JMException e) {
+            logger.error("couldn't register MBean MessageCounters: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * @param agentName Full name of the agent.
+     * @param agentType
+     */
+    public void registerAgent(final String agentName, final String agentType) {
+
+        agentTypes.put(agentName, agentType);
+    }
+    
+    /**
+     * @param agentName Full name of the agent.
+     */
+    public void deregisterAgent(final String agentName) {
+
+        agentTypes.remove(agentName);
+    }
+    
+    /**
+     * @param receiverType Agent type of the receiver.
+     * @param msg Message delivered to the receiver.
+     */
+    public void countDelivered(final String receiverType, final ACLMessage msg) {
+
+        final int bytes = getContentBytes(msg);
+        final String protocol = (msg.getProtocol() == null) ? NO_PROTOCOL : msg.getProtocol();
+        final int performative = msg.getPerformative();
+        getTypeCounters(receiverType).received.get(protocol, performative).add(bytes);
+        final String senderType = (msg.getSender() == null) ? null : agentTypes.get(msg.getSender().getName());
+        getTypeCounters((senderType == null) ? REMOTE : senderType).sent.get(protocol, performative).add(bytes);
+    }
+    
+    /**
+     * @param agentType
+     * @return Counters of the agent type, created if not there yet.
+     */
+    private TypeCounters getTypeCounters(final String agentType) {
+
+        TypeCounters typeCounters = counters.get(agentType);
+        if (typeCounters == null) {
+            synchronized (counters) {
+                typeCounters = counters.get(agentType);
+                if (typeCounters == null) {
+                    typeCounters = new TypeCounters();
+                    counters.put(agentType, typeCounters);
+                }
+            }
+        }
+        return typeCounters;
+    }
+    
+    /**
+     * @param msg
+     * @return Bytes of the encoded content.
+     */
+    private static int getContentBytes(final ACLMessage msg) {
+
+        if (msg.hasByteSequenceContent()) {
+            final byte[] content = msg.getByteSequenceContent();
+            return (content == null) ? 0 : content.length;
+        }
+        final String content = msg.getContent();
+        return (content == null) ? 0 : content.length();
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#getCounters()
+     */
+    @Override
+    public String[] getCounters() {
+
+        // snapshot the sums, so the order doesn't change while sorting
+        final Map<String, long[]> sums = new HashMap<String, long[]>();
+        for (final Entry<String, TypeCounters> type : counters.entrySet()) {
+            type.getValue().sent.addSums(type.getKey() + " " + SENT + " ", sums);
+            type.getValue().received.addSums(type.getKey() + " " + RECEIVED + " ", sums);
+        }
+        final List<String> keys = new ArrayList<String>(sums.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            
+            @Override
+            public int compare(final String key1, final String key2) {
+
+                final long bytes1 = sums.get(key1)[1];
+                final long bytes2 = sums.get(key2)[1];
+                return (bytes1 > bytes2) ? -1 : (bytes1 < bytes2) ? 1 : key1.compareTo(key2);
+            }
+        });
+        final String[] lines = new String[keys.size()];
+        for (int i = 0; i < lines.length; i++) {
+            final long[] sum = sums.get(keys.get(i));
+            lines[i] = keys.get(i) + ": " + sum[0] + " messages, " + sum[1] + " bytes";
+        }
+        return lines;
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#getSentMessages()
+     */
+    @Override
+    public long getSentMessages() {
+
+        return getTotal(true, false);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#getSentBytes()
+     */
+    @Override
+    public long getSentBytes() {
+
+        return getTotal(true, true);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#getReceivedMessages()
+     */
+    @Override
+    public long getReceivedMessages() {
+
+        return getTotal(false, false);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#getReceivedBytes()
+     */
+    @Override
+    public long getReceivedBytes() {
+
+        return getTotal(false, true);
+    }
+    
+    /**
+     * @see it.unitn.disi.aose.firerespsim.util.MessageCountersMBean#reset()
+     */
+    @Override
+    public void reset() {
+
+        counters.clear();
+    }
+    
+    /**
+     * @param sent If to sum the sent instead of the received messages.
+     * @param bytes If to sum the bytes instead of the messages.
+     * @return Sum over all counters of the direction.
+     */
+    private long getTotal(final boolean sent, final boolean bytes) {
+
+        long total = 0;
+        for (final TypeCounters typeCounters : counters.values()) {
+            total += (sent ? typeCounters.sent : typeCounters.received).getTotal(bytes);
+        }
+        return total;
+    }
+    
+    /**
+     * Counters of an agent type by direction.
+     */
+    private static final class TypeCounters {
+        
+        final ProtocolCounters sent = new ProtocolCounters();
+        final ProtocolCounters received = new ProtocolCounters();
+        
+        TypeCounters() {
+
+        // nothing to initialize
+        }
+    }
+    
+    /**
+     * Counters of an agent type and direction by protocol and performative. The counters of a protocol are an array
+     * indexed by performative, filled when a performative is first counted.
+     */
+    private static final class ProtocolCounters {
+        
+        private static final String[] PERFORMATIVES = ACLMessage.getAllPerformativeNames();
+        
+        private final Map<String, AtomicReferenceArray<StripedCounter>> protocols =
+            new ConcurrentHashMap<String, AtomicReferenceArray<StripedCounter>>();
+        
+        ProtocolCounters() {
+
+        // nothing to initialize
+        }
+        
+        /**
+         * @param protocol
+         * @param performative Unknown performatives are counted as not understood, like
+         *            {@link ACLMessage#getPerformative(int)} names them.
+         * @return Counter of the protocol and performative, created if not there yet.
+         */
+        StripedCounter get(final String protocol, final int performative) {
+
+            AtomicReferenceArray<StripedCounter> performatives = protocols.get(protocol);
+            if (performatives == null) {
+                synchronized (protocols) {
+                    performatives = protocols.get(protocol);
+                    if (performatives == null) {
+                        performatives = new AtomicReferenceArray<StripedCounter>(PERFORMATIVES.length);
+                        protocols.put(protocol, performatives);
+                    }
+                }
+            }
+            final boolean known = performative >= 0 && performative < PERFORMATIVES.length;
+            final int index = known ? performative : ACLMessage.NOT_UNDERSTOOD;
+            StripedCounter counter = performatives.get(index);
+            if (counter == null) {
+                performatives.compareAndSet(index, null, new StripedCounter());
+                counter = performatives.get(index);
+            }
+            return counter;
+        }
+        
+        /**
+         * @param prefix Prefix of the counter names.
+         * @param sums Map to put the message and byte sums of each counter into, by counter name.
+         */
+        void addSums(final String prefix, final Map<String, long[]> sums) {
+
+            for (final Entry<String, AtomicReferenceArray<StripedCounter>> protocol : protocols.entrySet()) {
+                for (int p = 0; p < PERFORMATIVES.length; p++) {
+                    final StripedCounter counter = protocol.getValue().get(p);
+                    if (counter != null) {
+                        sums.put(prefix + protocol.getKey() + " " + PERFORMATIVES[p],
+                                 new long[] {counter.getMessages(), counter.getBytes()});
+                    }
+                }
+            }
+        }
+        
+        /**
+         * @param bytes If to sum the bytes instead of the messages.
+         * @return Sum over all counters.
+         */
+        long getTotal(final boolean bytes) {
+
+            long total = 0;
+            for (final AtomicReferenceArray<StripedCounter> performatives : protocols.values()) {
+                for (int p = 0; p < PERFORMATIVES.length; p++) {
+                    final StripedCounter counter = performatives.get(p);
+                    if (counter != null) {
+                        total += bytes ? counter.getBytes() : counter.getMessages();
+                    }
+                }
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * Counter of messages and bytes with a stripe per group of threads. The stripes are padded to separate cache lines.
+     */
+    private static final class StripedCounter {
+        
+        /**
+         * Number of stripes, a power of 2.
+         */
+        private static final int STRIPES = 8;
+        /**
+         * Longs per cache line.
+         */
+        private static final int PAD = 8;
+        
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * 2 * PAD);
+        
+        StripedCounter() {
+
+        // nothing to initialize
+        }
+        
+        /**
+         * Counts a message.
+         * 
+         * @param bytes Content bytes of the message.
+         */
+        void add(final int bytes) {
+
+            final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            cells.incrementAndGet(stripe * 2 * PAD);
+            cells.addAndGet((stripe * 2 + 1) * PAD, bytes);
+        }
+        
+        /**
+         * @return Number of messages.
+         */
+        long getMessages() {
+
+            return sum(0);
+        }
+        
+        /**
+         * @return Content bytes of the messages.
+         */
+        long getBytes() {
+
+            return sum(1);
+        }
+        
+        /**
+         * @param field 0 for the messages, 1 for the bytes.
+         * @return Sum over the stripes.
+         */
+        private long sum(final int field) {
+
+            long sum = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                sum += cells.get((stripe * 2 + field) * PAD);
+            }
+            return sum;
+        }
+    }
+}
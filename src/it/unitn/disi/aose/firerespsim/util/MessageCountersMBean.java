@@ -0,0 +1,40 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+/**
+ * JMX management interface of the {@link MessageCounters}.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public interface MessageCountersMBean {
+    
+    /**
+     * @return One line per agent type, direction, protocol, and performative with the number of messages and content
+     *         bytes, the most bytes first.
+     */
+    String[] getCounters();
+    
+    /**
+     * @return Number of sent messages.
+     */
+    long getSentMessages();
+    
+    /**
+     * @return Content bytes of the sent messages.
+     */
+    long getSentBytes();
+    
+    /**
+     * @return Number of received messages.
+     */
+    long getReceivedMessages();
+    
+    /**
+     * @return Content bytes of the received messages.
+     */
+    long getReceivedBytes();
+    
+    /**
+     * Resets all counters to 0.
+     */
+    void reset();
+}
@@ -0,0 +1,56 @@
+package it.unitn.disi.aose.firerespsim.util;
+
+import java.util.Random;
+
+/**
+ * Derives independent random streams from one master seed. Each agent gets its own stream, seeded by the master seed
+ * and its name, so runs with the same master seed draw the same numbers and the agents do not contend for a shared
+ * generator.
+ * 
+ * @author Thomas Hess (139467) / Musawar Saeed (140053)
+ */
+public final class RandomStreams {
+    
+    private RandomStreams() {
+
+    // utility class
+    }
+    
+    /**
+     * @param masterSeed
+     * @param name Name of the stream (e.g. the local name of the agent).
+     * @return Seed of the stream.
+     */
+    public static long deriveSeed(final long masterSeed, final String name) {
+
+        long seed = mix(masterSeed);
+        for (int i = 0; i < name.length(); i++) {
+            seed = mix(seed ^ name.charAt(i));
+        }
+        return seed;
+    }
+    
+    /**
+     * @param masterSeed
+     * @param name Name of the stream (e.g. the local name of the agent).
+     * @return New generator for the stream.
+     */
+    public static Random create(final long masterSeed, final String name) {
+
+        return new Random(deriveSeed(masterSeed, name));
+    }
+    
+    /**
+     * SplitMix64 step.
+     * 
+     * @param value
+     * @return Mixed value.
+     */
+    private static long mix(final long value) {
+
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}